@@ -0,0 +1,357 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.enterprise.database.bigwiki;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Generates the documents of a large wiki in an expanded XAR directory, next to the documents of the standard XAR, and
+ * registers them in its {@code package.xml} so that they are imported with it. The content only depends on the
+ * configuration, including the seed of the random generator, so the same configuration always produces the same wiki.
+ * <p>
+ * The configuration is passed as {@code key=value} arguments after the directory, see {@link #DEFAULTS} for the
+ * supported keys and their default values.
+ *
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class BigWikiGenerator
+{
+    /** The default configuration. */
+    public static final Properties DEFAULTS = new Properties();
+
+    static {
+        DEFAULTS.setProperty("seed", "42");
+        DEFAULTS.setProperty("spaces", "100");
+        DEFAULTS.setProperty("pagesPerSpace", "1000");
+        DEFAULTS.setProperty("users", "1000");
+        DEFAULTS.setProperty("groups", "50");
+        DEFAULTS.setProperty("tags", "500");
+        // Maximum number of comments per page
+        DEFAULTS.setProperty("comments", "5");
+        // Ratio of the pages having a history, and the maximum number of revisions of those pages
+        DEFAULTS.setProperty("historyRatio", "0.1");
+        DEFAULTS.setProperty("revisions", "20");
+        // Ratio of the pages having an attachment, and the size of the attachments in bytes
+        DEFAULTS.setProperty("attachmentRatio", "0.05");
+        DEFAULTS.setProperty("attachmentSize", "10240");
+    }
+
+    /** The date of the first generated revision: 2011-01-01. */
+    private static final long START_DATE = 1293840000000L;
+
+    private static final long HOUR = 3600000L;
+
+    private static final String[] WORDS = new String[] {"wiki", "page", "document", "space", "content", "team",
+        "project", "meeting", "release", "report", "customer", "design", "review", "plan", "budget", "support",
+        "network", "server", "database", "cluster", "search", "index", "cache", "storage", "backup", "security",
+        "access", "group", "user", "quality", "performance", "test", "build", "deploy", "feature", "issue", "bug",
+        "roadmap", "meeting", "minutes", "decision", "action", "owner", "status", "draft", "final", "archive"};
+
+    private final File directory;
+
+    private final Properties configuration;
+
+    private final Random random;
+
+    private final List<String> documents = new ArrayList<String>();
+
+    /**
+     * @param directory the expanded XAR directory
+     * @param configuration the configuration, see {@link #DEFAULTS}
+     */
+    public BigWikiGenerator(File directory, Properties configuration)
+    {
+        this.directory = directory;
+        this.configuration = new Properties(DEFAULTS);
+        this.configuration.putAll(configuration);
+        this.random = new Random(getLong("seed"));
+    }
+
+    /**
+     * @param args the expanded XAR directory followed by {@code key=value} configuration entries
+     * @throws IOException if the documents can't be written
+     */
+    public static void main(String[] args) throws IOException
+    {
+        Properties configuration = new Properties();
+        for (int i = 1; i < args.length; i++) {
+            int separator = args[i].indexOf('=');
+            configuration.setProperty(args[i].substring(0, separator).trim(), args[i].substring(separator + 1).trim());
+        }
+
+        long start = System.currentTimeMillis();
+        BigWikiGenerator generator = new BigWikiGenerator(new File(args[0]), configuration);
+        int count = generator.generate();
+        System.out.println(String.format("Generated %d documents in %d s", count,
+            (System.currentTimeMillis() - start) / 1000));
+    }
+
+    /**
+     * Write all the documents and register them in the package descriptor.
+     *
+     * @return the number of generated documents
+     * @throws IOException if the documents can't be written
+     */
+    public int generate() throws IOException
+    {
+        int users = getInt("users");
+        int groups = getInt("groups");
+        int spaces = getInt("spaces");
+        int pagesPerSpace = getInt("pagesPerSpace");
+
+        for (int i = 1; i <= users; i++) {
+            generateUser(i);
+        }
+        for (int i = 1; i <= groups; i++) {
+            generateGroup(i, users);
+        }
+        for (int i = 1; i <= spaces; i++) {
+            generateSpaceHome(i);
+            for (int j = 1; j <= pagesPerSpace; j++) {
+                generatePage(i, j, spaces, pagesPerSpace, users);
+            }
+        }
+
+        writePackage();
+
+        return this.documents.size();
+    }
+
+    private void generateUser(int index) throws IOException
+    {
+        String name = getUserName(index);
+        DocumentBuilder document = new DocumentBuilder("XWiki", name);
+        document.setParent("XWiki.XWikiUsers");
+        document.setTitle(name);
+        document.setCreationDate(new Date(START_DATE));
+        document.setDate(new Date(START_DATE));
+        document.setContent("{{include document=\"XWiki.XWikiUserSheet\"/}}");
+
+        Map<String, Object> properties = new LinkedHashMap<String, Object>();
+        properties.put("first_name", "User");
+        properties.put("last_name", String.valueOf(index));
+        properties.put("email", name.toLowerCase() + "@example.com");
+        properties.put("password", "password");
+        properties.put("active", "1");
+        document.addObject(ClassDefinition.USERS, nextUUID(), properties);
+
+        write(document);
+    }
+
+    private void generateGroup(int index, int users) throws IOException
+    {
+        DocumentBuilder document = new DocumentBuilder("XWiki", String.format("BigGroup%03d", index));
+        document.setParent("XWiki.XWikiGroups");
+        document.setCreationDate(new Date(START_DATE));
+        document.setDate(new Date(START_DATE));
+        document.setContent("{{include document=\"XWiki.XWikiGroupSheet\"/}}");
+
+        // Each group has about 5% of the users.
+        int members = Math.max(1, users / 20);
+        for (int i = 0; i < members && users > 0; i++) {
+            Map<String, Object> properties = new LinkedHashMap<String, Object>();
+            properties.put("member", "XWiki." + getUserName(1 + this.random.nextInt(users)));
+            document.addObject(ClassDefinition.GROUPS, nextUUID(), properties);
+        }
+
+        write(document);
+    }
+
+    private void generateSpaceHome(int space) throws IOException
+    {
+        DocumentBuilder document = new DocumentBuilder(getSpaceName(space), "WebHome");
+        document.setTitle("Space " + space);
+        document.setCreationDate(new Date(START_DATE));
+        document.setDate(new Date(START_DATE));
+        document.setContent(capitalize(sentence(20)) + ".");
+
+        write(document);
+    }
+
+    private void generatePage(int space, int page, int spaces, int pagesPerSpace, int users) throws IOException
+    {
+        String spaceName = getSpaceName(space);
+        Date creationDate = new Date(START_DATE + this.random.nextInt(365 * 24) * HOUR);
+
+        DocumentBuilder document = new DocumentBuilder(spaceName, getPageName(page));
+        document.setParent(spaceName + ".WebHome");
+        document.setTitle(capitalize(sentence(3 + this.random.nextInt(5))));
+        document.setCreationDate(creationDate);
+
+        // Content, with links to other pages. The last line changes with each revision.
+        StringBuilder content = new StringBuilder();
+        int sections = 1 + this.random.nextInt(4);
+        for (int i = 0; i < sections; i++) {
+            content.append("== ").append(capitalize(sentence(2 + this.random.nextInt(3)))).append(" ==\n\n");
+            content.append(capitalize(sentence(20 + this.random.nextInt(60)))).append(".\n\n");
+            int linkedSpace = 1 + this.random.nextInt(spaces);
+            int linkedPage = 1 + this.random.nextInt(pagesPerSpace);
+            content.append("See [[").append(getSpaceName(linkedSpace)).append('.').append(getPageName(linkedPage))
+                .append("]].\n\n");
+        }
+        String body = content.toString();
+
+        // Tags
+        int tags = getInt("tags");
+        if (tags > 0) {
+            List<String> values = new ArrayList<String>();
+            for (int i = 1 + this.random.nextInt(3); i > 0; i--) {
+                values.add("tag" + this.random.nextInt(tags));
+            }
+            Map<String, Object> properties = new LinkedHashMap<String, Object>();
+            properties.put("tags", values);
+            document.addObject(ClassDefinition.TAGS, nextUUID(), properties);
+        }
+
+        // Comments
+        int comments = getInt("comments") > 0 ? this.random.nextInt(getInt("comments") + 1) : 0;
+        for (int i = 0; i < comments && users > 0; i++) {
+            Map<String, Object> properties = new LinkedHashMap<String, Object>();
+            properties.put("author", "XWiki." + getUserName(1 + this.random.nextInt(users)));
+            properties.put("comment", capitalize(sentence(5 + this.random.nextInt(30))) + ".");
+            properties.put("date", new Date(creationDate.getTime() + (i + 1) * HOUR));
+            document.addObject(ClassDefinition.COMMENTS, nextUUID(), properties);
+        }
+
+        // Attachment
+        if (this.random.nextDouble() < getDouble("attachmentRatio")) {
+            byte[] data = new byte[getInt("attachmentSize")];
+            this.random.nextBytes(data);
+            document.addAttachment("data.bin", data, creationDate);
+        }
+
+        // History
+        int revisions = 1;
+        if (this.random.nextDouble() < getDouble("historyRatio")) {
+            revisions = 2 + this.random.nextInt(Math.max(1, getInt("revisions") - 1));
+        }
+        RCSArchive archive = new RCSArchive();
+        for (int revision = 1; revision <= revisions; revision++) {
+            Date date = new Date(creationDate.getTime() + (revision - 1) * HOUR);
+            document.setVersion(revision);
+            document.setDate(date);
+            document.setContent(body + "Revision " + revision + ".");
+            if (revisions > 1) {
+                archive.addRevision(document.toXML(), date);
+            }
+        }
+        if (revisions > 1) {
+            document.setHistory(archive.toString());
+        }
+
+        write(document);
+    }
+
+    private void write(DocumentBuilder document) throws IOException
+    {
+        String fullName = document.getFullName();
+        int separator = fullName.indexOf('.');
+        File file = new File(new File(this.directory, fullName.substring(0, separator)),
+            fullName.substring(separator + 1) + ".xml");
+        FileUtils.writeStringToFile(file, document.toXML(), "UTF-8");
+        this.documents.add(fullName);
+    }
+
+    /**
+     * Add the generated documents to the package descriptor, creating it if the directory doesn't hold a XAR yet.
+     */
+    private void writePackage() throws IOException
+    {
+        File file = new File(this.directory, "package.xml");
+        String descriptor;
+        if (file.exists()) {
+            descriptor = FileUtils.readFileToString(file, "UTF-8");
+        } else {
+            descriptor = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n\n<package>\n<infos>\n<name>Big Wiki</name>\n"
+                + "<description>Generated documents</description>\n<licence></licence>\n<author>XWiki.Admin</author>\n"
+                + "<version></version>\n<backupPack>true</backupPack>\n</infos>\n<files>\n</files>\n</package>\n";
+        }
+
+        StringBuilder files = new StringBuilder();
+        for (String document : this.documents) {
+            files.append("<file defaultAction=\"0\" language=\"\">").append(document).append("</file>\n");
+        }
+        int index = descriptor.lastIndexOf("</files>");
+        FileUtils.writeStringToFile(file, descriptor.substring(0, index) + files + descriptor.substring(index),
+            "UTF-8");
+    }
+
+    private String sentence(int words)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            builder.append(i > 0 ? " " : "").append(WORDS[this.random.nextInt(WORDS.length)]);
+        }
+
+        return builder.toString();
+    }
+
+    private String capitalize(String text)
+    {
+        return Character.toUpperCase(text.charAt(0)) + text.substring(1);
+    }
+
+    private UUID nextUUID()
+    {
+        return new UUID(this.random.nextLong(), this.random.nextLong());
+    }
+
+    private String getUserName(int index)
+    {
+        return String.format("BigUser%05d", index);
+    }
+
+    private String getSpaceName(int index)
+    {
+        return String.format("Space%04d", index);
+    }
+
+    private String getPageName(int index)
+    {
+        return String.format("Page%06d", index);
+    }
+
+    private int getInt(String key)
+    {
+        return Integer.parseInt(this.configuration.getProperty(key));
+    }
+
+    private long getLong(String key)
+    {
+        return Long.parseLong(this.configuration.getProperty(key));
+    }
+
+    private double getDouble(String key)
+    {
+        return Double.parseDouble(this.configuration.getProperty(key));
+    }
+}
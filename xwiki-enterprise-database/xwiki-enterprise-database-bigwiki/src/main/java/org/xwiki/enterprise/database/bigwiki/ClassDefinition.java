@@ -0,0 +1,141 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.enterprise.database.bigwiki;
+
+/**
+ * The definition of an XWiki class, as included in each object of the document XML. Only the classes used by the
+ * generated documents are defined, with the properties the generator sets.
+ *
+ * @version $Id$
+ * @since 3.2M3
+ */
+public final class ClassDefinition
+{
+    /** The tags of a document. */
+    public static final ClassDefinition TAGS = new ClassDefinition("XWiki.TagClass",
+        staticList("tags", 1, "Tags"));
+
+    /** A comment on a document. */
+    public static final ClassDefinition COMMENTS = new ClassDefinition("XWiki.XWikiComments",
+        string("author", 1, "Author"),
+        textArea("comment", 2, "Comment"),
+        date("date", 3, "Date"),
+        textArea("highlight", 4, "Highlighted Text"),
+        number("replyto", 5, "Reply To"));
+
+    /** A user profile. */
+    public static final ClassDefinition USERS = new ClassDefinition("XWiki.XWikiUsers",
+        string("first_name", 1, "First Name"),
+        string("last_name", 2, "Last Name"),
+        string("email", 3, "e-Mail"),
+        password("password", 4, "Password"),
+        bool("active", 5, "Active"));
+
+    /** A member of a group. */
+    public static final ClassDefinition GROUPS = new ClassDefinition("XWiki.XWikiGroups",
+        string("member", 1, "Member"));
+
+    private final String name;
+
+    private final String xml;
+
+    private ClassDefinition(String name, String... properties)
+    {
+        this.name = name;
+
+        StringBuilder builder = new StringBuilder();
+        builder.append("<class>\n");
+        builder.append("<name>").append(name).append("</name>\n");
+        builder.append("<customClass></customClass>\n");
+        builder.append("<customMapping></customMapping>\n");
+        builder.append("<defaultViewSheet></defaultViewSheet>\n");
+        builder.append("<defaultEditSheet></defaultEditSheet>\n");
+        builder.append("<defaultWeb></defaultWeb>\n");
+        builder.append("<nameField></nameField>\n");
+        builder.append("<validationScript></validationScript>\n");
+        for (String property : properties) {
+            builder.append(property);
+        }
+        builder.append("</class>\n");
+        this.xml = builder.toString();
+    }
+
+    public String getName()
+    {
+        return this.name;
+    }
+
+    /**
+     * @return the {@code <class>} element
+     */
+    public String toXML()
+    {
+        return this.xml;
+    }
+
+    private static String property(String name, int number, String prettyName, String classType, String extra)
+    {
+        return String.format("<%1$s>\n<disabled>0</disabled>\n<name>%1$s</name>\n<number>%2$d</number>\n"
+            + "<prettyName>%3$s</prettyName>\n%4$s<unmodifiable>0</unmodifiable>\n"
+            + "<classType>com.xpn.xwiki.objects.classes.%5$s</classType>\n</%1$s>\n", name, number, prettyName,
+            extra, classType);
+    }
+
+    private static String string(String name, int number, String prettyName)
+    {
+        return property(name, number, prettyName, "StringClass", "<size>30</size>\n");
+    }
+
+    private static String textArea(String name, int number, String prettyName)
+    {
+        return property(name, number, prettyName, "TextAreaClass", "<rows>5</rows>\n<size>40</size>\n");
+    }
+
+    private static String date(String name, int number, String prettyName)
+    {
+        return property(name, number, prettyName, "DateClass",
+            "<dateFormat>dd/MM/yyyy HH:mm:ss</dateFormat>\n<emptyIsToday>1</emptyIsToday>\n<size>20</size>\n");
+    }
+
+    private static String number(String name, int number, String prettyName)
+    {
+        return property(name, number, prettyName, "NumberClass",
+            "<numberType>integer</numberType>\n<size>5</size>\n");
+    }
+
+    private static String password(String name, int number, String prettyName)
+    {
+        return property(name, number, prettyName, "PasswordClass",
+            "<algorithm>SHA-512</algorithm>\n<size>10</size>\n<storageType>Clear</storageType>\n");
+    }
+
+    private static String bool(String name, int number, String prettyName)
+    {
+        return property(name, number, prettyName, "BooleanClass",
+            "<defaultValue></defaultValue>\n<displayFormType>checkbox</displayFormType>\n<displayType>active</displayType>\n");
+    }
+
+    private static String staticList(String name, int number, String prettyName)
+    {
+        return property(name, number, prettyName, "StaticListClass",
+            "<displayType>input</displayType>\n<multiSelect>1</multiSelect>\n<relationalStorage>1</relationalStorage>\n"
+                + "<separator> </separator>\n<separators>|,</separators>\n<size>30</size>\n<values></values>\n");
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.enterprise.database.bigwiki;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * Builds the XML of a document, in the format of the files of an expanded XAR.
+ *
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class DocumentBuilder
+{
+    private static final String AUTHOR = "XWiki.Admin";
+
+    private final String space;
+
+    private final String name;
+
+    private String parent = "";
+
+    private String title = "";
+
+    private String content = "";
+
+    private boolean hidden;
+
+    private Date creationDate = new Date(0);
+
+    private Date date = new Date(0);
+
+    private int version = 1;
+
+    private String history;
+
+    private final List<String> attachments = new ArrayList<String>();
+
+    private final List<String> objects = new ArrayList<String>();
+
+    /**
+     * @param space the space of the document
+     * @param name the name of the document
+     */
+    public DocumentBuilder(String space, String name)
+    {
+        this.space = space;
+        this.name = name;
+    }
+
+    /**
+     * @return the full name of the document, e.g. {@code Space.Page}
+     */
+    public String getFullName()
+    {
+        return this.space + '.' + this.name;
+    }
+
+    public void setParent(String parent)
+    {
+        this.parent = parent;
+    }
+
+    public void setTitle(String title)
+    {
+        this.title = title;
+    }
+
+    public void setContent(String content)
+    {
+        this.content = content;
+    }
+
+    public void setHidden(boolean hidden)
+    {
+        this.hidden = hidden;
+    }
+
+    public void setCreationDate(Date creationDate)
+    {
+        this.creationDate = creationDate;
+    }
+
+    /**
+     * @param date the date of the current revision
+     */
+    public void setDate(Date date)
+    {
+        this.date = date;
+    }
+
+    /**
+     * @param version the number of the current revision, revision {@code N} being named {@code N.1}
+     */
+    public void setVersion(int version)
+    {
+        this.version = version;
+    }
+
+    /**
+     * @param history the RCS archive of the document history, see {@link RCSArchive}
+     */
+    public void setHistory(String history)
+    {
+        this.history = history;
+    }
+
+    /**
+     * @param fileName the name of the attachment
+     * @param data the content of the attachment
+     * @param attachmentDate the date of the attachment
+     */
+    public void addAttachment(String fileName, byte[] data, Date attachmentDate)
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append("<attachment>\n");
+        element(builder, "filename", fileName);
+        element(builder, "filesize", String.valueOf(data.length));
+        element(builder, "author", AUTHOR);
+        element(builder, "date", String.valueOf(attachmentDate.getTime()));
+        element(builder, "version", "1.1");
+        element(builder, "comment", "");
+        element(builder, "content", new String(Base64.encodeBase64(data, true)).trim());
+        builder.append("</attachment>\n");
+        this.attachments.add(builder.toString());
+    }
+
+    /**
+     * @param definition the class of the object
+     * @param guid the unique identifier of the object
+     * @param properties the values of the properties of the object: strings, dates or lists of strings
+     */
+    public void addObject(ClassDefinition definition, UUID guid, Map<String, Object> properties)
+    {
+        int number = 0;
+        for (String object : this.objects) {
+            if (object.contains("<className>" + definition.getName() + "</className>")) {
+                number++;
+            }
+        }
+
+        StringBuilder builder = new StringBuilder();
+        builder.append("<object>\n");
+        builder.append(definition.toXML());
+        element(builder, "name", getFullName());
+        element(builder, "number", String.valueOf(number));
+        element(builder, "className", definition.getName());
+        element(builder, "guid", guid.toString());
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            builder.append("<property>\n");
+            if (property.getValue() instanceof List) {
+                builder.append('<').append(property.getKey()).append(">\n");
+                for (Object value : (List< ? >) property.getValue()) {
+                    element(builder, "value", value.toString());
+                }
+                builder.append("</").append(property.getKey()).append(">\n");
+            } else if (property.getValue() instanceof Date) {
+                element(builder, property.getKey(),
+                    new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.S").format((Date) property.getValue()));
+            } else {
+                element(builder, property.getKey(), String.valueOf(property.getValue()));
+            }
+            builder.append("</property>\n");
+        }
+        builder.append("</object>\n");
+        this.objects.add(builder.toString());
+    }
+
+    /**
+     * @return the XML of the document
+     */
+    public String toXML()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n\n");
+        builder.append("<xwikidoc>\n");
+        element(builder, "web", this.space);
+        element(builder, "name", this.name);
+        element(builder, "language", "");
+        element(builder, "defaultLanguage", "en");
+        element(builder, "translation", "0");
+        element(builder, "parent", this.parent);
+        element(builder, "creator", AUTHOR);
+        element(builder, "author", AUTHOR);
+        element(builder, "customClass", "");
+        element(builder, "contentAuthor", AUTHOR);
+        element(builder, "creationDate", String.valueOf(this.creationDate.getTime()));
+        element(builder, "date", String.valueOf(this.date.getTime()));
+        element(builder, "contentUpdateDate", String.valueOf(this.date.getTime()));
+        element(builder, "version", this.version + ".1");
+        element(builder, "title", this.title);
+        element(builder, "template", "");
+        element(builder, "defaultTemplate", "");
+        element(builder, "validationScript", "");
+        element(builder, "comment", "");
+        element(builder, "minorEdit", "false");
+        element(builder, "syntaxId", "xwiki/2.0");
+        element(builder, "hidden", String.valueOf(this.hidden));
+        for (String attachment : this.attachments) {
+            builder.append(attachment);
+        }
+        for (String object : this.objects) {
+            builder.append(object);
+        }
+        element(builder, "content", this.content);
+        if (this.history != null) {
+            element(builder, "versions", this.history);
+        }
+        builder.append("</xwikidoc>\n");
+
+        return builder.toString();
+    }
+
+    private void element(StringBuilder builder, String element, String value)
+    {
+        builder.append('<').append(element).append('>');
+        builder.append(value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;"));
+        builder.append("</").append(element).append(">\n");
+    }
+}
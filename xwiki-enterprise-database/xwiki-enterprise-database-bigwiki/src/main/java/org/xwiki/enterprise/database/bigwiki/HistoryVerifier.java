@@ -0,0 +1,92 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.enterprise.database.bigwiki;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that the history generated by {@link BigWikiGenerator} has been imported: each generated page at version
+ * {@code N.1} must have {@code N} revisions in the versioning store ({@code xwikircs} table) of the built database.
+ *
+ * @version $Id$
+ * @since 3.2M3
+ */
+public final class HistoryVerifier
+{
+    /**
+     * The generated pages having a history, with their number of revisions in the versioning store.
+     */
+    private static final String QUERY = "select d.XWD_FULLNAME, d.XWD_VERSION, count(r.XWR_DOCID) from xwikidoc d "
+        + "left join xwikircs r on r.XWR_DOCID = d.XWD_ID where d.XWD_WEB like 'Space%' and d.XWD_VERSION <> '1.1' "
+        + "group by d.XWD_FULLNAME, d.XWD_VERSION";
+
+    /** Number of invalid pages listed in the error message. */
+    private static final int MAX_LISTED = 10;
+
+    private HistoryVerifier()
+    {
+    }
+
+    /**
+     * @param args the directory of the HSQLDB database
+     * @throws Exception if the database can't be read or if the history of a page is missing
+     */
+    public static void main(String[] args) throws Exception
+    {
+        Class.forName("org.hsqldb.jdbcDriver");
+        String url = String.format("jdbc:hsqldb:file:%s/xwiki_db;ifexists=true;shutdown=true",
+            new File(args[0]).getAbsolutePath());
+        Connection connection = DriverManager.getConnection(url, "sa", "");
+        int pages = 0;
+        List<String> invalid = new ArrayList<String>();
+        try {
+            Statement statement = connection.createStatement();
+            ResultSet result = statement.executeQuery(QUERY);
+            while (result.next()) {
+                pages++;
+                String version = result.getString(2);
+                int expected = Integer.parseInt(version.substring(0, version.indexOf('.')));
+                if (result.getInt(3) != expected) {
+                    invalid.add(String.format("%s (version %s, %d revisions)", result.getString(1), version,
+                        result.getInt(3)));
+                }
+            }
+            statement.execute("SHUTDOWN");
+        } finally {
+            connection.close();
+        }
+
+        if (pages == 0) {
+            throw new Exception("No generated page has a history, check the historyRatio of the generator");
+        }
+        if (!invalid.isEmpty()) {
+            throw new Exception(String.format("The history of %d of the %d generated pages having one is missing: %s",
+                invalid.size(), pages, invalid.subList(0, Math.min(MAX_LISTED, invalid.size()))));
+        }
+        System.out.println(
+            String.format("All the %d generated pages having a history have all their revisions", pages));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.enterprise.database.bigwiki;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Builds the RCS archive holding the history of a document, in the format stored by XWiki in the {@code <versions>}
+ * element of the document XML. The last revision is stored as is and each previous revision as the edit script which
+ * turns the following revision into it. Only revisions which have the same number of lines are supported, which is
+ * enough for generated documents and keeps the edit scripts trivial.
+ *
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class RCSArchive
+{
+    private static final String AUTHOR = "XWiki.Admin";
+
+    private final List<String[]> revisions = new ArrayList<String[]>();
+
+    private final List<Date> dates = new ArrayList<Date>();
+
+    /**
+     * @param xml the XML of the next revision of the document, without the history
+     * @param date the date of the revision
+     */
+    public void addRevision(String xml, Date date)
+    {
+        String[] lines = xml.split("\n", -1);
+        if (!this.revisions.isEmpty() && this.revisions.get(0).length != lines.length) {
+            throw new IllegalArgumentException("All the revisions must have the same number of lines");
+        }
+        this.revisions.add(lines);
+        this.dates.add(date);
+    }
+
+    /**
+     * @return the archive, revision {@code N} being named {@code N.1}
+     */
+    @Override
+    public String toString()
+    {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        int head = this.revisions.size();
+        StringBuilder builder = new StringBuilder();
+        builder.append("head\t").append(head).append(".1;\n");
+        builder.append("access;\nsymbols;\nlocks; strict;\ncomment\t@# @;\n\n");
+
+        for (int i = head; i >= 1; i--) {
+            builder.append("\n").append(i).append(".1\n");
+            builder.append("date\t").append(dateFormat.format(this.dates.get(i - 1)));
+            builder.append(";\tauthor\t").append(AUTHOR).append(";\tstate\tExp;\n");
+            builder.append("branches;\n");
+            builder.append("next\t").append(i > 1 ? (i - 1) + ".1" : "").append(";\n");
+        }
+
+        builder.append("\n\ndesc\n@@\n");
+
+        for (int i = head; i >= 1; i--) {
+            builder.append("\n\n").append(i).append(".1\nlog\n@@\ntext\n@");
+            if (i == head) {
+                builder.append(escape(join(this.revisions.get(i - 1))));
+            } else {
+                builder.append(escape(getEditScript(this.revisions.get(i), this.revisions.get(i - 1))));
+            }
+            builder.append("@\n");
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * @return the RCS edit script which turns the first text into the second one, replacing the lines which differ
+     */
+    private String getEditScript(String[] from, String[] to)
+    {
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < from.length; i++) {
+            if (!from[i].equals(to[i])) {
+                // Line numbers start at 1 and refer to the text before any modification.
+                script.append('d').append(i + 1).append(" 1\n");
+                script.append('a').append(i + 1).append(" 1\n");
+                script.append(to[i]).append('\n');
+            }
+        }
+
+        return script.toString();
+    }
+
+    private String join(String[] lines)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < lines.length; i++) {
+            builder.append(i > 0 ? "\n" : "").append(lines[i]);
+        }
+
+        return builder.toString();
+    }
+
+    private String escape(String text)
+    {
+        return text.replace("@", "@@");
+    }
+}
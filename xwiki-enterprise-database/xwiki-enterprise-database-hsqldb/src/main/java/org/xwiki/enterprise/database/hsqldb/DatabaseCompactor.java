@@ -0,0 +1,296 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.enterprise.database.hsqldb;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Prepares the HSQLDB database built by the import for the distribution: the big tables are converted from MEMORY
+ * tables, entirely loaded from the script file when the database is opened, to CACHED tables, read on demand from the
+ * data file through a cache of bounded size. The database is then compacted and shutdown cleanly so that nothing is
+ * replayed when it's first opened.
+ * <p>
+ * The sizes of the database files and the time needed to open the database are reported before and after. Opening
+ * the database is only the part of the first start of the distribution spent in HSQLDB: the whole first start is
+ * measured by the startup tests, on distributions built with and without the compaction (see the
+ * {@code xwiki.db.compact.phase} property of this module). The configuration is passed as {@code key=value} arguments
+ * after the database directory and name, see {@link #DEFAULTS} for the supported keys and their default values.
+ *
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class DatabaseCompactor
+{
+    /** The default configuration. */
+    public static final Properties DEFAULTS = new Properties();
+
+    static {
+        // Size of the data of a MEMORY table in the script file, in bytes, above which it's converted to a CACHED table
+        DEFAULTS.setProperty("minTableSize", "262144");
+        // The cache holds at most 3 * 2^cacheScale rows and 2^cacheSizeScale bytes per row on average, i.e. about 24MB
+        DEFAULTS.setProperty("cacheScale", "13");
+        DEFAULTS.setProperty("cacheSizeScale", "10");
+        // File where to write the report, in addition to the standard output
+        DEFAULTS.setProperty("report", "");
+    }
+
+    private static final String ENCODING = "ISO-8859-1";
+
+    private static final Pattern CREATE_MEMORY_TABLE = Pattern.compile("^CREATE MEMORY TABLE ([^(\\s]+)");
+
+    private static final Pattern INSERT = Pattern.compile("^INSERT INTO ([^\\s]+) VALUES");
+
+    private final File directory;
+
+    private final String name;
+
+    private final Properties configuration;
+
+    /**
+     * @param directory the directory of the database
+     * @param name the name of the database, i.e. the prefix of its files
+     * @param configuration the configuration, see {@link #DEFAULTS}
+     */
+    public DatabaseCompactor(File directory, String name, Properties configuration)
+    {
+        this.directory = directory;
+        this.name = name;
+        this.configuration = new Properties(DEFAULTS);
+        this.configuration.putAll(configuration);
+    }
+
+    /**
+     * @param args the database directory and name, followed by {@code key=value} configuration entries
+     * @throws Exception if the database can't be compacted
+     */
+    public static void main(String[] args) throws Exception
+    {
+        Properties configuration = new Properties();
+        for (int i = 2; i < args.length; i++) {
+            int separator = args[i].indexOf('=');
+            configuration.setProperty(args[i].substring(0, separator).trim(), args[i].substring(separator + 1).trim());
+        }
+
+        Class.forName("org.hsqldb.jdbcDriver");
+        DatabaseCompactor compactor = new DatabaseCompactor(new File(args[0]), args[1], configuration);
+        String report = compactor.compact();
+        System.out.print(report);
+        String reportFile = configuration.getProperty("report", "").trim();
+        if (reportFile.length() > 0) {
+            FileUtils.writeStringToFile(new File(reportFile), report, "UTF-8");
+        }
+    }
+
+    /**
+     * Convert the big tables, configure the cache and compact the database.
+     *
+     * @return the report
+     * @throws Exception if the database can't be compacted
+     */
+    public String compact() throws Exception
+    {
+        Map<String, Long> filesBefore = getFileSizes();
+        long openBefore = open("SHUTDOWN");
+
+        Set<String> converted = convertTables();
+        configureCache();
+        long start = System.currentTimeMillis();
+        // Opening the database loads the converted tables in the data file, compacted when it's shutdown.
+        open("SHUTDOWN COMPACT");
+        long compaction = System.currentTimeMillis() - start;
+
+        Map<String, Long> filesAfter = getFileSizes();
+        long openAfter = open("SHUTDOWN COMPACT");
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Converted %d tables to CACHED tables: %s%n", converted.size(), converted));
+        report.append(String.format("Compacted the database in %d ms%n", compaction));
+        report.append(String.format("%-24s %14s %14s%n", "File", "Before", "After"));
+        Set<String> files = new TreeSet<String>(filesBefore.keySet());
+        files.addAll(filesAfter.keySet());
+        long totalBefore = 0;
+        long totalAfter = 0;
+        for (String file : files) {
+            Long before = filesBefore.get(file);
+            Long after = filesAfter.get(file);
+            report.append(String.format("%-24s %14s %14s%n", file, before != null ? before : "-",
+                after != null ? after : "-"));
+            totalBefore += before != null ? before : 0;
+            totalAfter += after != null ? after : 0;
+        }
+        report.append(String.format("%-24s %14d %14d%n", "total", totalBefore, totalAfter));
+        // Opening the database is what the first start of the distribution spends in HSQLDB.
+        report.append(String.format("%-24s %11d ms %11d ms%n", "open", openBefore, openAfter));
+
+        return report.toString();
+    }
+
+    /**
+     * Open the database and shut it down.
+     *
+     * @param shutdown the shutdown statement
+     * @return the time needed to open the database, in milliseconds
+     */
+    private long open(String shutdown) throws SQLException
+    {
+        long start = System.currentTimeMillis();
+        Connection connection =
+            DriverManager.getConnection("jdbc:hsqldb:file:" + new File(this.directory, this.name).getPath(), "sa", "");
+        long duration = System.currentTimeMillis() - start;
+        try {
+            Statement statement = connection.createStatement();
+            try {
+                statement.execute(shutdown);
+            } finally {
+                statement.close();
+            }
+        } finally {
+            connection.close();
+        }
+
+        return duration;
+    }
+
+    /**
+     * Rewrite the script file so that the MEMORY tables holding more data than the configured size become CACHED
+     * tables. Their rows stay in the script file until the database is opened again.
+     *
+     * @return the names of the converted tables
+     */
+    private Set<String> convertTables() throws IOException
+    {
+        Set<String> converted = new TreeSet<String>();
+        // Only the text format of the script file can be rewritten.
+        if (!"0".equals(loadProperties().getProperty("hsqldb.script_format", "0"))) {
+            return converted;
+        }
+
+        File script = new File(this.directory, this.name + ".script");
+        long minTableSize = Long.parseLong(this.configuration.getProperty("minTableSize"));
+
+        Map<String, Long> tableSizes = new TreeMap<String, Long>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(script), ENCODING));
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                Matcher matcher = INSERT.matcher(line);
+                if (matcher.find()) {
+                    Long size = tableSizes.get(matcher.group(1));
+                    tableSizes.put(matcher.group(1), (size != null ? size : 0) + line.length());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        File convertedScript = new File(this.directory, this.name + ".script.new");
+        reader = new BufferedReader(new InputStreamReader(new FileInputStream(script), ENCODING));
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(convertedScript), ENCODING));
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                Matcher matcher = CREATE_MEMORY_TABLE.matcher(line);
+                if (matcher.find()) {
+                    Long size = tableSizes.get(matcher.group(1));
+                    if (size != null && size >= minTableSize) {
+                        line = "CREATE CACHED TABLE " + line.substring("CREATE MEMORY TABLE ".length());
+                        converted.add(matcher.group(1));
+                    }
+                }
+                writer.write(line);
+                writer.write('\n');
+            }
+        } finally {
+            reader.close();
+            writer.close();
+        }
+
+        FileUtils.forceDelete(script);
+        FileUtils.moveFile(convertedScript, script);
+
+        return converted;
+    }
+
+    private void configureCache() throws IOException
+    {
+        Properties properties = loadProperties();
+        properties.setProperty("hsqldb.cache_scale", this.configuration.getProperty("cacheScale"));
+        properties.setProperty("hsqldb.cache_size_scale", this.configuration.getProperty("cacheSizeScale"));
+
+        OutputStream out = new FileOutputStream(getPropertiesFile());
+        try {
+            properties.store(out, "HSQL Database Engine");
+        } finally {
+            out.close();
+        }
+    }
+
+    private Properties loadProperties() throws IOException
+    {
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(getPropertiesFile());
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+
+        return properties;
+    }
+
+    private File getPropertiesFile()
+    {
+        return new File(this.directory, this.name + ".properties");
+    }
+
+    private Map<String, Long> getFileSizes()
+    {
+        Map<String, Long> sizes = new LinkedHashMap<String, Long>();
+        for (File file : this.directory.listFiles()) {
+            if (file.isFile()) {
+                sizes.put(file.getName(), file.length());
+            }
+        }
+
+        return sizes;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.enterprise.database.importer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Reuses an embedded database imported from the same content instead of importing it again. The content is identified
+ * by a digest of the expanded XAR and of the Hibernate configuration. A zip of the database is kept in a cache
+ * directory right after the import, and the database is restored from it by the next builds of the same content.
+ * <p>
+ * Only the raw import is cached: the steps of the build which change the database after the import (index pack,
+ * Lucene index, compaction) are always run again on the restored database. The database directory is thus never
+ * reused as is, since it may have been post-processed, completely or not if a step failed.
+ *
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class DatabaseCache
+{
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+
+    private static final String ENCODING = "UTF-8";
+
+    /** The directory of the embedded database. */
+    private final File databaseDirectory;
+
+    /** Where the zips of the imported databases are kept. */
+    private final File cacheDirectory;
+
+    /**
+     * @param databaseDirectory the directory of the embedded database
+     * @param cacheDirectory where the zips of the imported databases are kept, {@code null} to keep them next to the
+     *            database directory, and thus only reuse the imports of the same build directory
+     */
+    public DatabaseCache(File databaseDirectory, File cacheDirectory)
+    {
+        this.databaseDirectory = databaseDirectory;
+        this.cacheDirectory = cacheDirectory != null ? cacheDirectory
+            : new File(databaseDirectory.getParentFile(), databaseDirectory.getName() + "-cache");
+    }
+
+    /**
+     * @param xarDirectory the expanded XAR
+     * @param hibernateConfig the Hibernate configuration file
+     * @return the digest of the names and contents of the files of the expanded XAR and of the Hibernate configuration
+     * @throws IOException if a file can't be read
+     */
+    public static String digest(File xarDirectory, File hibernateConfig) throws IOException
+    {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Unsupported digest algorithm " + DIGEST_ALGORITHM);
+        }
+
+        List<String> paths = new ArrayList<String>();
+        collectPaths(xarDirectory, "", paths);
+        // The order of the directory listing depends on the file system.
+        Collections.sort(paths);
+        for (String path : paths) {
+            digest.update(path.getBytes(ENCODING));
+            digest.update(FileUtils.readFileToByteArray(new File(xarDirectory, path)));
+        }
+        digest.update(FileUtils.readFileToByteArray(hibernateConfig));
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+
+        return hex.toString();
+    }
+
+    /**
+     * Replace the database directory by the database imported from the content with the given digest, if it's cached.
+     *
+     * @param digest the digest of the content
+     * @return {@code true} if the imported database has been restored, {@code false} if the content must be imported,
+     *         in which case the database directory has been removed
+     * @throws IOException if the database can't be restored
+     */
+    public boolean restore(String digest) throws IOException
+    {
+        // Never import on top of a previous database, nor reuse one which has been post-processed.
+        FileUtils.deleteDirectory(this.databaseDirectory);
+
+        File zip = getZip(digest);
+        if (!zip.isFile()) {
+            return false;
+        }
+        unzip(zip);
+
+        return true;
+    }
+
+    /**
+     * Keep a zip of the database directory, which must hold the database just imported from the content with the
+     * given digest, before any other change.
+     *
+     * @param digest the digest of the content
+     * @throws IOException if the database can't be stored in the cache
+     */
+    public void store(String digest) throws IOException
+    {
+        File zip = getZip(digest);
+        zip.getParentFile().mkdirs();
+        // Zip in a temporary file first so that concurrent builds never read an incomplete zip.
+        File temporaryZip = File.createTempFile(digest, ".tmp", zip.getParentFile());
+        zip(temporaryZip);
+        if (!temporaryZip.renameTo(zip)) {
+            FileUtils.deleteQuietly(temporaryZip);
+        }
+    }
+
+    private File getZip(String digest)
+    {
+        return new File(this.cacheDirectory, digest + ".zip");
+    }
+
+    private void zip(File zip) throws IOException
+    {
+        List<String> paths = new ArrayList<String>();
+        collectPaths(this.databaseDirectory, "", paths);
+
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+        try {
+            for (String path : paths) {
+                out.putNextEntry(new ZipEntry(path));
+                InputStream in = new FileInputStream(new File(this.databaseDirectory, path));
+                try {
+                    IOUtils.copy(in, out);
+                } finally {
+                    in.close();
+                }
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private void unzip(File zip) throws IOException
+    {
+        String directory = this.databaseDirectory.getCanonicalPath() + File.separator;
+        ZipInputStream in = new ZipInputStream(new FileInputStream(zip));
+        try {
+            for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                File file = new File(this.databaseDirectory, entry.getName()).getCanonicalFile();
+                if (!file.getPath().startsWith(directory)) {
+                    throw new IOException(String.format("The entry [%s] of [%s] is outside of the database directory",
+                        entry.getName(), zip));
+                }
+                file.getParentFile().mkdirs();
+                OutputStream out = new FileOutputStream(file);
+                try {
+                    IOUtils.copy(in, out);
+                } finally {
+                    out.close();
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Collect the paths of the files of a directory, relative to it and with forward slashes.
+     */
+    private static void collectPaths(File directory, String prefix, List<String> paths)
+    {
+        for (File file : directory.listFiles()) {
+            if (file.isDirectory()) {
+                collectPaths(file, prefix + file.getName() + '/', paths);
+            } else {
+                paths.add(prefix + file.getName());
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.enterprise.database.importer;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Drops the secondary indexes of the database before a bulk import and creates them again afterwards, which is much
+ * cheaper than maintaining them row by row. Only the non unique indexes declared in the mapping are handled: the
+ * primary keys, the unique constraints and the indexes generated by the database for its own constraints are kept.
+ *
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class IndexDeferrer
+{
+    /**
+     * Prefixes of the names the databases give to the indexes they generate for their constraints (HSQLDB, Derby and
+     * H2).
+     */
+    private static final String[] GENERATED_PREFIXES =
+        new String[] {"SYS_", "SQL", "PRIMARY_KEY_", "CONSTRAINT_INDEX_"};
+
+    /** Names H2 gives to the indexes of the foreign keys, made of the constraint name and a suffix. */
+    private static final Pattern GENERATED_FOREIGN_KEY_INDEX = Pattern.compile("FK[0-9A-F]+_INDEX_[0-9A-F]+");
+
+    /** The dropped indexes, by name. */
+    private final Map<String, Index> indexes = new LinkedHashMap<String, Index>();
+
+    /**
+     * A secondary index, as read from the database meta data.
+     */
+    private static class Index
+    {
+        private final String name;
+
+        private final String table;
+
+        /** The columns, by position in the index. */
+        private final Map<Integer, String> columns = new TreeMap<Integer, String>();
+
+        Index(String name, String table)
+        {
+            this.name = name;
+            this.table = table;
+        }
+    }
+
+    /**
+     * @param connection the connection to the database
+     * @return {@code true} if the indexes of this database can be deferred
+     * @throws SQLException if the database can't be identified
+     */
+    public static boolean isSupported(Connection connection) throws SQLException
+    {
+        // MySQL needs the length of the indexed prefix for text columns, which isn't part of the meta data.
+        return !connection.getMetaData().getDatabaseProductName().toLowerCase().contains("mysql");
+    }
+
+    /**
+     * Drop the secondary indexes of all the tables.
+     *
+     * @param connection the connection to the database
+     * @return the number of dropped indexes
+     * @throws SQLException if the meta data can't be read
+     */
+    public int drop(Connection connection) throws SQLException
+    {
+        DatabaseMetaData metadata = connection.getMetaData();
+        String catalog = connection.getCatalog();
+
+        List<String> tables = new ArrayList<String>();
+        ResultSet tableSet = metadata.getTables(catalog, null, "%", new String[] {"TABLE"});
+        try {
+            while (tableSet.next()) {
+                tables.add(tableSet.getString("TABLE_NAME"));
+            }
+        } finally {
+            tableSet.close();
+        }
+
+        Map<String, Index> found = new LinkedHashMap<String, Index>();
+        for (String table : tables) {
+            ResultSet indexSet = metadata.getIndexInfo(catalog, null, table, false, false);
+            try {
+                while (indexSet.next()) {
+                    String name = indexSet.getString("INDEX_NAME");
+                    if (name == null || !indexSet.getBoolean("NON_UNIQUE")
+                        || indexSet.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic || isGenerated(name)) {
+                        continue;
+                    }
+                    Index index = found.get(name);
+                    if (index == null) {
+                        index = new Index(name, table);
+                        found.put(name, index);
+                    }
+                    index.columns.put(Integer.valueOf(indexSet.getShort("ORDINAL_POSITION")),
+                        indexSet.getString("COLUMN_NAME"));
+                }
+            } finally {
+                indexSet.close();
+            }
+        }
+
+        Statement statement = connection.createStatement();
+        try {
+            for (Index index : found.values()) {
+                try {
+                    statement.execute("DROP INDEX " + index.name);
+                    this.indexes.put(index.name, index);
+                } catch (SQLException e) {
+                    // Some indexes are needed by the constraints of the database, keep them.
+                    System.out.println(String.format("Keeping index [%s]: %s", index.name, e.getMessage()));
+                }
+            }
+        } finally {
+            statement.close();
+        }
+
+        return this.indexes.size();
+    }
+
+    /**
+     * Create again the indexes dropped by {@link #drop(Connection)}.
+     *
+     * @param connection the connection to the database
+     * @return the number of created indexes
+     * @throws SQLException if an index can't be created
+     */
+    public int create(Connection connection) throws SQLException
+    {
+        Statement statement = connection.createStatement();
+        try {
+            for (Index index : this.indexes.values()) {
+                StringBuilder sql = new StringBuilder();
+                sql.append("CREATE INDEX ").append(index.name).append(" ON ").append(index.table).append(" (");
+                boolean first = true;
+                for (String column : index.columns.values()) {
+                    if (!first) {
+                        sql.append(", ");
+                    }
+                    sql.append(column);
+                    first = false;
+                }
+                sql.append(')');
+                statement.execute(sql.toString());
+            }
+        } finally {
+            statement.close();
+        }
+
+        int count = this.indexes.size();
+        this.indexes.clear();
+
+        return count;
+    }
+
+    private static boolean isGenerated(String indexName)
+    {
+        String upperCaseName = indexName.toUpperCase();
+        for (String prefix : GENERATED_PREFIXES) {
+            if (upperCaseName.startsWith(prefix)) {
+                return true;
+            }
+        }
+
+        return GENERATED_FOREIGN_KEY_INDEX.matcher(upperCaseName).matches();
+    }
+}
@@ -0,0 +1,471 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.enterprise.database.importer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.dom4j.Document;
+import org.dom4j.io.SAXReader;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.tool.packager.AbstractPackager;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.store.XWikiHibernateStore;
+import com.xpn.xwiki.web.Utils;
+
+/**
+ * Imports an expanded XAR into a database like the {@code import} goal of the packager plugin, but faster: the
+ * documents are partitioned in batches imported by several threads, each batch in a single transaction with JDBC batch
+ * inserts, and the secondary indexes are only created once all the documents are imported. The time spent in each
+ * phase is reported at the end.
+ * <p>
+ * The documents are saved directly in the store, without the observation events sent by a regular save, which is what
+ * is expected when building a database. As with the packager plugin the history of the documents isn't imported,
+ * unless the {@code history} configuration entry is {@code true}: the document is then saved with the version it has
+ * in the XAR and its archive (the {@code versions} element) is saved in the versioning store. Otherwise the archive
+ * of the document is reset to its current version, as the packager plugin does. The import fails if a document has no
+ * archive in the end.
+ * <p>
+ * Embedded databases are only imported when their content changes, the import being restored from a cache otherwise,
+ * see {@link DatabaseCache}.
+ * <p>
+ * The configuration is passed as {@code key=value} arguments after the directory and the Hibernate configuration file,
+ * see {@link #DEFAULTS} for the supported keys and their default values.
+ *
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class ParallelImporter extends AbstractPackager
+{
+    /** The default configuration. */
+    public static final Properties DEFAULTS = new Properties();
+
+    static {
+        DEFAULTS.setProperty("wiki", "xwiki");
+        DEFAULTS.setProperty("threads", String.valueOf(Runtime.getRuntime().availableProcessors()));
+        // Number of documents imported in a single transaction, also used as the JDBC batch size
+        DEFAULTS.setProperty("batchSize", "50");
+        DEFAULTS.setProperty("deferIndexes", "true");
+        // Import the history of the documents held by their versions element
+        DEFAULTS.setProperty("history", "false");
+        // File where to write the timing report, in addition to the standard output
+        DEFAULTS.setProperty("report", "");
+        // Directory of an embedded database, restored from the cache when the content has already been imported, see
+        // DatabaseCache. Empty for the other databases, which are always imported.
+        DEFAULTS.setProperty("databaseDirectory", "");
+        // Where to keep a zip of the embedded databases imported from each content, empty to keep them next to the
+        // database directory
+        DEFAULTS.setProperty("cacheDirectory", "");
+    }
+
+    /** The documents having no revision in the versioning store. */
+    private static final String MISSING_ARCHIVES = "select d.XWD_FULLNAME from xwikidoc d where not exists "
+        + "(select r.XWR_DOCID from xwikircs r where r.XWR_DOCID = d.XWD_ID)";
+
+    /** Number of documents without archive listed in the error message. */
+    private static final int MAX_LISTED = 10;
+
+    private final Properties configuration;
+
+    /** Duration of each phase, in milliseconds. */
+    private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+
+    /** Time spent parsing the documents by all the threads, in nanoseconds. */
+    private final AtomicLong parseTime = new AtomicLong();
+
+    /** Time spent saving the documents by all the threads, in nanoseconds. */
+    private final AtomicLong saveTime = new AtomicLong();
+
+    private int documentCount;
+
+    /** The digest of the database restored from the cache, if the import has been skipped. */
+    private String reusedDigest;
+
+    /**
+     * Imports the batches of documents from a shared queue until it's empty, in its own XWiki and execution contexts.
+     */
+    private class Worker implements Callable<Integer>
+    {
+        private final Queue<List<File>> batches;
+
+        private final XWikiContext context;
+
+        Worker(Queue<List<File>> batches, XWikiContext context)
+        {
+            this.batches = batches;
+            // The main context has no Hibernate session at this point so the clone doesn't share any.
+            this.context = (XWikiContext) context.clone();
+        }
+
+        public Integer call() throws Exception
+        {
+            Execution execution = Utils.getComponent(Execution.class);
+            ExecutionContext executionContext = new ExecutionContext();
+            // Bridge with the old XWiki Context, required for the old code.
+            executionContext.setProperty("xwikicontext", this.context);
+            execution.setContext(executionContext);
+            Utils.getComponent(ExecutionContextManager.class).initialize(executionContext);
+
+            int count = 0;
+            try {
+                for (List<File> batch = this.batches.poll(); batch != null; batch = this.batches.poll()) {
+                    importBatch(batch);
+                    count += batch.size();
+                }
+            } finally {
+                execution.removeContext();
+            }
+
+            return count;
+        }
+
+        private void importBatch(List<File> batch) throws Exception
+        {
+            XWikiHibernateStore store = this.context.getWiki().getHibernateStore();
+            SAXReader reader = new SAXReader();
+            boolean history = Boolean.parseBoolean(getProperty("history"));
+
+            store.beginTransaction(this.context);
+            boolean commit = false;
+            try {
+                for (File file : batch) {
+                    long start = System.nanoTime();
+                    Document xml = reader.read(file);
+                    XWikiDocument document =
+                        new XWikiDocument(new DocumentReference(this.context.getDatabase(), "Main", "WebHome"));
+                    document.fromXML(xml, history);
+                    long parsed = System.nanoTime();
+                    if (history && document.getDocumentArchive() != null) {
+                        // Keep the version of the XAR instead of incrementing it and adding a revision to the archive.
+                        document.setContentDirty(false);
+                        document.setMetaDataDirty(false);
+                        store.saveXWikiDoc(document, this.context, false);
+                        this.context.getWiki().getVersioningStore()
+                            .saveXWikiDocArchive(document.getDocumentArchive(), false, this.context);
+                    } else {
+                        store.saveXWikiDoc(document, this.context, false);
+                        // A single revision, as the packager plugin creates when installing a package without history.
+                        this.context.getWiki().getVersioningStore().resetRCSArchive(document, false, this.context);
+                    }
+                    parseTime.addAndGet(parsed - start);
+                    saveTime.addAndGet(System.nanoTime() - parsed);
+                }
+                commit = true;
+            } finally {
+                store.endTransaction(this.context, commit);
+            }
+        }
+    }
+
+    /**
+     * @param configuration the configuration, see {@link #DEFAULTS}
+     */
+    public ParallelImporter(Properties configuration)
+    {
+        this.configuration = new Properties(DEFAULTS);
+        this.configuration.putAll(configuration);
+    }
+
+    /**
+     * @param args the expanded XAR directory and the Hibernate configuration file, followed by {@code key=value}
+     *            configuration entries
+     * @throws Exception if the import fails
+     */
+    public static void main(String[] args) throws Exception
+    {
+        Properties configuration = new Properties();
+        for (int i = 2; i < args.length; i++) {
+            int separator = args[i].indexOf('=');
+            configuration.setProperty(args[i].substring(0, separator).trim(), args[i].substring(separator + 1).trim());
+        }
+
+        ParallelImporter importer = new ParallelImporter(configuration);
+        importer.importDocuments(new File(args[0]), new File(args[1]));
+        importer.writeReport(System.out);
+        String report = importer.configuration.getProperty("report").trim();
+        if (report.length() > 0) {
+            File reportFile = new File(report);
+            reportFile.getParentFile().mkdirs();
+            PrintStream out = new PrintStream(reportFile, "UTF-8");
+            try {
+                importer.writeReport(out);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Import all the documents of an expanded XAR.
+     *
+     * @param sourceDirectory the expanded XAR directory
+     * @param hibernateConfig the Hibernate configuration file of the database
+     * @return the number of imported documents, 0 if the database imported from the same content has been restored
+     * @throws Exception if the import fails
+     */
+    public int importDocuments(File sourceDirectory, File hibernateConfig) throws Exception
+    {
+        long start = System.currentTimeMillis();
+        DatabaseCache cache = null;
+        String digest = null;
+        if (getProperty("databaseDirectory").trim().length() > 0) {
+            String cacheDirectory = getProperty("cacheDirectory").trim();
+            cache = new DatabaseCache(new File(getProperty("databaseDirectory").trim()),
+                cacheDirectory.length() > 0 ? new File(cacheDirectory) : null);
+            digest = DatabaseCache.digest(sourceDirectory, hibernateConfig);
+            if (Boolean.parseBoolean(getProperty("history"))) {
+                // Not the same database as the one imported without history.
+                digest += "-history";
+            }
+            boolean reused = cache.restore(digest);
+            start = endPhase("check cache", start);
+            if (reused) {
+                this.reusedDigest = digest;
+                return 0;
+            }
+        }
+
+        // The documents are in the sub directories, the package descriptor is at the root.
+        List<File> files = new ArrayList<File>();
+        for (File directory : sourceDirectory.listFiles()) {
+            if (directory.isDirectory()) {
+                collectDocuments(directory, files);
+            }
+        }
+        // Keep a stable order so that the batches are the same from one build to the other.
+        Collections.sort(files);
+        XWikiContext context = createXWikiContext(getProperty("wiki"), createBatchingConfig(hibernateConfig));
+        start = endPhase("initialize", start);
+
+        IndexDeferrer deferrer = null;
+        if (Boolean.parseBoolean(getProperty("deferIndexes"))) {
+            deferrer = new IndexDeferrer();
+            if (!dropIndexes(deferrer, context)) {
+                deferrer = null;
+            }
+            start = endPhase("drop indexes", start);
+        }
+
+        this.documentCount = importFiles(files, context);
+        start = endPhase("import", start);
+
+        if (deferrer != null) {
+            createIndexes(deferrer, context);
+            start = endPhase("create indexes", start);
+        }
+
+        verifyArchives(context);
+        start = endPhase("verify archives", start);
+
+        // The embedded databases (HSQLDB) must be shutdown for the last transactions to be written on disk.
+        context.getWiki().getHibernateStore().shutdownHibernate(context);
+        disposeXWikiContext(context);
+        start = endPhase("shutdown", start);
+
+        // Cached before the next steps of the build change the database, they're run again on the restored database.
+        if (cache != null) {
+            cache.store(digest);
+            endPhase("store in cache", start);
+        }
+
+        return this.documentCount;
+    }
+
+    /**
+     * @param out where to write the duration of each phase of the last import
+     */
+    public void writeReport(PrintStream out)
+    {
+        if (this.reusedDigest != null) {
+            out.println(String.format("Restored the database imported from the same content (%s)", this.reusedDigest));
+        } else {
+            out.println(String.format("Imported %d documents with %s threads in batches of %s", this.documentCount,
+                getProperty("threads"), getProperty("batchSize")));
+        }
+        long total = 0;
+        for (Map.Entry<String, Long> phase : this.phases.entrySet()) {
+            out.println(String.format("  %-20s %8d ms", phase.getKey(), phase.getValue()));
+            total += phase.getValue();
+        }
+        out.println(String.format("  %-20s %8d ms", "total", total));
+        // Cumulated over the threads, so these can be greater than the duration of the import phase.
+        out.println(String.format("  %-20s %8d ms", "parse (all threads)", this.parseTime.get() / 1000000));
+        out.println(String.format("  %-20s %8d ms", "save (all threads)", this.saveTime.get() / 1000000));
+    }
+
+    private int importFiles(List<File> files, XWikiContext context) throws Exception
+    {
+        int batchSize = Integer.parseInt(getProperty("batchSize"));
+        Queue<List<File>> batches = new ConcurrentLinkedQueue<List<File>>();
+        for (int i = 0; i < files.size(); i += batchSize) {
+            batches.add(new ArrayList<File>(files.subList(i, Math.min(i + batchSize, files.size()))));
+        }
+
+        int threads = Integer.parseInt(getProperty("threads"));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> workers = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < threads; i++) {
+                workers.add(executor.submit(new Worker(batches, context)));
+            }
+            int count = 0;
+            for (Future<Integer> worker : workers) {
+                count += worker.get();
+            }
+            return count;
+        } catch (ExecutionException e) {
+            // Stop the other workers as soon as one fails.
+            batches.clear();
+            throw new Exception("Failed to import the documents", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private boolean dropIndexes(IndexDeferrer deferrer, XWikiContext context) throws Exception
+    {
+        XWikiHibernateStore store = context.getWiki().getHibernateStore();
+        store.beginTransaction(context);
+        boolean commit = false;
+        try {
+            boolean supported = IndexDeferrer.isSupported(store.getSession(context).connection());
+            if (supported) {
+                System.out.println(String.format("Dropped %d indexes",
+                    deferrer.drop(store.getSession(context).connection())));
+            }
+            commit = true;
+            return supported;
+        } finally {
+            store.endTransaction(context, commit);
+        }
+    }
+
+    /**
+     * Make sure that every document has an archive in the versioning store, the history of a document without one
+     * failing to load.
+     */
+    private void verifyArchives(XWikiContext context) throws Exception
+    {
+        List<String> missing = new ArrayList<String>();
+        XWikiHibernateStore store = context.getWiki().getHibernateStore();
+        store.beginTransaction(context);
+        try {
+            Statement statement = store.getSession(context).connection().createStatement();
+            try {
+                ResultSet result = statement.executeQuery(MISSING_ARCHIVES);
+                while (result.next()) {
+                    missing.add(result.getString(1));
+                }
+            } finally {
+                statement.close();
+            }
+        } finally {
+            store.endTransaction(context, false);
+        }
+
+        if (!missing.isEmpty()) {
+            throw new Exception(String.format("%d of the %d imported documents have no archive: %s", missing.size(),
+                this.documentCount, missing.subList(0, Math.min(MAX_LISTED, missing.size()))));
+        }
+    }
+
+    private void createIndexes(IndexDeferrer deferrer, XWikiContext context) throws Exception
+    {
+        XWikiHibernateStore store = context.getWiki().getHibernateStore();
+        store.beginTransaction(context);
+        boolean commit = false;
+        try {
+            System.out.println(String.format("Created %d indexes",
+                deferrer.create(store.getSession(context).connection())));
+            commit = true;
+        } finally {
+            store.endTransaction(context, commit);
+        }
+    }
+
+    /**
+     * Copy the Hibernate configuration with JDBC batching enabled, unless it's already configured.
+     */
+    private File createBatchingConfig(File hibernateConfig) throws IOException
+    {
+        String content = FileUtils.readFileToString(hibernateConfig, "UTF-8");
+        if (!content.contains("jdbc.batch_size")) {
+            String properties =
+                String.format("<property name=\"jdbc.batch_size\">%s</property>\n"
+                    + "    <property name=\"order_inserts\">true</property>\n"
+                    + "    <property name=\"order_updates\">true</property>\n"
+                    + "  </session-factory>", getProperty("batchSize"));
+            content = content.replace("</session-factory>", properties);
+        }
+
+        File batchingConfig = new File(hibernateConfig.getParentFile(), "hibernate-import.cfg.xml");
+        FileUtils.writeStringToFile(batchingConfig, content, "UTF-8");
+
+        return batchingConfig;
+    }
+
+    private void collectDocuments(File directory, List<File> files)
+    {
+        for (File file : directory.listFiles()) {
+            if (file.isDirectory()) {
+                collectDocuments(file, files);
+            } else if (file.getName().endsWith(".xml")) {
+                files.add(file);
+            }
+        }
+    }
+
+    private long endPhase(String phase, long start)
+    {
+        long end = System.currentTimeMillis();
+        this.phases.put(phase, end - start);
+        System.out.println(String.format("%s: %d ms", phase, end - start));
+
+        return end;
+    }
+
+    private String getProperty(String key)
+    {
+        return this.configuration.getProperty(key);
+    }
+}
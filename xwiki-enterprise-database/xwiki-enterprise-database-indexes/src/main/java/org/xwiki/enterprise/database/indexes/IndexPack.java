@@ -0,0 +1,302 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.enterprise.database.indexes;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+
+/**
+ * Applies the index pack of the database engine: the secondary indexes needed by the queries of the slowest pages of
+ * the UI on large wikis (AllDocs, space index, recent changes, activity stream, tags, watchlist and backlinks), see
+ * the {@code indexes/<engine>.sql} scripts. It's run when the database is built and can be run on an existing wiki to
+ * upgrade it, XWiki being stopped for the embedded databases: the indexes which already exist are skipped, and so are
+ * the tables which don't exist yet.
+ * <p>
+ * The connection is read from the Hibernate configuration file, passed as first argument, followed by {@code key=value}
+ * configuration entries, see {@link #DEFAULTS}.
+ *
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class IndexPack
+{
+    /** The default configuration. */
+    public static final Properties DEFAULTS = new Properties();
+
+    static {
+        // Script to apply instead of the index pack of the engine, empty to apply the index pack
+        DEFAULTS.setProperty("script", "");
+    }
+
+    /** Engine of the index pack, by JDBC URL prefix. */
+    private static final Map<String, String> ENGINES = new LinkedHashMap<String, String>();
+
+    static {
+        ENGINES.put("jdbc:hsqldb:", "hsqldb");
+        ENGINES.put("jdbc:derby:", "derby");
+        ENGINES.put("jdbc:h2:", "h2");
+        ENGINES.put("jdbc:mysql:", "mysql");
+        ENGINES.put("jdbc:postgresql:", "pgsql");
+    }
+
+    private static final Pattern CREATE_INDEX =
+        Pattern.compile("CREATE\\s+(?:UNIQUE\\s+)?INDEX\\s+(\\w+)\\s+ON\\s+(\\w+)\\s*\\(.*", Pattern.CASE_INSENSITIVE
+            | Pattern.DOTALL);
+
+    private static final String ENCODING = "UTF-8";
+
+    private final Properties configuration;
+
+    /**
+     * @param configuration the configuration, see {@link #DEFAULTS}
+     */
+    public IndexPack(Properties configuration)
+    {
+        this.configuration = new Properties(DEFAULTS);
+        this.configuration.putAll(configuration);
+    }
+
+    /**
+     * @param args the Hibernate configuration file, followed by {@code key=value} configuration entries
+     */
+    public static void main(String[] args)
+    {
+        Properties configuration = new Properties();
+        for (int i = 1; i < args.length; i++) {
+            int separator = args[i].indexOf('=');
+            configuration.setProperty(args[i].substring(0, separator).trim(), args[i].substring(separator + 1).trim());
+        }
+
+        try {
+            long start = System.currentTimeMillis();
+            int created = new IndexPack(configuration).apply(new File(args[0]));
+            System.out.println(String.format("Created %d indexes in %d ms", created,
+                System.currentTimeMillis() - start));
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Create the indexes of the pack which don't exist yet.
+     *
+     * @param hibernateConfig the Hibernate configuration file of the database
+     * @return the number of created indexes
+     * @throws Exception if the pack can't be read or an index can't be created
+     */
+    public int apply(File hibernateConfig) throws Exception
+    {
+        Map<String, String> connectionProperties = readConnectionProperties(hibernateConfig);
+        String url = connectionProperties.get("url");
+        List<String> statements = parse(readScript(url));
+
+        Class.forName(connectionProperties.get("driver_class"));
+        Connection connection = DriverManager.getConnection(url, connectionProperties.get("username"),
+            connectionProperties.get("password"));
+        try {
+            Map<String, String> tables = getTables(connection.getMetaData());
+            Map<String, Set<String>> indexes = new HashMap<String, Set<String>>();
+            int created = 0;
+            Statement statement = connection.createStatement();
+            try {
+                for (String sql : statements) {
+                    Matcher matcher = CREATE_INDEX.matcher(sql);
+                    if (!matcher.matches()) {
+                        statement.execute(sql);
+                        continue;
+                    }
+                    String index = matcher.group(1);
+                    String table = tables.get(matcher.group(2).toUpperCase());
+                    if (table == null) {
+                        System.out.println(String.format("Skipped %s: table %s doesn't exist", index,
+                            matcher.group(2)));
+                        continue;
+                    }
+                    if (!indexes.containsKey(table)) {
+                        indexes.put(table, getIndexes(connection.getMetaData(), table));
+                    }
+                    if (indexes.get(table).contains(index.toUpperCase())) {
+                        System.out.println(String.format("Skipped %s: already exists", index));
+                        continue;
+                    }
+
+                    long start = System.currentTimeMillis();
+                    statement.execute(sql);
+                    indexes.get(table).add(index.toUpperCase());
+                    created++;
+                    System.out.println(String.format("Created %s on %s in %d ms", index, table,
+                        System.currentTimeMillis() - start));
+                }
+            } finally {
+                statement.close();
+            }
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+
+            return created;
+        } finally {
+            connection.close();
+        }
+    }
+
+    private String readScript(String url) throws Exception
+    {
+        String script = this.configuration.getProperty("script");
+        if (script.length() > 0) {
+            return FileUtils.readFileToString(new File(script), ENCODING);
+        }
+
+        for (Map.Entry<String, String> engine : ENGINES.entrySet()) {
+            if (url.startsWith(engine.getKey())) {
+                InputStream input = getClass().getResourceAsStream("/indexes/" + engine.getValue() + ".sql");
+                try {
+                    return IOUtils.toString(input, ENCODING);
+                } finally {
+                    IOUtils.closeQuietly(input);
+                }
+            }
+        }
+        throw new IllegalArgumentException("No index pack for the database at " + url);
+    }
+
+    /**
+     * @param script a SQL script
+     * @return the statements of the script, without the comments
+     */
+    private List<String> parse(String script)
+    {
+        List<String> statements = new ArrayList<String>();
+        StringBuilder statement = new StringBuilder();
+        for (String line : script.split("\n")) {
+            String trimmed = line.trim();
+            if (trimmed.length() == 0 || trimmed.startsWith("--")) {
+                continue;
+            }
+            statement.append(trimmed);
+            if (trimmed.endsWith(";")) {
+                statement.setLength(statement.length() - 1);
+                statements.add(statement.toString());
+                statement.setLength(0);
+            } else {
+                statement.append(' ');
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * @return the names of the tables of the database, indexed by their upper case name since the engines don't agree
+     *         on the case of unquoted identifiers
+     */
+    private Map<String, String> getTables(DatabaseMetaData metaData) throws SQLException
+    {
+        Map<String, String> tables = new HashMap<String, String>();
+        ResultSet result = metaData.getTables(metaData.getConnection().getCatalog(), null, "%",
+            new String[] {"TABLE"});
+        try {
+            while (result.next()) {
+                String table = result.getString("TABLE_NAME");
+                tables.put(table.toUpperCase(), table);
+            }
+        } finally {
+            result.close();
+        }
+        return tables;
+    }
+
+    /**
+     * @return the upper case names of the indexes of the table
+     */
+    private Set<String> getIndexes(DatabaseMetaData metaData, String table) throws SQLException
+    {
+        Set<String> indexes = new HashSet<String>();
+        ResultSet result = metaData.getIndexInfo(metaData.getConnection().getCatalog(), null, table, false, true);
+        try {
+            while (result.next()) {
+                String index = result.getString("INDEX_NAME");
+                if (index != null) {
+                    indexes.add(index.toUpperCase());
+                }
+            }
+        } finally {
+            result.close();
+        }
+        return indexes;
+    }
+
+    /**
+     * @param hibernateConfig the Hibernate configuration file
+     * @return the connection properties, without their {@code connection.} prefix
+     */
+    private Map<String, String> readConnectionProperties(File hibernateConfig) throws Exception
+    {
+        DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        // Don't download the DTD.
+        builder.setEntityResolver(new EntityResolver()
+        {
+            public InputSource resolveEntity(String publicId, String systemId)
+            {
+                return new InputSource(new StringReader(""));
+            }
+        });
+        Document document = builder.parse(hibernateConfig);
+
+        Map<String, String> properties = new HashMap<String, String>();
+        NodeList elements = document.getElementsByTagName("property");
+        for (int i = 0; i < elements.getLength(); i++) {
+            Element element = (Element) elements.item(i);
+            String name = element.getAttribute("name").replaceFirst("^hibernate\\.", "");
+            if (name.startsWith("connection.")) {
+                properties.put(name.substring("connection.".length()), element.getTextContent().trim());
+            }
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,61 @@
+-- ---------------------------------------------------------------------------
+--
+-- See the NOTICE file distributed with this work for additional
+-- information regarding copyright ownership.
+--
+-- This is free software; you can redistribute it and/or modify it
+-- under the terms of the GNU Lesser General Public License as
+-- published by the Free Software Foundation; either version 2.1 of
+-- the License, or (at your option) any later version.
+--
+-- This software is distributed in the hope that it will be useful,
+-- but WITHOUT ANY WARRANTY; without even the implied warranty of
+-- MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+-- Lesser General Public License for more details.
+--
+-- You should have received a copy of the GNU Lesser General Public
+-- License along with this software; if not, write to the Free
+-- Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+-- 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+-- ---------------------------------------------------------------------------
+
+-- ---------------------------------------------------------------------------
+-- Index pack of XWiki Enterprise for H2: secondary indexes for the queries of the slowest pages of the UI on
+-- large wikis, in addition to the ones of the Hibernate mappings. The indexes are created when the database is
+-- built. To upgrade an existing wiki, run the IndexPack tool of xwiki-enterprise-database-indexes, which skips the
+-- existing indexes, or this script with the H2 shell, XWiki being stopped.
+-- ---------------------------------------------------------------------------
+
+-- Space index and document tree: documents of a space, by name
+CREATE INDEX XE_DOC_SPACE_NAME ON xwikidoc (XWD_WEB, XWD_NAME);
+
+-- AllDocs live table: documents without their translations, sorted by name
+CREATE INDEX XE_DOC_TRANSLATION_FULLNAME ON xwikidoc (XWD_TRANSLATION, XWD_FULLNAME);
+
+-- Recent changes and the what's new panels: documents by modification date
+CREATE INDEX XE_DOC_DATE ON xwikidoc (XWD_DATE);
+
+-- Children and breadcrumbs: documents by parent
+CREATE INDEX XE_DOC_PARENT ON xwikidoc (XWD_PARENT);
+
+-- User profile and AllDocs author filter: documents modified by a user, by date
+CREATE INDEX XE_DOC_AUTHOR_DATE ON xwikidoc (XWD_AUTHOR, XWD_DATE);
+
+-- Tags and watchlist: objects of a class (XWiki.TagClass, XWiki.WatchListClass), by document
+CREATE INDEX XE_OBJ_CLASSNAME_NAME ON xwikiobjects (XWO_CLASSNAME, XWO_NAME);
+
+-- Tags: documents having a tag
+CREATE INDEX XE_LISTITEM_VALUE ON xwikilistitems (XWL_VALUE);
+
+-- Watchlist notifier: subscriptions by notification interval
+CREATE INDEX XE_STRING_NAME_VALUE ON xwikistrings (XWS_NAME, XWS_VALUE);
+
+-- Backlinks: documents linking to a document
+CREATE INDEX XE_LINK_LINK ON xwikilinks (XWL_LINK, XWL_DOC_FULLNAME);
+
+-- Activity stream: events of the wiki, of a space, of a page and of a user, by date, and events of a request
+CREATE INDEX XE_ASE_WIKI_DATE ON activitystream_events (ASE_WIKI, ASE_DATE);
+CREATE INDEX XE_ASE_SPACE_DATE ON activitystream_events (ASE_SPACE, ASE_DATE);
+CREATE INDEX XE_ASE_PAGE_DATE ON activitystream_events (ASE_PAGE, ASE_DATE);
+CREATE INDEX XE_ASE_USER_DATE ON activitystream_events (ASE_USER, ASE_DATE);
+CREATE INDEX XE_ASE_REQUESTID ON activitystream_events (ASE_REQUESTID);
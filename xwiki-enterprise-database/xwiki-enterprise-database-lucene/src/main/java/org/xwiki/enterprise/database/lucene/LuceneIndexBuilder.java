@@ -0,0 +1,141 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.enterprise.database.lucene;
+
+import java.io.File;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+import org.xwiki.tool.packager.AbstractPackager;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.plugin.lucene.LucenePlugin;
+
+/**
+ * Builds the Lucene index of an imported database so that it can be shipped with it: without an index the Lucene
+ * plugin indexes the whole wiki when XWiki is first started, competing with the first users for CPU and I/O.
+ * <p>
+ * The index is built by the Lucene plugin itself, like the rebuild done at startup, in a separate JVM since the
+ * indexing threads of the plugin are never stopped. The configuration is passed as {@code key=value} arguments after
+ * the Hibernate configuration file and the index directory, see {@link #DEFAULTS} for the supported keys and their
+ * default values.
+ *
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class LuceneIndexBuilder extends AbstractPackager
+{
+    /** The default configuration. */
+    public static final Properties DEFAULTS = new Properties();
+
+    static {
+        DEFAULTS.setProperty("wiki", "xwiki");
+        // Maximum time to wait for the index to be built, in seconds
+        DEFAULTS.setProperty("timeout", "1800");
+    }
+
+    private static final long POLL_INTERVAL = 1000L;
+
+    /** Number of consecutive polls with nothing left to index after which the index is considered complete. */
+    private static final int IDLE_POLLS = 5;
+
+    private final Properties configuration;
+
+    /**
+     * @param configuration the configuration, see {@link #DEFAULTS}
+     */
+    public LuceneIndexBuilder(Properties configuration)
+    {
+        this.configuration = new Properties(DEFAULTS);
+        this.configuration.putAll(configuration);
+    }
+
+    /**
+     * @param args the Hibernate configuration file and the index directory, followed by {@code key=value}
+     *            configuration entries
+     */
+    public static void main(String[] args)
+    {
+        Properties configuration = new Properties();
+        for (int i = 2; i < args.length; i++) {
+            int separator = args[i].indexOf('=');
+            configuration.setProperty(args[i].substring(0, separator).trim(), args[i].substring(separator + 1).trim());
+        }
+
+        try {
+            long start = System.currentTimeMillis();
+            long count = new LuceneIndexBuilder(configuration).buildIndex(new File(args[0]), new File(args[1]));
+            System.out.println(String.format("Indexed %d Lucene documents in %d s", count,
+                (System.currentTimeMillis() - start) / 1000));
+            // The indexing threads of the plugin would keep the JVM alive.
+            System.exit(0);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Build the index of all the documents and attachments of the wiki.
+     *
+     * @param hibernateConfig the Hibernate configuration file of the database
+     * @param indexDirectory the directory where to write the index, emptied first
+     * @return the number of documents in the index
+     * @throws Exception if the index can't be built
+     */
+    public long buildIndex(File hibernateConfig, File indexDirectory) throws Exception
+    {
+        // Never index on top of the index of a previous build.
+        FileUtils.deleteDirectory(indexDirectory);
+
+        XWikiContext context = createXWikiContext(this.configuration.getProperty("wiki"), hibernateConfig);
+        context.getWiki().getConfig().setProperty("xwiki.plugins.lucene.indexdir", indexDirectory.getAbsolutePath());
+
+        LucenePlugin plugin = new LucenePlugin("lucene", LucenePlugin.class.getName(), context);
+        plugin.init(context);
+        // Starting the plugin on a missing index may already have started a rebuild, in which case this does nothing.
+        plugin.rebuildIndex(context);
+        waitForIndex(plugin, Long.parseLong(this.configuration.getProperty("timeout")) * 1000);
+        long count = plugin.getLuceneDocCount();
+
+        plugin.flushCache(context);
+        // The embedded databases (HSQLDB) must be shutdown cleanly, even though they have only been read.
+        context.getWiki().getHibernateStore().shutdownHibernate(context);
+        disposeXWikiContext(context);
+
+        return count;
+    }
+
+    private void waitForIndex(LucenePlugin plugin, long timeout) throws Exception
+    {
+        long deadline = System.currentTimeMillis() + timeout;
+        int idlePolls = 0;
+        while (idlePolls < IDLE_POLLS) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new Exception(String.format("The index hasn't been built in %d s, %d documents left to index",
+                    timeout / 1000, plugin.getPreIndexQueueSize() + plugin.getQueueSize()));
+            }
+            Thread.sleep(POLL_INTERVAL);
+            boolean idle = plugin.getPreIndexQueueSize() == 0 && plugin.getQueueSize() == 0
+                && plugin.getActiveQueueSize() == 0 && plugin.getLuceneDocCount() > 0;
+            idlePolls = idle ? idlePolls + 1 : 0;
+        }
+    }
+}
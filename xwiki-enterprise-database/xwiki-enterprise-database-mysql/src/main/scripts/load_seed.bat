@@ -0,0 +1,39 @@
+@echo off
+REM ---------------------------------------------------------------------------
+REM
+REM See the NOTICE file distributed with this work for additional
+REM information regarding copyright ownership.
+REM
+REM This is free software; you can redistribute it and/or modify it
+REM under the terms of the GNU Lesser General Public License as
+REM published by the Free Software Foundation; either version 2.1 of
+REM the License, or (at your option) any later version.
+REM
+REM This software is distributed in the hope that it will be useful,
+REM but WITHOUT ANY WARRANTY; without even the implied warranty of
+REM MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+REM Lesser General Public License for more details.
+REM
+REM You should have received a copy of the GNU Lesser General Public
+REM License along with this software; if not, write to the Free
+REM Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+REM 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+REM ---------------------------------------------------------------------------
+
+REM ---------------------------------------------------------------------------
+REM Loads the seed of XWiki Enterprise into an empty MySQL database, see load_seed.sh.
+REM ---------------------------------------------------------------------------
+
+setlocal
+if "%DB_HOST%" == "" set DB_HOST=localhost
+if "%DB_PORT%" == "" set DB_PORT=3306
+if "%DB_NAME%" == "" set DB_NAME=xwiki
+if "%DB_USER%" == "" set DB_USER=xwiki
+if "%DB_PASSWORD%" == "" set DB_PASSWORD=xwiki
+set MYSQL_PWD=%DB_PASSWORD%
+
+cd /d "%~dp0seed"
+for %%s in (schema.sql load.sql indexes.sql) do (
+  echo Executing %%s
+  mysql --local-infile=1 --host=%DB_HOST% --port=%DB_PORT% --user=%DB_USER% %DB_NAME% < %%s || exit /b 1
+)
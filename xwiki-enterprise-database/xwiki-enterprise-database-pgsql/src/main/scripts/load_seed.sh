@@ -0,0 +1,49 @@
+#!/bin/sh
+# ---------------------------------------------------------------------------
+#
+# See the NOTICE file distributed with this work for additional
+# information regarding copyright ownership.
+#
+# This is free software; you can redistribute it and/or modify it
+# under the terms of the GNU Lesser General Public License as
+# published by the Free Software Foundation; either version 2.1 of
+# the License, or (at your option) any later version.
+#
+# This software is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+# Lesser General Public License for more details.
+#
+# You should have received a copy of the GNU Lesser General Public
+# License along with this software; if not, write to the Free
+# Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+# 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+# ---------------------------------------------------------------------------
+
+# ---------------------------------------------------------------------------
+# Loads the seed of XWiki Enterprise into an empty PostgreSQL database. This is much faster than letting XWiki import
+# the default wiki document by document when it's first started, so run it once before starting XWiki.
+#
+# The connection is configured with the DB_HOST, DB_PORT, DB_NAME, DB_USER and DB_PASSWORD environment variables,
+# which default to the database configured in webapps/xwiki/WEB-INF/hibernate.cfg.xml.
+# ---------------------------------------------------------------------------
+
+[ -z "$DB_HOST" ] && DB_HOST=localhost
+[ -z "$DB_PORT" ] && DB_PORT=5432
+[ -z "$DB_NAME" ] && DB_NAME=xwiki
+[ -z "$DB_USER" ] && DB_USER=xwiki
+[ -z "$DB_PASSWORD" ] && DB_PASSWORD=xwiki
+
+# Passed in the environment so that it doesn't show in the process list.
+PGPASSWORD="$DB_PASSWORD"
+export PGPASSWORD
+
+# The data files are referenced relatively to the seed directory.
+cd "$(dirname "$0")/seed" || exit 1
+
+START=$(date +%s)
+# Tables first, then the data, then the indexes and the constraints. A single transaction lets PostgreSQL skip the
+# write-ahead log when copying into the tables it has just created.
+cat schema.sql load.sql indexes.sql | psql --quiet --single-transaction --set ON_ERROR_STOP=1 --host="$DB_HOST" \
+  --port="$DB_PORT" --username="$DB_USER" --dbname="$DB_NAME" || exit 1
+echo "Seed loaded in $(($(date +%s) - START)) s"
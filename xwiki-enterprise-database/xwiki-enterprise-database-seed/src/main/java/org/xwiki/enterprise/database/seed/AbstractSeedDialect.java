@@ -0,0 +1,164 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.enterprise.database.seed;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Base class for the dialects: MySQL ({@code LOAD DATA}) and PostgreSQL ({@code COPY}) share the same text format by
+ * default, one row per line with tab separated values, {@code \N} for {@code NULL} and backslash escapes.
+ *
+ * @version $Id$
+ * @since 3.2M3
+ */
+public abstract class AbstractSeedDialect implements SeedDialect
+{
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see SeedDialect#getSchema()
+     */
+    public String getSchema()
+    {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see SeedDialect#getFetchSize()
+     */
+    public int getFetchSize()
+    {
+        return 1000;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see SeedDialect#formatValue(ResultSet, int, int)
+     */
+    public String formatValue(ResultSet rows, int column, int type) throws SQLException
+    {
+        if (isBinary(type)) {
+            byte[] bytes = rows.getBytes(column);
+            return bytes == null ? null : formatBinary(bytes);
+        }
+        String value = rows.getString(column);
+        return value == null ? null : escape(value);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see SeedDialect#getAfterLoadStatements(Connection)
+     */
+    public String getAfterLoadStatements(Connection connection) throws SQLException
+    {
+        return "";
+    }
+
+    /**
+     * @param bytes the value of a binary column
+     * @return the value in the bulk load format
+     */
+    protected abstract String formatBinary(byte[] bytes);
+
+    /**
+     * @param type a SQL type, see {@link Types}
+     * @return {@code true} if the column holds bytes rather than text
+     */
+    protected static boolean isBinary(int type)
+    {
+        return type == Types.BINARY || type == Types.VARBINARY || type == Types.LONGVARBINARY || type == Types.BLOB;
+    }
+
+    /**
+     * @param type a SQL type, see {@link Types}
+     * @return {@code true} if the column holds a boolean
+     */
+    protected static boolean isBoolean(int type)
+    {
+        return type == Types.BIT || type == Types.BOOLEAN;
+    }
+
+    /**
+     * @param bytes some bytes
+     * @return the bytes in hexadecimal
+     */
+    protected static String toHex(byte[] bytes)
+    {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * @param value a text value
+     * @return the value with the characters having a meaning in the text format escaped
+     */
+    protected static String escape(String value)
+    {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    escaped.append("\\\\");
+                    break;
+                case '\t':
+                    escaped.append("\\t");
+                    break;
+                case '\n':
+                    escaped.append("\\n");
+                    break;
+                case '\r':
+                    escaped.append("\\r");
+                    break;
+                default:
+                    escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Add an option to a command line, if it has a value.
+     *
+     * @param command the command line
+     * @param option the option, including the {@code =} separator
+     * @param value the value of the option, {@code null} to omit it
+     */
+    protected static void addOption(List<String> command, String option, String value)
+    {
+        if (value != null) {
+            command.add(option + value);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.enterprise.database.seed;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Exports MySQL databases: the schema is dumped with {@code mysqldump} and the data is loaded with
+ * {@code LOAD DATA LOCAL INFILE}. The secondary indexes and the foreign keys are moved out of the {@code CREATE TABLE}
+ * statements and added once the data is loaded, keeping the length of the indexed prefixes which isn't part of the
+ * JDBC meta data.
+ *
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class MySQLSeedDialect extends AbstractSeedDialect
+{
+    private static final Pattern CREATE_TABLE = Pattern.compile("^CREATE TABLE (`[^`]+`) \\($");
+
+    private static final String NEW_LINE = "\n";
+
+    private static final String ADD = "ADD ";
+
+    private static final String SEPARATOR = ", ";
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see SeedDialect#quote(String)
+     */
+    public String quote(String identifier)
+    {
+        return '`' + identifier + '`';
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * MySQL only streams the rows of a result set with this special fetch size.
+     *
+     * @see AbstractSeedDialect#getFetchSize()
+     */
+    @Override
+    public int getFetchSize()
+    {
+        return Integer.MIN_VALUE;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see SeedDialect#getSchemaDumpCommand(Map)
+     */
+    public List<String> getSchemaDumpCommand(Map<String, String> connection)
+    {
+        List<String> command = new ArrayList<String>();
+        command.add("mysqldump");
+        command.add("--no-data");
+        command.add("--skip-comments");
+        command.add("--skip-add-drop-table");
+        command.add("--skip-triggers");
+        addOption(command, "--host=", connection.get("host"));
+        addOption(command, "--port=", connection.get("port"));
+        addOption(command, "--user=", connection.get("username"));
+        command.add(connection.get("database"));
+        return command;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see SeedDialect#getSchemaDumpEnvironment(Map)
+     */
+    public Map<String, String> getSchemaDumpEnvironment(Map<String, String> connection)
+    {
+        return Collections.singletonMap("MYSQL_PWD", StringUtils.defaultString(connection.get("password")));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see SeedDialect#splitSchema(String, Writer, Writer)
+     */
+    public void splitSchema(String schema, Writer beforeLoad, Writer afterLoad) throws IOException
+    {
+        StringBuilder constraints = new StringBuilder();
+        String table = null;
+        List<String> definitions = new ArrayList<String>();
+        List<String> keys = new ArrayList<String>();
+        List<String> foreignKeys = new ArrayList<String>();
+        for (String line : schema.split(NEW_LINE)) {
+            if (table == null) {
+                Matcher matcher = CREATE_TABLE.matcher(line);
+                if (matcher.matches()) {
+                    table = matcher.group(1);
+                }
+                beforeLoad.write(line + NEW_LINE);
+            } else if (line.startsWith(")")) {
+                // End of the definitions, followed by the table options.
+                beforeLoad.write(StringUtils.join(definitions, "," + NEW_LINE) + NEW_LINE + line + NEW_LINE);
+                if (!keys.isEmpty()) {
+                    afterLoad.write("ALTER TABLE " + table + ' ' + StringUtils.join(keys, SEPARATOR) + ';' + NEW_LINE);
+                }
+                if (!foreignKeys.isEmpty()) {
+                    constraints.append("ALTER TABLE " + table + ' ' + StringUtils.join(foreignKeys, SEPARATOR) + ';'
+                        + NEW_LINE);
+                }
+                table = null;
+                definitions.clear();
+                keys.clear();
+                foreignKeys.clear();
+            } else {
+                String definition = StringUtils.removeEnd(line.trim(), ",");
+                if (definition.startsWith("KEY ") || definition.startsWith("FULLTEXT KEY ")) {
+                    keys.add(ADD + definition);
+                } else if (definition.startsWith("CONSTRAINT ")) {
+                    foreignKeys.add(ADD + definition);
+                } else {
+                    definitions.add("  " + definition);
+                }
+            }
+        }
+        // The foreign keys come last since they may use the indexes added above.
+        afterLoad.write(constraints.toString());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see AbstractSeedDialect#formatValue(ResultSet, int, int)
+     */
+    @Override
+    public String formatValue(ResultSet rows, int column, int type) throws SQLException
+    {
+        if (isBoolean(type)) {
+            boolean value = rows.getBoolean(column);
+            return rows.wasNull() ? null : (value ? "1" : "0");
+        }
+        String value = super.formatValue(rows, column, type);
+        if (value != null && type == Types.TIMESTAMP) {
+            // The DATETIME columns have no fractional part, don't let LOAD DATA warn about it.
+            value = StringUtils.substringBefore(value, ".");
+        }
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The binary values are written in hexadecimal and decoded by the load statement.
+     *
+     * @see AbstractSeedDialect#formatBinary(byte[])
+     */
+    @Override
+    protected String formatBinary(byte[] bytes)
+    {
+        return toHex(bytes);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see SeedDialect#getLoadHeader()
+     */
+    public String getLoadHeader()
+    {
+        return "SET foreign_key_checks = 0;\nSET unique_checks = 0;\nSET autocommit = 0;\n";
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see SeedDialect#getLoadStatement(String, List, List, String)
+     */
+    public String getLoadStatement(String table, List<String> columns, List<Integer> types, String dataFile)
+    {
+        List<String> targets = new ArrayList<String>();
+        List<String> conversions = new ArrayList<String>();
+        for (int i = 0; i < columns.size(); i++) {
+            String column = quote(columns.get(i));
+            int type = types.get(i);
+            if (isBinary(type) || isBoolean(type)) {
+                // Read the value in a variable and convert it.
+                String variable = "@c" + i;
+                targets.add(variable);
+                conversions.add(column + " = " + (isBinary(type) ? "UNHEX(" + variable + ')' : "CAST(" + variable
+                    + " AS UNSIGNED)"));
+            } else {
+                targets.add(column);
+            }
+        }
+        StringBuilder statement = new StringBuilder();
+        statement.append("LOAD DATA LOCAL INFILE '").append(dataFile).append("' INTO TABLE ").append(quote(table));
+        statement.append(" CHARACTER SET utf8 (").append(StringUtils.join(targets, SEPARATOR)).append(')');
+        if (!conversions.isEmpty()) {
+            statement.append(" SET ").append(StringUtils.join(conversions, SEPARATOR));
+        }
+        return statement.append(';').append(NEW_LINE).toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see SeedDialect#getLoadFooter()
+     */
+    public String getLoadFooter()
+    {
+        return "COMMIT;\nSET unique_checks = 1;\nSET foreign_key_checks = 1;\n";
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.enterprise.database.seed;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Exports PostgreSQL databases: the schema is dumped with {@code pg_dump} and the data is loaded with the
+ * {@code \copy} command of {@code psql}. Like in the dumps of {@code pg_dump} the constraints, including the primary
+ * keys, and the indexes are created once the data is loaded. The binary values use the hexadecimal format of
+ * PostgreSQL 9.0.
+ *
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class PostgreSQLSeedDialect extends AbstractSeedDialect
+{
+    private static final String NEW_LINE = "\n";
+
+    private static final String QUOTE = "\"";
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see AbstractSeedDialect#getSchema()
+     */
+    @Override
+    public String getSchema()
+    {
+        return "public";
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see SeedDialect#quote(String)
+     */
+    public String quote(String identifier)
+    {
+        return QUOTE + identifier + QUOTE;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see SeedDialect#getSchemaDumpCommand(Map)
+     */
+    public List<String> getSchemaDumpCommand(Map<String, String> connection)
+    {
+        List<String> command = new ArrayList<String>();
+        command.add("pg_dump");
+        command.add("--schema-only");
+        command.add("--no-owner");
+        command.add("--no-privileges");
+        addOption(command, "--host=", connection.get("host"));
+        addOption(command, "--port=", connection.get("port"));
+        addOption(command, "--username=", connection.get("username"));
+        command.add(connection.get("database"));
+        return command;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see SeedDialect#getSchemaDumpEnvironment(Map)
+     */
+    public Map<String, String> getSchemaDumpEnvironment(Map<String, String> connection)
+    {
+        return Collections.singletonMap("PGPASSWORD", StringUtils.defaultString(connection.get("password")));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see SeedDialect#splitSchema(String, Writer, Writer)
+     */
+    public void splitSchema(String schema, Writer beforeLoad, Writer afterLoad) throws IOException
+    {
+        StringBuilder statement = new StringBuilder();
+        for (String line : schema.split(NEW_LINE)) {
+            if (statement.length() == 0 && (line.trim().length() == 0 || line.startsWith("--"))) {
+                continue;
+            }
+            statement.append(line).append(NEW_LINE);
+            if (line.endsWith(";")) {
+                String sql = statement.toString();
+                boolean index = sql.startsWith("CREATE INDEX ") || sql.startsWith("CREATE UNIQUE INDEX ");
+                boolean constraint = sql.startsWith("ALTER TABLE ") && sql.contains(" ADD CONSTRAINT ");
+                (index || constraint ? afterLoad : beforeLoad).write(sql);
+                statement.setLength(0);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see AbstractSeedDialect#formatValue(ResultSet, int, int)
+     */
+    @Override
+    public String formatValue(ResultSet rows, int column, int type) throws SQLException
+    {
+        if (isBoolean(type)) {
+            boolean value = rows.getBoolean(column);
+            return rows.wasNull() ? null : (value ? "t" : "f");
+        }
+        return super.formatValue(rows, column, type);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The backslash of the {@code \x} prefix is itself escaped in the text format.
+     *
+     * @see AbstractSeedDialect#formatBinary(byte[])
+     */
+    @Override
+    protected String formatBinary(byte[] bytes)
+    {
+        return "\\\\x" + toHex(bytes);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see SeedDialect#getLoadHeader()
+     */
+    public String getLoadHeader()
+    {
+        return "SET client_encoding = 'UTF8';\n";
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see SeedDialect#getLoadStatement(String, List, List, String)
+     */
+    public String getLoadStatement(String table, List<String> columns, List<Integer> types, String dataFile)
+    {
+        List<String> quoted = new ArrayList<String>();
+        for (String column : columns) {
+            quoted.add(quote(column));
+        }
+        // A psql command rather than a SQL statement: it takes a single line and no semicolon.
+        return "\\copy " + qualify(table) + " (" + StringUtils.join(quoted, ", ") + ") FROM '" + dataFile + '\''
+            + NEW_LINE;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see SeedDialect#getLoadFooter()
+     */
+    public String getLoadFooter()
+    {
+        return "";
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The sequences are restored since their values aren't part of the schema dump, and the statistics of the tables
+     * are computed for the query planner.
+     *
+     * @see AbstractSeedDialect#getAfterLoadStatements(Connection)
+     */
+    @Override
+    public String getAfterLoadStatements(Connection connection) throws SQLException
+    {
+        List<String> sequences = new ArrayList<String>();
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet names = statement.executeQuery("SELECT c.relname FROM pg_class c JOIN pg_namespace n"
+                + " ON n.oid = c.relnamespace WHERE c.relkind = 'S' AND n.nspname = '" + getSchema() + '\'');
+            while (names.next()) {
+                sequences.add(names.getString(1));
+            }
+
+            StringBuilder statements = new StringBuilder();
+            for (String sequence : sequences) {
+                ResultSet value = statement.executeQuery("SELECT last_value, is_called FROM " + qualify(sequence));
+                value.next();
+                statements.append(String.format("SELECT pg_catalog.setval('%s', %d, %s);\n", qualify(sequence),
+                    value.getLong(1), value.getBoolean(2)));
+            }
+            statements.append("ANALYZE;\n");
+            return statements.toString();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * The dumps of {@code pg_dump} 10.3 and later empty the {@code search_path} of the session loading the seed, so the
+     * tables and the sequences must always be qualified by their schema.
+     *
+     * @param name the name of a table or a sequence
+     * @return the quoted name, qualified by the quoted schema
+     */
+    private String qualify(String name)
+    {
+        return quote(getSchema()) + '.' + quote(name);
+    }
+}
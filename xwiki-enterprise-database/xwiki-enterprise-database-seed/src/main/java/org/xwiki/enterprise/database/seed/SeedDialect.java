@@ -0,0 +1,115 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.enterprise.database.seed;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What differs between the engines when exporting a seed: how the schema is dumped and split around the data, how
+ * values are written in the bulk load format and the statements loading them.
+ *
+ * @version $Id$
+ * @since 3.2M3
+ */
+public interface SeedDialect
+{
+    /**
+     * @return the schema holding the tables of the wiki, {@code null} when the engine has none
+     */
+    String getSchema();
+
+    /**
+     * @param identifier a table or column name
+     * @return the quoted identifier
+     */
+    String quote(String identifier);
+
+    /**
+     * @param connection the connection properties read from the Hibernate configuration ({@code host}, {@code port},
+     *            {@code database}, {@code username} and {@code password})
+     * @return the command line of the client tool dumping the schema of the database on its standard output
+     */
+    List<String> getSchemaDumpCommand(Map<String, String> connection);
+
+    /**
+     * @param connection the connection properties read from the Hibernate configuration
+     * @return the environment variables to set for the schema dump, used to pass the password
+     */
+    Map<String, String> getSchemaDumpEnvironment(Map<String, String> connection);
+
+    /**
+     * Split the schema dump: tables and primary keys are created before the data is loaded, the other indexes and the
+     * constraints afterwards.
+     *
+     * @param schema the output of the schema dump
+     * @param beforeLoad where to write the statements to execute before the data is loaded
+     * @param afterLoad where to write the statements to execute after the data is loaded
+     * @throws IOException if the statements can't be written
+     */
+    void splitSchema(String schema, Writer beforeLoad, Writer afterLoad) throws IOException;
+
+    /**
+     * @return the number of rows to fetch at once when reading a table, the drivers keep the whole table in memory by
+     *         default
+     */
+    int getFetchSize();
+
+    /**
+     * @param rows the rows of the table being exported
+     * @param column the column, starting at 1
+     * @param type the SQL type of the column, see {@link java.sql.Types}
+     * @return the value in the bulk load format, {@code null} for {@code NULL}
+     * @throws SQLException if the value can't be read
+     */
+    String formatValue(ResultSet rows, int column, int type) throws SQLException;
+
+    /**
+     * @return the statements starting the load script
+     */
+    String getLoadHeader();
+
+    /**
+     * @param table the table name
+     * @param columns the column names, in the order of the data file
+     * @param types the SQL types of the columns
+     * @param dataFile the path of the data file, relative to the directory of the load script
+     * @return the statement loading the data file into the table
+     */
+    String getLoadStatement(String table, List<String> columns, List<Integer> types, String dataFile);
+
+    /**
+     * @return the statements ending the load script
+     */
+    String getLoadFooter();
+
+    /**
+     * @param connection the connection to the exported database
+     * @return the statements to execute once the data is loaded and the indexes created, e.g. restoring the current
+     *         values of the sequences
+     * @throws SQLException if the database can't be read
+     */
+    String getAfterLoadStatements(Connection connection) throws SQLException;
+}
@@ -0,0 +1,319 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.enterprise.database.seed;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+
+/**
+ * Exports an imported MySQL or PostgreSQL database as a seed which provisions a new wiki with the bulk load command of
+ * the engine, instead of importing the XAR document by document at runtime. The seed directory holds:
+ * <ul>
+ * <li>{@code schema.sql}: the tables, without their secondary indexes</li>
+ * <li>{@code data/<table>.txt}: the rows of each table, in the text format of {@code LOAD DATA} and {@code COPY}</li>
+ * <li>{@code load.sql}: the statements loading the data files, run from the seed directory</li>
+ * <li>{@code indexes.sql}: the indexes and constraints, created once the data is loaded</li>
+ * </ul>
+ * The schema is dumped with the client tool of the engine ({@code mysqldump} or {@code pg_dump}), which must be on the
+ * path unless an existing dump is given with the {@code schemaDump} key. The connection is read from the Hibernate
+ * configuration file, passed before the seed directory; see {@link #DEFAULTS} for the other keys.
+ *
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class SeedExporter
+{
+    /** The default configuration. */
+    public static final Properties DEFAULTS = new Properties();
+
+    static {
+        // Schema dump to use instead of running the client tool of the engine, empty to run it
+        DEFAULTS.setProperty("schemaDump", "");
+    }
+
+    /** Host, port and database of the JDBC URLs of MySQL and PostgreSQL, the host and the port being optional. */
+    private static final Pattern JDBC_URL = Pattern.compile("jdbc:[^:]+:(?://([^/:?]+)(?::(\\d+))?/)?([^?;/]+).*");
+
+    private static final String ENCODING = "UTF-8";
+
+    private static final String DATA_DIRECTORY = "data";
+
+    private final Properties configuration;
+
+    /**
+     * @param configuration the configuration, see {@link #DEFAULTS}
+     */
+    public SeedExporter(Properties configuration)
+    {
+        this.configuration = new Properties(DEFAULTS);
+        this.configuration.putAll(configuration);
+    }
+
+    /**
+     * @param args the Hibernate configuration file and the seed directory, followed by {@code key=value}
+     *            configuration entries
+     */
+    public static void main(String[] args)
+    {
+        Properties configuration = new Properties();
+        for (int i = 2; i < args.length; i++) {
+            int separator = args[i].indexOf('=');
+            configuration.setProperty(args[i].substring(0, separator).trim(), args[i].substring(separator + 1).trim());
+        }
+
+        try {
+            long start = System.currentTimeMillis();
+            long rows = new SeedExporter(configuration).export(new File(args[0]), new File(args[1]));
+            System.out.println(String.format("Exported %d rows in %d s", rows,
+                (System.currentTimeMillis() - start) / 1000));
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Export the database.
+     *
+     * @param hibernateConfig the Hibernate configuration file of the database
+     * @param seedDirectory the directory where to write the seed, emptied first
+     * @return the number of exported rows
+     * @throws Exception if the database can't be exported
+     */
+    public long export(File hibernateConfig, File seedDirectory) throws Exception
+    {
+        Map<String, String> connectionProperties = readConnectionProperties(hibernateConfig);
+        SeedDialect dialect = getDialect(connectionProperties.get("url"));
+
+        FileUtils.deleteDirectory(seedDirectory);
+        new File(seedDirectory, DATA_DIRECTORY).mkdirs();
+
+        Writer beforeLoad = createWriter(new File(seedDirectory, "schema.sql"));
+        Writer afterLoad = createWriter(new File(seedDirectory, "indexes.sql"));
+        Writer load = createWriter(new File(seedDirectory, "load.sql"));
+        Class.forName(connectionProperties.get("driver_class"));
+        Connection connection = DriverManager.getConnection(connectionProperties.get("url"),
+            connectionProperties.get("username"), connectionProperties.get("password"));
+        try {
+            dialect.splitSchema(dumpSchema(dialect, connectionProperties), beforeLoad, afterLoad);
+
+            // Needed by PostgreSQL to fetch the rows by chunks.
+            connection.setAutoCommit(false);
+            long rows = 0;
+            load.write(dialect.getLoadHeader());
+            for (String table : getTables(connection, dialect)) {
+                String dataFile = DATA_DIRECTORY + '/' + table + ".txt";
+                rows += exportTable(connection, dialect, table, new File(seedDirectory, dataFile), load, dataFile);
+            }
+            load.write(dialect.getLoadFooter());
+            afterLoad.write(dialect.getAfterLoadStatements(connection));
+
+            return rows;
+        } finally {
+            connection.close();
+            IOUtils.closeQuietly(beforeLoad);
+            IOUtils.closeQuietly(afterLoad);
+            IOUtils.closeQuietly(load);
+        }
+    }
+
+    /**
+     * @param url a JDBC URL
+     * @return the dialect of the database
+     */
+    private SeedDialect getDialect(String url)
+    {
+        if (url.startsWith("jdbc:mysql:")) {
+            return new MySQLSeedDialect();
+        } else if (url.startsWith("jdbc:postgresql:")) {
+            return new PostgreSQLSeedDialect();
+        }
+        throw new IllegalArgumentException("No seed can be exported for the database at " + url);
+    }
+
+    /**
+     * Read the connection properties of the Hibernate configuration file, and the host, port and database of the JDBC
+     * URL.
+     *
+     * @param hibernateConfig the Hibernate configuration file
+     * @return the connection properties, without their {@code connection.} prefix
+     * @throws Exception if the file can't be parsed
+     */
+    private Map<String, String> readConnectionProperties(File hibernateConfig) throws Exception
+    {
+        DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        // Don't download the DTD.
+        builder.setEntityResolver(new EntityResolver()
+        {
+            public InputSource resolveEntity(String publicId, String systemId)
+            {
+                return new InputSource(new StringReader(""));
+            }
+        });
+        Document document = builder.parse(hibernateConfig);
+
+        Map<String, String> properties = new HashMap<String, String>();
+        NodeList elements = document.getElementsByTagName("property");
+        for (int i = 0; i < elements.getLength(); i++) {
+            Element element = (Element) elements.item(i);
+            String name = StringUtils.removeStart(element.getAttribute("name"), "hibernate.");
+            if (name.startsWith("connection.")) {
+                properties.put(StringUtils.removeStart(name, "connection."), element.getTextContent().trim());
+            }
+        }
+
+        Matcher matcher = JDBC_URL.matcher(StringUtils.defaultString(properties.get("url")));
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Unsupported JDBC URL in " + hibernateConfig);
+        }
+        properties.put("host", matcher.group(1));
+        properties.put("port", matcher.group(2));
+        properties.put("database", matcher.group(3));
+
+        return properties;
+    }
+
+    private String dumpSchema(SeedDialect dialect, Map<String, String> connectionProperties) throws Exception
+    {
+        String schemaDump = this.configuration.getProperty("schemaDump");
+        if (schemaDump.length() > 0) {
+            return FileUtils.readFileToString(new File(schemaDump), ENCODING);
+        }
+
+        ProcessBuilder builder = new ProcessBuilder(dialect.getSchemaDumpCommand(connectionProperties));
+        builder.environment().putAll(dialect.getSchemaDumpEnvironment(connectionProperties));
+        final Process process = builder.start();
+
+        // Drain the error stream while the schema is read, so that a dump writing a lot of warnings doesn't block.
+        final StringBuilder errors = new StringBuilder();
+        Thread errorReader = new Thread("schema dump errors")
+        {
+            @Override
+            public void run()
+            {
+                try {
+                    errors.append(IOUtils.toString(process.getErrorStream(), ENCODING));
+                } catch (IOException e) {
+                    errors.append(e.getMessage());
+                }
+            }
+        };
+        errorReader.start();
+        String schema = IOUtils.toString(process.getInputStream(), ENCODING);
+        errorReader.join();
+
+        if (process.waitFor() != 0) {
+            throw new Exception(String.format("Failed to dump the schema with %s: %s", builder.command(), errors));
+        }
+        return schema;
+    }
+
+    private List<String> getTables(Connection connection, SeedDialect dialect) throws Exception
+    {
+        List<String> tables = new ArrayList<String>();
+        ResultSet result = connection.getMetaData().getTables(connection.getCatalog(), dialect.getSchema(), "%",
+            new String[] {"TABLE"});
+        try {
+            while (result.next()) {
+                tables.add(result.getString("TABLE_NAME"));
+            }
+        } finally {
+            result.close();
+        }
+        return tables;
+    }
+
+    /**
+     * Write the rows of a table in a data file, and the statement loading them in the load script.
+     *
+     * @return the number of rows
+     */
+    private long exportTable(Connection connection, SeedDialect dialect, String table, File file, Writer load,
+        String dataFile) throws Exception
+    {
+        Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        Writer data = createWriter(file);
+        try {
+            statement.setFetchSize(dialect.getFetchSize());
+            // InnoDB returns the rows in primary key order, which is also the fastest order to load them.
+            ResultSet rows = statement.executeQuery("SELECT * FROM " + dialect.quote(table));
+            ResultSetMetaData metaData = rows.getMetaData();
+            List<String> columns = new ArrayList<String>();
+            List<Integer> types = new ArrayList<Integer>();
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                columns.add(metaData.getColumnName(i));
+                types.add(metaData.getColumnType(i));
+            }
+
+            long count = 0;
+            while (rows.next()) {
+                for (int i = 1; i <= columns.size(); i++) {
+                    if (i > 1) {
+                        data.write('\t');
+                    }
+                    String value = dialect.formatValue(rows, i, types.get(i - 1));
+                    data.write(value == null ? "\\N" : value);
+                }
+                data.write('\n');
+                count++;
+            }
+
+            load.write(dialect.getLoadStatement(table, columns, types, dataFile));
+            return count;
+        } finally {
+            statement.close();
+            data.close();
+        }
+    }
+
+    private Writer createWriter(File file) throws IOException
+    {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), ENCODING));
+    }
+}
@@ -0,0 +1,48 @@
+@echo off
+REM ---------------------------------------------------------------------------
+REM
+REM See the NOTICE file distributed with this work for additional
+REM information regarding copyright ownership.
+REM
+REM This is free software; you can redistribute it and/or modify it
+REM under the terms of the GNU Lesser General Public License as
+REM published by the Free Software Foundation; either version 2.1 of
+REM the License, or (at your option) any later version.
+REM
+REM This software is distributed in the hope that it will be useful,
+REM but WITHOUT ANY WARRANTY; without even the implied warranty of
+REM MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+REM Lesser General Public License for more details.
+REM
+REM You should have received a copy of the GNU Lesser General Public
+REM License along with this software; if not, write to the Free
+REM Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+REM 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+REM ---------------------------------------------------------------------------
+
+REM ---------------------------------------------------------------------------
+REM Starts XWiki with the production profile of Jetty, see start_xwiki_production.sh.
+REM
+REM Usage: start_xwiki_production.bat [port] [stop port]
+REM ---------------------------------------------------------------------------
+
+setlocal enabledelayedexpansion
+set JETTY_HOME=jetty
+set JETTY_PORT=8080
+if not "%1" == "" set JETTY_PORT=%1
+set JETTY_STOPPORT=8079
+if not "%2" == "" set JETTY_STOPPORT=%2
+
+cd /d "%~dp0"
+
+if "%XWIKI_CORES%" == "" set XWIKI_CORES=%NUMBER_OF_PROCESSORS%
+set /a MAX_REQUESTS=XWIKI_CORES * 4
+if %MAX_REQUESTS% GTR 40 set MAX_REQUESTS=40
+set /a MAX_THREADS=MAX_REQUESTS * 2 + 16
+set /a MIN_THREADS=XWIKI_CORES * 2
+
+set JVM_OPTS=
+for /f "usebackq eol=# delims=" %%o in ("%JETTY_HOME%\etc\jvm-production.options") do set JVM_OPTS=!JVM_OPTS! %%o
+
+echo Starting Jetty on port %JETTY_PORT% with the production profile (%XWIKI_CORES% cores, %MAX_REQUESTS% concurrent requests)
+java %JVM_OPTS% %XWIKI_OPTS% -Djetty.home=%JETTY_HOME% -Djetty.port=%JETTY_PORT% -DSTOP.PORT=%JETTY_STOPPORT% -DSTOP.KEY=xwiki -Dxwiki.jetty.minThreads=%MIN_THREADS% -Dxwiki.jetty.maxThreads=%MAX_THREADS% -Dxwiki.jetty.maxRequests=%MAX_REQUESTS% -jar %JETTY_HOME%/start.jar %JETTY_HOME%/etc/jetty-production.xml
@@ -0,0 +1,58 @@
+#!/bin/sh
+# ---------------------------------------------------------------------------
+#
+# See the NOTICE file distributed with this work for additional
+# information regarding copyright ownership.
+#
+# This is free software; you can redistribute it and/or modify it
+# under the terms of the GNU Lesser General Public License as
+# published by the Free Software Foundation; either version 2.1 of
+# the License, or (at your option) any later version.
+#
+# This software is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+# Lesser General Public License for more details.
+#
+# You should have received a copy of the GNU Lesser General Public
+# License along with this software; if not, write to the Free
+# Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+# 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+# ---------------------------------------------------------------------------
+
+# ---------------------------------------------------------------------------
+# Starts XWiki with the production profile of Jetty, tuned for load rather than for demos:
+#  - jetty/etc/jetty-production.xml: non-blocking connector, worker pool and request queue sized from the number of
+#    cores, compression of the text responses and far-future cache headers on /skins and /resources
+#  - jetty/etc/jvm-production.options: heap and garbage collector
+#
+# Usage: start_xwiki_production.sh [port] [stop port]
+# The number of cores can be forced with the XWIKI_CORES environment variable and JVM options can be added with
+# XWIKI_OPTS. Stop XWiki with stop_xwiki_production.sh.
+# ---------------------------------------------------------------------------
+
+JETTY_HOME=jetty
+JETTY_PORT=${1:-8080}
+JETTY_STOPPORT=${2:-8079}
+
+cd "$(dirname "$0")" || exit 1
+
+if [ -z "$XWIKI_CORES" ]; then
+  XWIKI_CORES=$(getconf _NPROCESSORS_ONLN 2>/dev/null || sysctl -n hw.ncpu 2>/dev/null || echo 2)
+fi
+# A few requests per core keep the CPUs busy while the others wait on the database. More running requests would
+# only compete for the CPUs and the database connections, so they wait in the queue of the QoS filter.
+MAX_REQUESTS=$((XWIKI_CORES * 4))
+[ $MAX_REQUESTS -gt 40 ] && MAX_REQUESTS=40
+# Room for the static resources, the selectors and the acceptors on top of the running requests.
+MAX_THREADS=$((MAX_REQUESTS * 2 + 16))
+MIN_THREADS=$((XWIKI_CORES * 2))
+
+JVM_OPTS=$(grep -v '^#' "$JETTY_HOME/etc/jvm-production.options" | tr '\n' ' ')
+
+echo "Starting Jetty on port $JETTY_PORT with the production profile ($XWIKI_CORES cores, $MAX_REQUESTS concurrent requests)"
+java $JVM_OPTS $XWIKI_OPTS -Djetty.home=$JETTY_HOME -Djetty.port=$JETTY_PORT \
+  -DSTOP.PORT=$JETTY_STOPPORT -DSTOP.KEY=xwiki \
+  -Dxwiki.jetty.minThreads=$MIN_THREADS -Dxwiki.jetty.maxThreads=$MAX_THREADS \
+  -Dxwiki.jetty.maxRequests=$MAX_REQUESTS \
+  -jar $JETTY_HOME/start.jar $JETTY_HOME/etc/jetty-production.xml
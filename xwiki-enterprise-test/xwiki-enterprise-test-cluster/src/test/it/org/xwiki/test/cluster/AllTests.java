@@ -23,6 +23,7 @@
 import java.util.Properties;
 
 import org.junit.runner.RunWith;
+import org.xwiki.test.cluster.framework.ClusterSuite;
 import org.xwiki.test.integration.XWikiExecutor;
 import org.xwiki.test.integration.XWikiExecutorSuite;
 
@@ -31,18 +32,31 @@
  * 
  * @version $Id$
  */
-@RunWith(XWikiExecutorSuite.class)
-@XWikiExecutorSuite.Executors(2)
+@RunWith(ClusterSuite.class)
 public class AllTests
 {
     @XWikiExecutorSuite.PreStart
     public void preInitialize(List<XWikiExecutor> executors) throws Exception
     {
-        initChannel(executors.get(0), "tcp");
-        initChannel(executors.get(1), "tcp");
+        // Each node's TCP transport listens on the next port starting at 7800: list them all so that any number of
+        // nodes can discover each other.
+        StringBuilder initialHosts = new StringBuilder();
+        for (int i = 0; i < executors.size(); i++) {
+            initialHosts.append(i > 0 ? "," : "").append("localhost[").append(7800 + i).append(']');
+        }
+
+        // The channel can be changed to compare the behavior of the various JGroups stacks (e.g. "tcp-batching"), and
+        // its variants selected with system properties (e.g. "-Djgroups.compress.min_size=1024")
+        String channelName = System.getProperty("clusterChannel", "tcp");
+        String channelOpts = System.getProperty("clusterChannelOpts", "");
+
+        for (XWikiExecutor executor : executors) {
+            initChannel(executor, channelName, channelOpts, initialHosts.toString());
+        }
     }
 
-    private void initChannel(XWikiExecutor executor, String channelName) throws Exception
+    private void initChannel(XWikiExecutor executor, String channelName, String channelOpts, String initialHosts)
+        throws Exception
     {
         Properties properties = executor.loadXWikiProperties();
         properties.setProperty("observation.remote.enabled", "true");
@@ -50,6 +64,7 @@ private void initChannel(XWikiExecutor executor, String channelName) throws Exce
         executor.saveXWikiProperties(properties);
 
         // Force bind_addr since tcp jgroups configuration expect cluster members to listen localhost by default
-        executor.setOpts("-Djgroups.bind_addr=localhost -Xmx512m -XX:MaxPermSize=128m");
+        executor.setOpts("-Djgroups.bind_addr=localhost -Djgroups.tcpping.initial_hosts=" + initialHosts + " "
+            + channelOpts + " -Xmx512m -XX:MaxPermSize=128m");
     }
 }
@@ -0,0 +1,161 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.cluster;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.ws.rs.core.MediaType;
+
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.PutMethod;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.xwiki.test.cluster.framework.AbstractClusterHttpTest;
+import org.xwiki.test.performance.framework.LatencyHistogram;
+import org.xwiki.test.performance.framework.LoadReport;
+import org.xwiki.test.rest.framework.HttpTransport;
+
+/**
+ * Verify that all the documents modified in a burst on one node are invalidated on the other node, whatever the channel
+ * used (one message per event or bundled events), and measure how fast the burst is propagated. The pages are modified
+ * by concurrent writers, each of them waiting for its modification to be served by the other node, so that the
+ * invalidations are in flight at the same time. The propagation time of a page starts when the node handling the PUT
+ * has answered.
+ * <p>
+ * Only executed when the "cluster.benchmark" System Property is true, see the "benchmark" profile of this module.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class BulkInvalidationTest extends AbstractClusterHttpTest
+{
+    private static final String SPACE = "BulkInvalidation";
+
+    /** Maximum time to wait for a modification to reach the other node. */
+    private static final long TIMEOUT = 60000L;
+
+    private static final String CONTENT = "content";
+
+    private static final String MODIFIED_CONTENT = "modified content";
+
+    @Test
+    public void testBulkInvalidation() throws Exception
+    {
+        Assume.assumeTrue(Boolean.getBoolean("cluster.benchmark"));
+
+        final String wiki = getWiki();
+        int pages = Integer.getInteger("cluster.bulk.pages", 200);
+        int writers = Integer.getInteger("cluster.bulk.writers", 8);
+
+        HttpTransport.setMaxConnections(writers * 2);
+
+        // 1) Create the pages on XWiki 0 and load them on XWiki 1 so that they are in its document cache
+        switchXWiki(0);
+        for (int i = 0; i < pages; i++) {
+            setPageContent(wiki, SPACE, "Page" + i, CONTENT);
+        }
+        for (int i = 0; i < pages; i++) {
+            if (!waitForContent(getPageURI(1, wiki, SPACE, "Page" + i), CONTENT, System.nanoTime(), TIMEOUT)) {
+                Assert.fail("Page [" + SPACE + ".Page" + i + "] was not created on XWiki 1");
+            }
+        }
+
+        // 2) Modify all the pages on XWiki 0 concurrently and wait for XWiki 1 to serve the new content of each
+        long start = System.currentTimeMillis();
+        LatencyHistogram saves = new LatencyHistogram();
+        LatencyHistogram propagation = new LatencyHistogram();
+        ExecutorService pool = Executors.newFixedThreadPool(writers);
+        List<Future<long[]>> results = new ArrayList<Future<long[]>>();
+        try {
+            for (int i = 0; i < pages; i++) {
+                final String pageName = "Page" + i;
+                results.add(pool.submit(new Callable<long[]>()
+                {
+                    public long[] call() throws Exception
+                    {
+                        return modify(wiki, pageName);
+                    }
+                }));
+            }
+
+            for (Future<long[]> result : results) {
+                long[] durations = result.get();
+                saves.record(durations[0]);
+                if (durations[1] >= 0) {
+                    propagation.record(durations[1]);
+                } else {
+                    propagation.recordError();
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        String channel = System.getProperty("clusterChannel", "tcp");
+        LoadReport report = new LoadReport(writers, System.currentTimeMillis() - start);
+        report.add("save", saves);
+        report.add("propagation", propagation);
+
+        System.out.println(String.format("Invalidation of %d documents by %d concurrent writers using channel [%s]:",
+            pages, writers, channel));
+        System.out.println(report);
+
+        String reportPath = System.getProperty("cluster.bulk.report");
+        if (reportPath != null) {
+            report.write(new File(reportPath));
+        }
+
+        // ASSERT) XWiki 1 should have served the new content of every page
+        Assert.assertEquals("Some pages were not invalidated on XWiki 1", 0, propagation.getErrors());
+    }
+
+    /**
+     * Modify the content of a page on XWiki 0 and wait for XWiki 1 to serve it.
+     * 
+     * @return the duration of the save and the time it took for the modification to reach XWiki 1, or -1 if it
+     *         didn't before the timeout, in nanoseconds
+     */
+    private long[] modify(String wiki, String pageName) throws Exception
+    {
+        long[] durations = new long[2];
+
+        long t1 = System.nanoTime();
+        PutMethod putMethod = new PutMethod(getPageURI(0, wiki, SPACE, pageName));
+        putMethod.setRequestEntity(new StringRequestEntity(MODIFIED_CONTENT, MediaType.TEXT_PLAIN, "UTF-8"));
+        int status = HttpTransport.execute(putMethod, "Admin", "admin");
+        Assert.assertTrue(getHttpMethodInfo(putMethod),
+            status == HttpStatus.SC_CREATED || status == HttpStatus.SC_ACCEPTED);
+        long t2 = System.nanoTime();
+        durations[0] = t2 - t1;
+
+        boolean propagated = waitForContent(getPageURI(1, wiki, SPACE, pageName), MODIFIED_CONTENT, t2, TIMEOUT);
+        durations[1] = propagated ? System.nanoTime() - t2 : -1;
+
+        return durations;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.cluster;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.ws.rs.core.MediaType;
+
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.PutMethod;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.xwiki.test.cluster.framework.AbstractClusterHttpTest;
+import org.xwiki.test.performance.framework.LatencyHistogram;
+import org.xwiki.test.performance.framework.LoadReport;
+import org.xwiki.test.rest.framework.HttpTransport;
+
+/**
+ * Measure how long it takes for a page modification made on one node to be visible on all the other nodes of the
+ * cluster, with several concurrent writers. The measured time starts when the node handling the PUT has answered (the
+ * modification is saved) and stops when every other node serves the new content.
+ * <p>
+ * Only executed when the "cluster.benchmark" System Property is true, see the "benchmark" profile of this module.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class InvalidationLatencyBenchmarkTest extends AbstractClusterHttpTest
+{
+    private static final String SPACE = "InvalidationBenchmark";
+
+    /** Maximum time to wait for a modification to reach all the nodes. */
+    private static final long TIMEOUT = 30000L;
+
+    @Test
+    public void testInvalidationLatency() throws Exception
+    {
+        Assume.assumeTrue(Boolean.getBoolean("cluster.benchmark"));
+
+        final int nodes = getExecutors().size();
+        final int writers = Integer.getInteger("cluster.benchmark.writers", nodes);
+        final int iterations = Integer.getInteger("cluster.benchmark.iterations", 50);
+        final String wiki = getWiki();
+
+        HttpTransport.setMaxConnections(writers * nodes);
+
+        long start = System.currentTimeMillis();
+
+        ExecutorService pool = Executors.newFixedThreadPool(writers);
+        List<Future<LatencyHistogram>> results = new ArrayList<Future<LatencyHistogram>>();
+        try {
+            for (int i = 0; i < writers; i++) {
+                final int writer = i;
+                results.add(pool.submit(new Callable<LatencyHistogram>()
+                {
+                    public LatencyHistogram call() throws Exception
+                    {
+                        return write(wiki, "Writer" + writer, writer % nodes, nodes, iterations);
+                    }
+                }));
+            }
+
+            LatencyHistogram histogram = new LatencyHistogram();
+            for (Future<LatencyHistogram> result : results) {
+                histogram.merge(result.get());
+            }
+
+            LoadReport report = new LoadReport(writers, System.currentTimeMillis() - start);
+            report.add(nodes + " nodes", histogram);
+
+            System.out.println(String.format("Invalidation latency with %d nodes and %d concurrent writers:", nodes,
+                writers));
+            System.out.println(report);
+
+            String reportPath = System.getProperty("cluster.benchmark.report");
+            if (reportPath != null) {
+                report.write(new File(reportPath));
+            }
+
+            Assert.assertEquals("Some modifications never reached all the nodes", 0, histogram.getErrors());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Repeatedly modify a page on a node and wait for all the other nodes to see the modification.
+     * 
+     * @return the time it took for each modification to reach all the other nodes
+     */
+    private LatencyHistogram write(String wiki, String pageName, int writerNode, int nodes, int iterations)
+        throws Exception
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (int i = 0; i < iterations; i++) {
+            String content = String.format("%s revision %d", pageName, i);
+
+            PutMethod putMethod = new PutMethod(getPageURI(writerNode, wiki, SPACE, pageName));
+            putMethod.setRequestEntity(new StringRequestEntity(content, MediaType.TEXT_PLAIN, "UTF-8"));
+            int status = HttpTransport.execute(putMethod, "Admin", "admin");
+            Assert.assertTrue(getHttpMethodInfo(putMethod),
+                status == HttpStatus.SC_CREATED || status == HttpStatus.SC_ACCEPTED);
+
+            long t1 = System.nanoTime();
+            boolean propagated = true;
+            for (int node = 0; node < nodes && propagated; node++) {
+                if (node != writerNode) {
+                    propagated = waitForContent(getPageURI(node, wiki, SPACE, pageName), content, t1, TIMEOUT);
+                }
+            }
+
+            if (propagated) {
+                histogram.record(System.nanoTime() - t1);
+            } else {
+                histogram.recordError();
+            }
+        }
+
+        return histogram;
+    }
+}
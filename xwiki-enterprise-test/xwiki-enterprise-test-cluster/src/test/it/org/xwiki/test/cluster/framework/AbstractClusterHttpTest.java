@@ -19,9 +19,18 @@
  */
 package org.xwiki.test.cluster.framework;
 
+import java.util.List;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.UriBuilder;
+
+import org.apache.commons.httpclient.methods.GetMethod;
 import org.junit.Test;
+import org.xwiki.rest.resources.pages.PageResource;
 import org.xwiki.test.integration.XWikiExecutor;
 import org.xwiki.test.rest.framework.AbstractHttpTest;
+import org.xwiki.test.rest.framework.HttpTransport;
+import org.xwiki.test.rest.framework.TestConstants;
 
 /**
  * Base class for REST based clustering integration test.
@@ -31,6 +40,22 @@
 // TODO: Fix this, it's wrong to reuse AbstractHttpTest from the REST Tests module
 public abstract class AbstractClusterHttpTest extends AbstractHttpTest
 {
+    /** Time between two checks of the content served by a node. */
+    private static final long POLL_INTERVAL = 5L;
+
+    private static List<XWikiExecutor> executors;
+
+    /** Used so that the {@link ClusterSuite} can tell which nodes are running. */
+    public static void setExecutors(List<XWikiExecutor> executors)
+    {
+        AbstractClusterHttpTest.executors = executors;
+    }
+
+    protected List<XWikiExecutor> getExecutors()
+    {
+        return executors;
+    }
+
     @Test
     public void testRepresentation() throws Exception
     {
@@ -40,4 +65,45 @@ protected void switchXWiki(int index)
     {
         setPort(Integer.valueOf(XWikiExecutor.DEFAULT_PORT) + index);
     }
+
+    /**
+     * Unlike {@link #switchXWiki(int)}, the node is part of the URI so that several threads can target different
+     * nodes at the same time.
+     * 
+     * @return the URI of the REST resource of the page on the given node
+     * @since 3.2M3
+     */
+    protected String getPageURI(int node, String wiki, String space, String pageName)
+    {
+        String baseURL = "http://localhost:" + getExecutors().get(node).getPort()
+            + TestConstants.RELATIVE_REST_API_ENTRYPOINT;
+
+        return UriBuilder.fromUri(baseURL).path(PageResource.class).build(wiki, space, pageName).toString();
+    }
+
+    /**
+     * @param uri the URI of the REST resource of a page, see {@link #getPageURI(int, String, String, String)}
+     * @param content the expected content of the page
+     * @param startNanos when the wait started, as given by {@link System#nanoTime()}
+     * @param timeout the maximum time to wait, in milliseconds
+     * @return {@code true} if the page served at the given URI has the expected content before the timeout
+     * @since 3.2M3
+     */
+    protected boolean waitForContent(String uri, String content, long startNanos, long timeout) throws Exception
+    {
+        // The content is searched in the XML representation rather than unmarshalled, to keep the polling cheap.
+        String expected = "<content>" + content + "</content>";
+        while (true) {
+            GetMethod getMethod = new GetMethod(uri);
+            getMethod.addRequestHeader("Accept", MediaType.APPLICATION_XML);
+            HttpTransport.execute(getMethod);
+            if (getMethod.getResponseBodyAsString().contains(expected)) {
+                return true;
+            }
+            if ((System.nanoTime() - startNanos) / 1000000 > timeout) {
+                return false;
+            }
+            Thread.sleep(POLL_INTERVAL);
+        }
+    }
 }
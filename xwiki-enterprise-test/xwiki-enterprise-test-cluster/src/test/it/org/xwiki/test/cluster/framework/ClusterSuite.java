@@ -0,0 +1,146 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.cluster.framework;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.extensions.cpsuite.ClasspathSuite;
+import org.junit.runner.Runner;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerBuilder;
+import org.xwiki.test.integration.XWikiExecutor;
+import org.xwiki.test.integration.XWikiExecutorSuite;
+
+/**
+ * Start a cluster of XWiki instances, run all tests found in the current classloader and stop the cluster.
+ * <p>
+ * Unlike {@link XWikiExecutorSuite} the number of nodes is not fixed at compile time: it's taken from the
+ * "clusterNodes" System Property (2 by default). The distribution is only unpacked once by the build, for the first
+ * node, and copied for the other nodes before they start. Methods of the suite class annotated with
+ * {@link XWikiExecutorSuite.PreStart} are called with the list of executors before they are started.
+ * <p>
+ * Tests can be filtered by passing the "pattern" System Property.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class ClusterSuite extends ClasspathSuite
+{
+    public static final String PATTERN = ".*" + System.getProperty("pattern", "");
+
+    private static final int DEFAULT_NODES = 2;
+
+    private final List<XWikiExecutor> executors = new ArrayList<XWikiExecutor>();
+
+    public ClusterSuite(Class< ? > klass, RunnerBuilder builder) throws InitializationError
+    {
+        super(klass, builder);
+
+        int nodes = Integer.getInteger("clusterNodes", DEFAULT_NODES);
+        for (int i = 0; i < nodes; i++) {
+            this.executors.add(new XWikiExecutor(i));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected List<Runner> getChildren()
+    {
+        List<Runner> runners = new ArrayList<Runner>();
+
+        // Filter classes to run
+        for (Runner runner : super.getChildren()) {
+            if (runner.getDescription().getClassName().matches(PATTERN)) {
+                runners.add(runner);
+            }
+        }
+
+        return runners;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run(RunNotifier notifier)
+    {
+        try {
+            prepareExecutionDirectories();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to prepare the cluster nodes", e);
+        }
+
+        // Callback to setup executors in the suite class.
+        try {
+            Object instance = getTestClass().getJavaClass().newInstance();
+            for (Method method : getTestClass().getJavaClass().getMethods()) {
+                if (method.getAnnotation(XWikiExecutorSuite.PreStart.class) != null) {
+                    method.invoke(instance, this.executors);
+                }
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to initialize XWiki Executors before start", e);
+        }
+
+        AbstractClusterHttpTest.setExecutors(Collections.unmodifiableList(this.executors));
+
+        try {
+            try {
+                for (XWikiExecutor executor : this.executors) {
+                    executor.start();
+                }
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to start XWiki", e);
+            }
+
+            super.run(notifier);
+        } finally {
+            for (XWikiExecutor executor : this.executors) {
+                try {
+                    executor.stop();
+                } catch (Exception e) {
+                    // Squash this and make sure the other nodes are stopped too.
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy the distribution of the first node for each other node which doesn't have one yet.
+     */
+    private void prepareExecutionDirectories() throws Exception
+    {
+        File reference = new File(this.executors.get(0).getExecutionDirectory());
+        for (XWikiExecutor executor : this.executors.subList(1, this.executors.size())) {
+            File directory = new File(executor.getExecutionDirectory());
+            if (!directory.exists()) {
+                FileUtils.copyDirectory(reference, directory);
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.memory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.test.integration.XWikiExecutor;
+import org.xwiki.test.performance.framework.Baseline;
+import org.xwiki.test.rest.framework.AbstractHttpClientTest;
+import org.xwiki.test.webstandards.framework.AbstractValidationTest;
+
+/**
+ * Memory footprint of XWiki after it is started and after a browsing workload viewing all the documents listed in the
+ * package.xml of the XAR ({@code memory.passes} times). XWiki is started with GC logging and, at the end of each
+ * stage, the following metrics are recorded as {@code <metric>.<stage>}:
+ * <ul>
+ * <li>{@code heap}: the retained heap in MB, i.e. the total of a heap histogram of the live objects taken with jmap
+ * (or the heap used after a full garbage collection when jmap isn't available)</li>
+ * <li>{@code classes}: the number of loaded classes</li>
+ * <li>{@code metaspace}: the MB used by the class metadata memory pool (Perm Gen or Metaspace)</li>
+ * <li>{@code documentCache} and {@code pageExistCache}: the number of entries of the caches of the store, -1 when the
+ * cache implementation doesn't expose it</li>
+ * </ul>
+ * The GC log, the heap histograms and the report are written in the directory given by the
+ * {@code memory.reportDirectory} system property. The test fails when a document fails to be viewed or when the
+ * retained heap of a stage grows more than {@code memory.tolerance} over the baseline.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class MemoryFootprintTest extends AbstractHttpClientTest
+{
+    private static final String SPACE = "MemoryFootprint";
+
+    private static final String PAGE = "Footprint";
+
+    private static final String HEAP = "heap";
+
+    /** The metrics, in the order they're printed. */
+    private static final String[] METRICS = new String[] {HEAP, "classes", "metaspace", "documentCache",
+        "pageExistCache"};
+
+    private static final String[] STAGES = new String[] {"startup", "browsing"};
+
+    private static final String GC_OPTS = " -verbose:gc -XX:+PrintGCDetails -XX:+PrintGCDateStamps -Xloggc:";
+
+    /** Prints the metrics read on the server as {@code metric=value}, with the process id needed by jmap. */
+    private static final String FOOTPRINT_SCRIPT = "{{groovy}}\n"
+        + "import java.lang.management.ManagementFactory\n"
+        + "3.times { System.gc() }\n"
+        + "def runtime = Runtime.runtime\n"
+        + "def pool = ManagementFactory.memoryPoolMXBeans.find { it.name.contains('Perm Gen') "
+        + "|| it.name == 'Metaspace' }\n"
+        + "def size = { cache -> try { cache().cache.size() } catch (Exception e) { -1 } }\n"
+        + "def store = xcontext.context.wiki.store\n"
+        + "println '{{{'\n"
+        + "println 'pid=' + ManagementFactory.runtimeMXBean.name.split('@')[0]\n"
+        + "println 'heap=' + (runtime.totalMemory() - runtime.freeMemory()) / 1048576\n"
+        + "println 'classes=' + ManagementFactory.classLoadingMXBean.loadedClassCount\n"
+        + "println 'metaspace=' + (pool ? pool.usage.used / 1048576 : -1)\n"
+        + "println 'documentCache=' + size { store.cache }\n"
+        + "println 'pageExistCache=' + size { store.pageExistCache }\n"
+        + "println '}}}'\n"
+        + "{{/groovy}}";
+
+    /** The last line of a heap histogram, with the number of instances and the number of bytes. */
+    private static final Pattern HISTOGRAM_TOTAL = Pattern.compile("^Total\\s+(\\d+)\\s+(\\d+)", Pattern.MULTILINE);
+
+    private static final double MB = 1024 * 1024;
+
+    private final File reportDirectory = new File(System.getProperty("memory.reportDirectory", "target/memory"));
+
+    @Test
+    public void testFootprint() throws Exception
+    {
+        this.reportDirectory.mkdirs();
+        File gcLog = new File(this.reportDirectory, "gc.log");
+        String xar = System.getProperty("localRepository") + "/" + System.getProperty("pathToXWikiXar");
+        List<DocumentReference> documents =
+            AbstractValidationTest.readXarContents(xar, System.getProperty("documentsToTest"));
+
+        Map<String, Double> metrics = new LinkedHashMap<String, Double>();
+        XWikiExecutor executor = new XWikiExecutor(0);
+        executor.setOpts(System.getProperty("memory.opts", "-Xmx512m -XX:MaxPermSize=196m") + GC_OPTS
+            + gcLog.getAbsolutePath());
+        executor.start();
+        try {
+            setPageContent(getWiki(), SPACE, PAGE, FOOTPRINT_SCRIPT);
+            measure(STAGES[0], metrics);
+
+            // A document failing to render doesn't retain what it would have, the footprint would look better.
+            Set<DocumentReference> failures = new LinkedHashSet<DocumentReference>();
+            for (int i = 0; i < Integer.getInteger("memory.passes", 2); i++) {
+                for (DocumentReference document : documents) {
+                    if (!view(document)) {
+                        failures.add(document);
+                    }
+                }
+            }
+            Assert.assertTrue("Failed to view " + failures, failures.isEmpty());
+            measure(STAGES[1], metrics);
+        } finally {
+            executor.stop();
+        }
+
+        saveReport(metrics);
+        System.out.println(toString(metrics));
+        System.out.println("GC log and heap histograms in " + this.reportDirectory);
+
+        // Only the retained heap is checked, the other metrics are tracked in the report.
+        Map<String, Double> heap = new LinkedHashMap<String, Double>();
+        for (String stage : STAGES) {
+            heap.put(HEAP + '.' + stage, metrics.get(HEAP + '.' + stage));
+        }
+        double tolerance = Double.parseDouble(System.getProperty("memory.tolerance", "0.1"));
+        new Baseline(new File(System.getProperty("memory.baseline"))).check(heap, tolerance, "memory.updateBaseline");
+    }
+
+    /**
+     * Read the metrics of the given stage on the server and take a heap histogram of the live objects.
+     */
+    private void measure(String stage, Map<String, Double> metrics) throws Exception
+    {
+        GetMethod getMethod = executeGet(String.format(
+            "http://localhost:%d/xwiki/bin/view/%s/%s?xpage=plain&outputSyntax=plain", this.port, SPACE, PAGE),
+            "Admin", "admin");
+        Properties footprint = new Properties();
+        for (String line : getMethod.getResponseBodyAsString().split("\n")) {
+            int separator = line.indexOf('=');
+            if (separator > 0) {
+                footprint.setProperty(line.substring(0, separator).trim(), line.substring(separator + 1).trim());
+            }
+        }
+        for (String metric : METRICS) {
+            String value = footprint.getProperty(metric);
+            Assert.assertNotNull("No " + metric + " in " + getMethod.getResponseBodyAsString(), value);
+            metrics.put(metric + '.' + stage, Double.valueOf(value));
+        }
+
+        Long retained = captureHistogram(footprint.getProperty("pid"), new File(this.reportDirectory,
+            "histogram-" + stage + ".txt"));
+        if (retained != null) {
+            metrics.put(HEAP + '.' + stage, retained / MB);
+        }
+    }
+
+    /**
+     * @param pid the process id of XWiki
+     * @param file the file where to save the histogram
+     * @return the number of bytes of the live objects, {@code null} if jmap isn't available
+     */
+    private Long captureHistogram(String pid, File file) throws Exception
+    {
+        String executable = System.getProperty("os.name").startsWith("Windows") ? "jmap.exe" : "jmap";
+        // java.home is the JRE of the JDK when the tests are run by a JDK.
+        File jmap = new File(System.getProperty("java.home"), "../bin/" + executable);
+        if (!jmap.exists()) {
+            jmap = new File(System.getProperty("java.home"), "bin/" + executable);
+        }
+
+        String histogram;
+        try {
+            Process process =
+                new ProcessBuilder(jmap.getPath(), "-histo:live", pid).redirectErrorStream(true).start();
+            histogram = IOUtils.toString(process.getInputStream(), "UTF-8");
+            if (process.waitFor() != 0) {
+                System.out.println("Failed to take a heap histogram: " + histogram);
+                return null;
+            }
+        } catch (IOException e) {
+            System.out.println("No heap histogram, jmap isn't available: " + e.getMessage());
+            return null;
+        }
+
+        FileUtils.writeStringToFile(file, histogram, "UTF-8");
+        Matcher matcher = HISTOGRAM_TOTAL.matcher(histogram);
+
+        return matcher.find() ? Long.valueOf(matcher.group(2)) : null;
+    }
+
+    /**
+     * @return {@code true} if the document could be viewed
+     */
+    private boolean view(DocumentReference document) throws Exception
+    {
+        GetMethod getMethod = executeGet(String.format("http://localhost:%d/xwiki/bin/view/%s/%s", this.port,
+            URLEncoder.encode(document.getLastSpaceReference().getName(), "UTF-8"),
+            URLEncoder.encode(document.getName(), "UTF-8")), "Admin", "admin");
+
+        return getMethod.getStatusCode() == 200;
+    }
+
+    /**
+     * @return a table of the metrics, one line per metric and one column per stage
+     */
+    private String toString(Map<String, Double> metrics)
+    {
+        StringBuilder builder = new StringBuilder(String.format("%-16s", "metric"));
+        for (String stage : STAGES) {
+            builder.append(String.format("%12s", stage));
+        }
+        builder.append('\n');
+        for (String metric : METRICS) {
+            builder.append(String.format("%-16s", metric));
+            for (String stage : STAGES) {
+                builder.append(String.format("%12.1f", metrics.get(metric + '.' + stage)));
+            }
+            builder.append('\n');
+        }
+
+        return builder.toString();
+    }
+
+    private void saveReport(Map<String, Double> metrics) throws IOException
+    {
+        Properties report = new Properties();
+        for (Map.Entry<String, Double> metric : metrics.entrySet()) {
+            report.setProperty(metric.getKey(), String.valueOf(metric.getValue()));
+        }
+
+        OutputStream output = new FileOutputStream(new File(this.reportDirectory, "report.properties"));
+        try {
+            report.store(output, "Memory footprint, sizes in MB");
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.performance;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.runner.RunWith;
+import org.xwiki.test.integration.XWikiExecutor;
+import org.xwiki.test.integration.XWikiExecutorSuite;
+
+/**
+ * Runs all load tests found in the classpath and start/stop XWiki before/after the tests (only once).
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+@RunWith(XWikiExecutorSuite.class)
+public class AllTests
+{
+    /**
+     * Keep a copy of the distribution as unpacked by the build, before XWiki is started for the first time, for the
+     * tests measuring a cold start, see {@link #getPristineDistribution(XWikiExecutor)}.
+     */
+    @XWikiExecutorSuite.PreStart
+    public void preStart(List<XWikiExecutor> executors) throws Exception
+    {
+        File pristine = getPristineDistribution(executors.get(0));
+        FileUtils.deleteDirectory(pristine);
+        FileUtils.copyDirectory(new File(executors.get(0).getExecutionDirectory()), pristine);
+    }
+
+    /**
+     * @param executor the executor of the distribution
+     * @return the copy of the distribution taken before XWiki was started for the first time (nothing in the work
+     *         directory, database as shipped)
+     */
+    public static File getPristineDistribution(XWikiExecutor executor)
+    {
+        File distribution = new File(executor.getExecutionDirectory());
+        return new File(distribution.getParentFile(), distribution.getName() + "-pristine");
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.performance;
+
+import java.io.File;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.xwiki.test.integration.XWikiExecutor;
+import org.xwiki.test.performance.framework.BenchmarkResults;
+import org.xwiki.test.rest.framework.AbstractHttpClientTest;
+
+/**
+ * Footprint of the distribution: XWiki is restarted to measure its startup time (until it answers) and the time of
+ * the first view of Main.WebHome, then the heap used after a full garbage collection, the number of loaded classes,
+ * the number of plugins and the size of {@code WEB-INF/lib} are read. Each distribution is tested by a different
+ * build, the results being accumulated in the file given by the {@code performance.distributionFootprint} system
+ * property and printed side by side, e.g. after running:
+ * 
+ * <pre>
+ * mvn install -Pperformance,benchmark -Dpattern=DistributionFootprintTest
+ * mvn install -Pperformance,benchmark,lean -Dpattern=DistributionFootprintTest
+ * </pre>
+ * <p>
+ * Only executed when the "performance.benchmark" System Property is true, see the "benchmark" profile of this module.
+ * The builds must be run without "clean" for the results to accumulate in {@code target/}.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class DistributionFootprintTest extends AbstractHttpClientTest
+{
+    private static final String SPACE = "DistributionFootprint";
+
+    /** The metrics, in the order they're printed. */
+    private static final String[] METRICS = new String[] {"startup", "firstView", "heap", "classes", "plugins", "jars",
+        "lib"};
+
+    private static final String[] UNITS = new String[] {"ms", "ms", "MB", "", "", "", "MB"};
+
+    /** Prints the metrics read on the server as {@code metric=value}. */
+    private static final String FOOTPRINT_SCRIPT = "{{groovy}}\n"
+        + "import java.lang.management.ManagementFactory\n"
+        + "3.times { System.gc() }\n"
+        + "def runtime = Runtime.runtime\n"
+        + "def lib = new File(xcontext.context.engineContext.getRealPath('/WEB-INF/lib')).listFiles()\n"
+        + "println '{{{'\n"
+        + "println 'heap=' + ((runtime.totalMemory() - runtime.freeMemory()) >> 20)\n"
+        + "println 'classes=' + ManagementFactory.classLoadingMXBean.loadedClassCount\n"
+        + "println 'plugins=' + xcontext.context.wiki.pluginManager.plugins.size()\n"
+        + "println 'jars=' + lib.length\n"
+        + "println 'lib=' + (lib.sum { it.length() } >> 20)\n"
+        + "println '}}}'\n"
+        + "{{/groovy}}";
+
+    @Test
+    public void testFootprint() throws Exception
+    {
+        Assume.assumeTrue(Boolean.getBoolean("performance.benchmark"));
+
+        String distribution = System.getProperty("performance.distribution", "full");
+        setPageContent(getWiki(), SPACE, "Footprint", FOOTPRINT_SCRIPT);
+
+        Properties footprint = new Properties();
+        XWikiExecutor executor = new XWikiExecutor(0);
+        executor.stop();
+        long start = System.currentTimeMillis();
+        executor.start();
+        footprint.setProperty(METRICS[0], String.valueOf(System.currentTimeMillis() - start));
+
+        start = System.currentTimeMillis();
+        GetMethod getMethod =
+            executeGet(String.format("http://localhost:%d/xwiki/bin/view/Main/WebHome", this.port), "Admin", "admin");
+        Assert.assertEquals("Failed to view Main.WebHome", 200, getMethod.getStatusCode());
+        footprint.setProperty(METRICS[1], String.valueOf(System.currentTimeMillis() - start));
+
+        getMethod = executeGet(String.format(
+            "http://localhost:%d/xwiki/bin/view/%s/Footprint?xpage=plain&outputSyntax=plain", this.port, SPACE),
+            "Admin", "admin");
+        for (String line : getMethod.getResponseBodyAsString().split("\n")) {
+            int separator = line.indexOf('=');
+            if (separator > 0) {
+                footprint.setProperty(line.substring(0, separator).trim(), line.substring(separator + 1).trim());
+            }
+        }
+        for (String metric : METRICS) {
+            Assert.assertNotNull("No " + metric + " in " + getMethod.getResponseBodyAsString(),
+                footprint.getProperty(metric));
+        }
+
+        BenchmarkResults results = new BenchmarkResults(new File(System.getProperty(
+            "performance.distributionFootprint", "target/distribution-footprint.properties")));
+        for (String metric : METRICS) {
+            results.put(distribution, metric, footprint.getProperty(metric));
+        }
+        results.save();
+        System.out.println(toString(results));
+    }
+
+    /**
+     * @return a table comparing the distributions, one line per metric
+     */
+    private String toString(BenchmarkResults results)
+    {
+        Set<String> distributions = results.getConfigurations();
+
+        StringBuilder builder = new StringBuilder(String.format("%-10s", "metric"));
+        for (String distribution : distributions) {
+            builder.append(String.format("%12s", distribution));
+        }
+        builder.append('\n');
+        for (int i = 0; i < METRICS.length; i++) {
+            builder.append(String.format("%-10s", METRICS[i]));
+            for (String distribution : distributions) {
+                String value = results.get(distribution, METRICS[i]);
+                builder.append(String.format("%12s", value == null ? "-" : (value + ' ' + UNITS[i]).trim()));
+            }
+            builder.append('\n');
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.performance;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.ws.rs.core.MediaType;
+
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.PutMethod;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.xwiki.rest.resources.pages.PageResource;
+import org.xwiki.rest.resources.wikis.WikiSearchResource;
+import org.xwiki.test.performance.framework.AbstractPerformanceTest;
+import org.xwiki.test.performance.framework.BenchmarkResults;
+import org.xwiki.test.performance.framework.LatencyHistogram;
+import org.xwiki.test.performance.framework.LoadAction;
+import org.xwiki.test.performance.framework.LoadGenerator;
+import org.xwiki.test.performance.framework.LoadReport;
+
+/**
+ * Benchmark of the embedded database engines: measures the throughput of page saves, page views and searches on the
+ * same synthetic content, generated from a fixed seed. Each engine is tested by a different build, the results being
+ * accumulated in the file given by the {@code performance.databaseBenchmark} system property and printed side by
+ * side, e.g. after running:
+ * 
+ * <pre>
+ * mvn install -Pperformance,benchmark,hsqldb -Dpattern=EmbeddedDatabaseBenchmarkTest
+ * mvn install -Pperformance,benchmark,derby -Dpattern=EmbeddedDatabaseBenchmarkTest
+ * mvn install -Pperformance,benchmark,h2 -Dpattern=EmbeddedDatabaseBenchmarkTest
+ * </pre>
+ * <p>
+ * Only executed when the "performance.benchmark" System Property is true, see the "benchmark" profile of this module.
+ * The builds must be run without "clean" for the results to accumulate in {@code target/}.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class EmbeddedDatabaseBenchmarkTest extends AbstractPerformanceTest
+{
+    private static final String SPACE = "DatabaseBenchmark";
+
+    /** Seed of the generated content and of the load, so that all the engines get the same. */
+    private static final long SEED = 20110915L;
+
+    private static final String[] WORDS = new String[] {"wiki", "database", "engine", "page", "space", "content",
+        "search", "save", "view", "lock", "transaction", "index", "table", "query", "cache", "document", "attachment",
+        "object", "property", "class", "version", "history", "comment", "tag", "user", "group", "right", "macro",
+        "template", "skin", "panel", "blog", "department", "meeting", "project", "report", "budget", "release",
+        "schedule", "review"};
+
+    private static final int WORDS_PER_PAGE = 300;
+
+    private static final String ACCEPT = "Accept";
+
+    private static final String SAVE = "PageResource.PUT";
+
+    private static final String VIEW = "PageResource.GET";
+
+    private static final String SEARCH = "WikiSearchResource.GET";
+
+    @Test
+    public void testSaveViewAndSearchThroughput() throws Exception
+    {
+        Assume.assumeTrue(Boolean.getBoolean("performance.benchmark"));
+
+        String wiki = getWiki();
+
+        Random random = new Random(SEED);
+        final List<String> pageURIs = new ArrayList<String>();
+        for (int i = 0; i < getPageCount(); i++) {
+            String pageName = "Page" + i;
+            setPageContent(wiki, SPACE, pageName, generateContent(random));
+            pageURIs.add(getUriBuilder(PageResource.class).build(wiki, SPACE, pageName).toString());
+        }
+        final String searchURI = getUriBuilder(WikiSearchResource.class).build(wiki).toString();
+
+        BenchmarkResults results = new BenchmarkResults(new File(System.getProperty("performance.databaseBenchmark",
+            "target/database-benchmark.properties")));
+        String engine = System.getProperty("performance.database", "unknown");
+
+        results.put(engine, "save", run(new LoadAction()
+        {
+            public String getName()
+            {
+                return SAVE;
+            }
+
+            public HttpMethod createMethod(Random random) throws Exception
+            {
+                PutMethod method = new PutMethod(pageURIs.get(random.nextInt(pageURIs.size())));
+                method.setRequestEntity(new StringRequestEntity(generateContent(random), MediaType.TEXT_PLAIN,
+                    "UTF-8"));
+                return method;
+            }
+        }), SAVE);
+        results.put(engine, "view", run(new LoadAction()
+        {
+            public String getName()
+            {
+                return VIEW;
+            }
+
+            public HttpMethod createMethod(Random random)
+            {
+                GetMethod method = new GetMethod(pageURIs.get(random.nextInt(pageURIs.size())));
+                method.addRequestHeader(ACCEPT, MediaType.APPLICATION_XML);
+                return method;
+            }
+        }), VIEW);
+        results.put(engine, "search", run(new LoadAction()
+        {
+            public String getName()
+            {
+                return SEARCH;
+            }
+
+            public HttpMethod createMethod(Random random)
+            {
+                // The content search is a database query, unlike the Lucene search.
+                GetMethod method = new GetMethod(String.format("%s?q=%s&scope=content", searchURI,
+                    WORDS[random.nextInt(WORDS.length)]));
+                method.addRequestHeader(ACCEPT, MediaType.APPLICATION_XML);
+                return method;
+            }
+        }), SEARCH);
+
+        results.save();
+        System.out.println(results);
+    }
+
+    /**
+     * Run a load made of a single operation.
+     * 
+     * @param action the operation
+     * @return the report of the load run
+     */
+    private LoadReport run(LoadAction action) throws Exception
+    {
+        LoadGenerator generator = new LoadGenerator("Admin", "admin");
+        generator.setSeed(SEED);
+        generator.addAction(action, 1);
+
+        LoadReport report = generator.run(getUsers(), getWarmupMillis(), getDurationMillis());
+        System.out.println(report);
+        LatencyHistogram histogram = report.getHistograms().get(action.getName());
+        Assert.assertTrue("No request succeeded for " + action.getName(), histogram != null
+            && histogram.getCount() > 0);
+
+        return report;
+    }
+
+    private static String generateContent(Random random)
+    {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < WORDS_PER_PAGE; i++) {
+            content.append(WORDS[random.nextInt(WORDS.length)]).append(i % 20 == 19 ? "\n\n" : " ");
+        }
+        return content.toString();
+    }
+}
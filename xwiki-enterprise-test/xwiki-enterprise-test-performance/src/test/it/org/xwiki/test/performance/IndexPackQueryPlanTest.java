@@ -0,0 +1,165 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.performance;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.test.rest.framework.AbstractHttpClientTest;
+
+/**
+ * Verifies that the queries of the slowest pages of the UI use the indexes of the index pack applied when the
+ * database is built, by asking the database for their plans. Planners don't use an index to read all the rows of a
+ * small table, so PostgreSQL is told to avoid sequential scans and the conditions select few rows.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class IndexPackQueryPlanTest extends AbstractHttpClientTest
+{
+    private static final String SPACE = "IndexPackQueryPlan";
+
+    /** The hot queries, by name of the index they must use. */
+    private static final Map<String, String> QUERIES = new LinkedHashMap<String, String>();
+
+    /** The hot queries using an index that only the PostgreSQL index pack has. */
+    private static final Map<String, String> POSTGRESQL_QUERIES = new LinkedHashMap<String, String>();
+
+    private static final String DATABASE = "database";
+
+    static {
+        QUERIES.put("XE_DOC_SPACE_NAME", "SELECT XWD_ID FROM xwikidoc WHERE XWD_WEB = 'Main' AND XWD_NAME = 'WebHome'");
+        QUERIES.put("XE_DOC_TRANSLATION_FULLNAME",
+            "SELECT XWD_ID FROM xwikidoc WHERE XWD_TRANSLATION = 0 AND XWD_FULLNAME = 'Main.WebHome'");
+        QUERIES.put("XE_DOC_DATE", "SELECT XWD_ID FROM xwikidoc WHERE XWD_DATE > CURRENT_TIMESTAMP");
+        QUERIES.put("XE_DOC_PARENT", "SELECT XWD_ID FROM xwikidoc WHERE XWD_PARENT = 'Main.WebHome'");
+        QUERIES.put("XE_DOC_AUTHOR_DATE",
+            "SELECT XWD_ID FROM xwikidoc WHERE XWD_AUTHOR = 'XWiki.Admin' AND XWD_DATE > CURRENT_TIMESTAMP");
+        QUERIES.put("XE_OBJ_CLASSNAME_NAME",
+            "SELECT XWO_ID FROM xwikiobjects WHERE XWO_CLASSNAME = 'XWiki.TagClass' AND XWO_NAME = 'Main.WebHome'");
+        QUERIES.put("XE_LISTITEM_VALUE", "SELECT XWL_ID FROM xwikilistitems WHERE XWL_VALUE = 'performance'");
+        QUERIES.put("XE_STRING_NAME_VALUE",
+            "SELECT XWS_ID FROM xwikistrings WHERE XWS_NAME = 'interval' AND XWS_VALUE = 'daily'");
+        QUERIES.put("XE_LINK_LINK", "SELECT XWL_DOC_ID FROM xwikilinks WHERE XWL_LINK = 'Main.WebHome'");
+        QUERIES.put("XE_ASE_WIKI_DATE", "SELECT ASE_EVENTID FROM activitystream_events WHERE ASE_WIKI = 'xwiki'"
+            + " AND ASE_DATE > CURRENT_TIMESTAMP");
+        QUERIES.put("XE_ASE_SPACE_DATE", "SELECT ASE_EVENTID FROM activitystream_events WHERE ASE_SPACE = 'Main'"
+            + " AND ASE_DATE > CURRENT_TIMESTAMP");
+        QUERIES.put("XE_ASE_PAGE_DATE", "SELECT ASE_EVENTID FROM activitystream_events"
+            + " WHERE ASE_PAGE = 'Main.WebHome' AND ASE_DATE > CURRENT_TIMESTAMP");
+        QUERIES.put("XE_ASE_USER_DATE", "SELECT ASE_EVENTID FROM activitystream_events"
+            + " WHERE ASE_USER = 'XWiki.Admin' AND ASE_DATE > CURRENT_TIMESTAMP");
+        QUERIES.put("XE_ASE_REQUESTID",
+            "SELECT ASE_EVENTID FROM activitystream_events WHERE ASE_REQUESTID = 'performance'");
+
+        POSTGRESQL_QUERIES.put("XE_DOC_FULLNAME_PATTERN",
+            "SELECT XWD_ID FROM xwikidoc WHERE XWD_FULLNAME LIKE 'Main.WebH%'");
+    }
+
+    /**
+     * Prints the database as {@code database=product} and the plan of each query as {@code index=plan}, on a JDBC
+     * connection of the store. Derby has no EXPLAIN statement: the plan is read from the runtime statistics of the
+     * query.
+     */
+    private static final String EXPLAIN_SCRIPT = "{{groovy}}\n"
+        + "def context = xcontext.context\n"
+        + "def store = context.wiki.hibernateStore\n"
+        + "store.beginTransaction(context)\n"
+        + "def statement = store.getSession(context).connection().createStatement()\n"
+        + "def product = statement.connection.metaData.databaseProductName.toLowerCase()\n"
+        + "def read = { rs, plan -> while (rs.next()) { (1..rs.metaData.columnCount).each {"
+        + " plan.append(rs.getString(it)).append(' ') } }; rs.close() }\n"
+        + "def explain = { sql ->\n"
+        + "  def plan = new StringBuilder()\n"
+        + "  if (product.contains('derby')) {\n"
+        + "    statement.execute('CALL SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(1)')\n"
+        + "    read(statement.executeQuery(sql), new StringBuilder())\n"
+        + "    read(statement.executeQuery('VALUES SYSCS_UTIL.SYSCS_GET_RUNTIMESTATISTICS()'), plan)\n"
+        + "    statement.execute('CALL SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(0)')\n"
+        + "  } else {\n"
+        + "    def prefix = product.contains('hsql') ? 'EXPLAIN PLAN FOR ' : 'EXPLAIN '\n"
+        + "    read(statement.executeQuery(prefix + sql), plan)\n"
+        + "  }\n"
+        + "  return plan.toString().replaceAll('\\\\s+', ' ')\n"
+        + "}\n"
+        + "def queries = %s\n"
+        + "if (product.contains('postgresql')) { queries += %s }\n"
+        + "try {\n"
+        + "  if (product.contains('postgresql')) { statement.execute('SET enable_seqscan = off') }\n"
+        + "  println '{{{'\n"
+        + "  println 'database=' + product\n"
+        + "  queries.each { index, sql -> println index + '=' + explain(sql) }\n"
+        + "  println '}}}'\n"
+        + "} finally {\n"
+        + "  if (product.contains('postgresql')) { statement.execute('SET enable_seqscan = on') }\n"
+        + "  statement.close()\n"
+        + "  store.endTransaction(context, false)\n"
+        + "}\n"
+        + "{{/groovy}}";
+
+    @Test
+    public void testHotQueriesUseTheIndexPack() throws Exception
+    {
+        setPageContent(getWiki(), SPACE, "Plans",
+            String.format(EXPLAIN_SCRIPT, toGroovy(QUERIES), toGroovy(POSTGRESQL_QUERIES)));
+
+        GetMethod getMethod = executeGet(String.format(
+            "http://localhost:%d/xwiki/bin/view/%s/Plans?xpage=plain&outputSyntax=plain", this.port, SPACE),
+            "Admin", "admin");
+        Map<String, String> plans = new HashMap<String, String>();
+        for (String line : getMethod.getResponseBodyAsString().split("\n")) {
+            int separator = line.indexOf('=');
+            if (separator > 0) {
+                plans.put(line.substring(0, separator).trim(), line.substring(separator + 1));
+            }
+        }
+
+        Map<String, String> queries = new LinkedHashMap<String, String>(QUERIES);
+        Assert.assertNotNull("No database in " + getMethod.getResponseBodyAsString(), plans.get(DATABASE));
+        if (plans.get(DATABASE).contains("postgresql")) {
+            queries.putAll(POSTGRESQL_QUERIES);
+        }
+        for (Map.Entry<String, String> query : queries.entrySet()) {
+            String plan = plans.get(query.getKey());
+            Assert.assertNotNull("No plan for " + query.getValue() + ": " + getMethod.getResponseBodyAsString(), plan);
+            Assert.assertTrue(String.format("%s doesn't use %s: %s", query.getValue(), query.getKey(), plan), plan
+                .toUpperCase().contains(query.getKey()));
+        }
+    }
+
+    /**
+     * @return the Groovy literal of the given queries, by index
+     */
+    private String toGroovy(Map<String, String> queries)
+    {
+        StringBuilder literal = new StringBuilder("[");
+        for (Map.Entry<String, String> query : queries.entrySet()) {
+            literal.append(String.format("%s: \"%s\", ", query.getKey(), query.getValue()));
+        }
+        literal.setLength(literal.length() - 2);
+        literal.append(']');
+
+        return literal.toString();
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.performance;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.ws.rs.core.MediaType;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.xwiki.rest.resources.pages.PageResource;
+import org.xwiki.test.performance.framework.AbstractPerformanceTest;
+import org.xwiki.test.performance.framework.BenchmarkResults;
+import org.xwiki.test.performance.framework.LatencyHistogram;
+import org.xwiki.test.performance.framework.LoadAction;
+import org.xwiki.test.performance.framework.LoadGenerator;
+import org.xwiki.test.performance.framework.LoadReport;
+import org.xwiki.test.rest.framework.HttpTransport;
+
+/**
+ * Benchmark of the production profile of Jetty against the default one: measures a browsing load (page views, with
+ * the static resources a browser loads along with them, and REST calls) at the configured number of users, then at
+ * four times as many to see how each profile behaves when overloaded. Each profile is tested by a different build,
+ * the results being accumulated in the file given by the {@code performance.jettyBenchmark} system property and
+ * printed side by side, e.g. after running:
+ * 
+ * <pre>
+ * mvn install -Pperformance,benchmark -Dpattern=JettyProfileBenchmarkTest
+ * mvn install -Pperformance,benchmark,production -Dpattern=JettyProfileBenchmarkTest
+ * </pre>
+ * <p>
+ * Only executed when the "performance.benchmark" System Property is true, see the "benchmark" profile of this module.
+ * The builds must be run without "clean" for the results to accumulate in {@code target/}.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class JettyProfileBenchmarkTest extends AbstractPerformanceTest
+{
+    private static final String SPACE = "JettyBenchmark";
+
+    private static final long SEED = 20110920L;
+
+    /** Static resources loaded by the browser along with the pages of the Colibri skin. */
+    private static final String[] STATIC_RESOURCES = new String[] {"skins/colibri/style.css",
+        "resources/js/prototype/prototype.js", "resources/js/xwiki/xwiki.js", "resources/icons/silk/page_white.png"};
+
+    private static final String VIEW = "view";
+
+    private static final String STATIC = "static";
+
+    private static final String REST = "rest";
+
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+
+    private static final String GZIP = "gzip";
+
+    @Test
+    public void testBrowsingThroughput() throws Exception
+    {
+        Assume.assumeTrue(Boolean.getBoolean("performance.benchmark"));
+
+        String wiki = getWiki();
+        String profile = System.getProperty("performance.jettyProfile", "default");
+
+        final List<String> viewURLs = new ArrayList<String>();
+        final List<String> pageURIs = new ArrayList<String>();
+        for (int i = 0; i < getPageCount(); i++) {
+            String pageName = "Page" + i;
+            setPageContent(wiki, SPACE, pageName, "= Page " + i + " =\n\n{{toc/}}\n\n== Content ==\n\nSome content.");
+            viewURLs.add(getURL("bin/view/" + SPACE + "/" + pageName));
+            pageURIs.add(getUriBuilder(PageResource.class).build(wiki, SPACE, pageName).toString());
+        }
+        final List<String> staticURLs = new ArrayList<String>();
+        for (String resource : STATIC_RESOURCES) {
+            staticURLs.add(getURL(resource));
+        }
+
+        checkStaticResource(staticURLs.get(0), "production".equals(profile));
+
+        BenchmarkResults results = new BenchmarkResults(new File(System.getProperty("performance.jettyBenchmark",
+            "target/jetty-benchmark.properties")));
+        LoadAction[] actions = new LoadAction[] {new LoadAction()
+        {
+            public String getName()
+            {
+                return VIEW;
+            }
+
+            public HttpMethod createMethod(Random random)
+            {
+                GetMethod method = new GetMethod(viewURLs.get(random.nextInt(viewURLs.size())));
+                method.addRequestHeader(ACCEPT_ENCODING, GZIP);
+                return method;
+            }
+        }, new LoadAction()
+        {
+            public String getName()
+            {
+                return STATIC;
+            }
+
+            public HttpMethod createMethod(Random random)
+            {
+                GetMethod method = new GetMethod(staticURLs.get(random.nextInt(staticURLs.size())));
+                method.addRequestHeader(ACCEPT_ENCODING, GZIP);
+                return method;
+            }
+        }, new LoadAction()
+        {
+            public String getName()
+            {
+                return REST;
+            }
+
+            public HttpMethod createMethod(Random random)
+            {
+                GetMethod method = new GetMethod(pageURIs.get(random.nextInt(pageURIs.size())));
+                method.addRequestHeader("Accept", MediaType.APPLICATION_XML);
+                method.addRequestHeader(ACCEPT_ENCODING, GZIP);
+                return method;
+            }
+        }};
+
+        LoadReport report = run(actions, getUsers());
+        LoadReport overloadReport = run(actions, getUsers() * 4);
+        for (LoadAction action : actions) {
+            results.put(profile, action.getName(), report, action.getName());
+            results.put(profile, action.getName() + "-4x", overloadReport, action.getName());
+        }
+
+        results.save();
+        System.out.println(results);
+    }
+
+    /**
+     * Run the browsing load: a browser loads a few static resources for each page it views.
+     * 
+     * @param actions the page views, static resources and REST calls
+     * @param users the number of concurrent virtual users
+     * @return the report of the load run
+     */
+    private LoadReport run(LoadAction[] actions, int users) throws Exception
+    {
+        LoadGenerator generator = new LoadGenerator("Admin", "admin");
+        generator.setSeed(SEED);
+        generator.addAction(actions[0], 3);
+        generator.addAction(actions[1], 6);
+        generator.addAction(actions[2], 1);
+
+        LoadReport report = generator.run(users, getWarmupMillis(), getDurationMillis());
+        System.out.println(report);
+        for (LoadAction action : actions) {
+            LatencyHistogram histogram = report.getHistograms().get(action.getName());
+            Assert.assertTrue("No request succeeded for " + action.getName(), histogram != null
+                && histogram.getCount() > 0);
+        }
+
+        return report;
+    }
+
+    /**
+     * Checks that a static resource is compressed and cached by the browser when the production profile is used.
+     * 
+     * @param url the URL of a text resource
+     * @param production {@code true} if XWiki is started with the production profile
+     */
+    private void checkStaticResource(String url, boolean production) throws Exception
+    {
+        GetMethod method = new GetMethod(url);
+        method.addRequestHeader(ACCEPT_ENCODING, GZIP);
+        Assert.assertEquals("Failed to get " + url, 200, HttpTransport.execute(method));
+
+        Header encoding = method.getResponseHeader("Content-Encoding");
+        Header cacheControl = method.getResponseHeader("Cache-Control");
+        System.out.println(String.format("%s: %s, %s", url, encoding, cacheControl));
+        if (production) {
+            Assert.assertTrue(url + " isn't compressed", encoding != null && GZIP.equals(encoding.getValue()));
+            Assert.assertTrue(url + " has no far-future cache header", cacheControl != null
+                && cacheControl.getValue().contains("max-age=31536000"));
+        }
+    }
+
+    private String getURL(String path)
+    {
+        return String.format("http://localhost:%d/xwiki/%s", this.port, path);
+    }
+}
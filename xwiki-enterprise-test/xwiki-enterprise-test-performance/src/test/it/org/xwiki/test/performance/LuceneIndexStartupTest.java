@@ -0,0 +1,87 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.performance;
+
+import java.io.File;
+
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.test.integration.XWikiExecutor;
+import org.xwiki.test.rest.framework.AbstractHttpClientTest;
+
+/**
+ * Verifies that the Lucene index shipped with the distribution is used as is. XWiki is restarted from the copy of the
+ * distribution taken before its first start (see {@link AllTests}) so that the check is done right after a first
+ * start, whatever the other tests did before: a wiki indexed again has its shipped index files replaced, or an index
+ * smaller than the wiki.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class LuceneIndexStartupTest extends AbstractHttpClientTest
+{
+    private static final String SPACE = "LuceneIndexStartup";
+
+    /** The directory of the Lucene index, relative to the distribution, given xwiki.work.dir=work. */
+    private static final String INDEX_DIRECTORY = "work/lucene";
+
+    @Test
+    public void testNoReindexOnFirstStart() throws Exception
+    {
+        XWikiExecutor executor = new XWikiExecutor(0);
+        File distribution = new File(executor.getExecutionDirectory());
+        File shippedIndex = new File(AllTests.getPristineDistribution(executor), INDEX_DIRECTORY);
+        File[] shippedFiles = shippedIndex.listFiles();
+        Assert.assertTrue("The distribution ships no Lucene index in " + shippedIndex,
+            shippedFiles != null && shippedFiles.length > 0);
+
+        executor.stop();
+        FileUtils.deleteDirectory(distribution);
+        FileUtils.copyDirectory(AllTests.getPristineDistribution(executor), distribution);
+        executor.start();
+
+        // A rebuild creates a new index, deleting the files of the shipped one. Checked before anything is saved since
+        // indexing new documents can merge the shipped segments.
+        File index = new File(distribution, INDEX_DIRECTORY);
+        for (File shippedFile : shippedFiles) {
+            File file = new File(index, shippedFile.getName());
+            Assert.assertTrue("The shipped index file " + file + " has been replaced",
+                file.isFile() && file.lastModified() == shippedFile.lastModified());
+        }
+
+        // Nothing has been created since the start, except the status page itself.
+        setPageContent(getWiki(), SPACE, "Status", "{{velocity}}"
+            + "$xwiki.lucene.getLuceneDocCount() $xwiki.search(\"select count(doc) from XWikiDocument doc"
+            + " where doc.fullName <> '" + SPACE + ".Status'\").get(0){{/velocity}}");
+
+        GetMethod getMethod = executeGet(String.format(
+            "http://localhost:%d/xwiki/bin/view/%s/Status?xpage=plain&outputSyntax=plain", this.port, SPACE),
+            "Admin", "admin");
+        String[] status = getMethod.getResponseBodyAsString().trim().split(" ");
+        Assert.assertEquals("Unexpected status: " + getMethod.getResponseBodyAsString(), 2, status.length);
+
+        long indexed = Long.parseLong(status[0]);
+        long documents = Long.parseLong(status[1]);
+        Assert.assertTrue(String.format("Only %d Lucene documents for %d wiki documents at startup", indexed,
+            documents), indexed >= documents);
+    }
+}
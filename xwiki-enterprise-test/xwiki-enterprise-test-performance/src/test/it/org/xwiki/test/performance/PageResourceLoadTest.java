@@ -0,0 +1,116 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.performance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.ws.rs.core.MediaType;
+
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.PutMethod;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.junit.Test;
+import org.xwiki.rest.resources.pages.PageResource;
+import org.xwiki.rest.resources.pages.PagesResource;
+import org.xwiki.test.performance.framework.AbstractPerformanceTest;
+import org.xwiki.test.performance.framework.LoadAction;
+import org.xwiki.test.performance.framework.LoadGenerator;
+import org.xwiki.test.performance.framework.LoadReport;
+
+/**
+ * Mixed read/write load on the REST page resources.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class PageResourceLoadTest extends AbstractPerformanceTest
+{
+    private static final String SPACE = "Performance";
+
+    private static final String ACCEPT = "Accept";
+
+    @Test
+    public void testMixedReadWriteLoad() throws Exception
+    {
+        final String wiki = getWiki();
+
+        final List<String> pageURIs = new ArrayList<String>();
+        for (int i = 0; i < getPageCount(); i++) {
+            String pageName = "Page" + i;
+            setPageContent(wiki, SPACE, pageName, "Initial content of " + pageName);
+            pageURIs.add(getUriBuilder(PageResource.class).build(wiki, SPACE, pageName).toString());
+        }
+        final String pagesURI = getUriBuilder(PagesResource.class).build(wiki, SPACE).toString();
+
+        LoadGenerator generator = new LoadGenerator("Admin", "admin");
+
+        double readRatio = 1 - getWriteRatio();
+        generator.addAction(new LoadAction()
+        {
+            public String getName()
+            {
+                return "PageResource.GET";
+            }
+
+            public HttpMethod createMethod(Random random)
+            {
+                GetMethod method = new GetMethod(pageURIs.get(random.nextInt(pageURIs.size())));
+                method.addRequestHeader(ACCEPT, MediaType.APPLICATION_XML);
+                return method;
+            }
+        }, readRatio * 0.9);
+        generator.addAction(new LoadAction()
+        {
+            public String getName()
+            {
+                return "PagesResource.GET";
+            }
+
+            public HttpMethod createMethod(Random random)
+            {
+                GetMethod method = new GetMethod(pagesURI);
+                method.addRequestHeader(ACCEPT, MediaType.APPLICATION_XML);
+                return method;
+            }
+        }, readRatio * 0.1);
+        generator.addAction(new LoadAction()
+        {
+            public String getName()
+            {
+                return "PageResource.PUT";
+            }
+
+            public HttpMethod createMethod(Random random) throws Exception
+            {
+                PutMethod method = new PutMethod(pageURIs.get(random.nextInt(pageURIs.size())));
+                method.setRequestEntity(new StringRequestEntity("Content " + random.nextLong(),
+                    MediaType.TEXT_PLAIN, "UTF-8"));
+                return method;
+            }
+        }, getWriteRatio());
+
+        LoadReport report = generator.run(getUsers(), getWarmupMillis(), getDurationMillis());
+
+        checkReport(report);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.performance;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.test.rest.framework.AbstractHttpClientTest;
+import org.xwiki.test.rest.framework.HttpTransport;
+
+/**
+ * Measures what a browser loads to display Main.WebHome with the JavaScript and CSS bundles of the skin built with
+ * the WAR and without them (the {@code bundles=0} request parameter making the skin reference the files they
+ * aggregate): the number of requests and the bytes transferred, compressed when the server compresses them (e.g.
+ * with the "production" profile, the page being then decompressed to find its resources). Only the scripts and
+ * stylesheets referenced by the HTML are counted, not the images and the imports of the stylesheets.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class SkinBundlesTest extends AbstractHttpClientTest
+{
+    private static final Pattern SCRIPT = Pattern.compile("<script\\b[^>]*\\bsrc=\"([^\"]+)\"",
+        Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern LINK = Pattern.compile("<link\\b[^>]*>", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern STYLESHEET = Pattern.compile("\\brel=\"stylesheet\"", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern HREF = Pattern.compile("\\bhref=\"([^\"]+)\"", Pattern.CASE_INSENSITIVE);
+
+    @Test
+    public void testBundlesReduceTheRequestsOfTheHomePage() throws Exception
+    {
+        String url = String.format("http://localhost:%d/xwiki/bin/view/Main/WebHome", this.port);
+        long[] bundled = load(url);
+        long[] unbundled = load(url + "?bundles=0");
+
+        System.out.println(String.format("%-22s %10s %12s", "Main.WebHome", "requests", "bytes"));
+        System.out.println(String.format("%-22s %10d %12d", "without bundles", unbundled[0], unbundled[1]));
+        System.out.println(String.format("%-22s %10d %12d", "with bundles", bundled[0], bundled[1]));
+
+        Assert.assertTrue(String.format("The bundles don't reduce the requests: %d with, %d without", bundled[0],
+            unbundled[0]), bundled[0] < unbundled[0]);
+    }
+
+    /**
+     * Loads a page and the scripts and stylesheets it references, as a browser accepting compressed responses.
+     * 
+     * @param url the URL of the page
+     * @return the number of requests and of bytes received
+     */
+    private long[] load(String url) throws Exception
+    {
+        GetMethod page = get(url);
+        long[] total = new long[] {1, page.getResponseBody().length};
+        for (String resource : getResources(getHTML(page))) {
+            total[0]++;
+            total[1] += get(String.format("http://localhost:%d%s", this.port, resource)).getResponseBody().length;
+        }
+
+        return total;
+    }
+
+    private GetMethod get(String url) throws Exception
+    {
+        GetMethod method = new GetMethod(url);
+        method.addRequestHeader("Accept-Encoding", "gzip");
+        Assert.assertEquals("Failed to get " + url, 200, HttpTransport.execute(method));
+
+        return method;
+    }
+
+    /**
+     * @param page the response of a page, compressed or not
+     * @return the HTML of the page
+     */
+    private String getHTML(GetMethod page) throws Exception
+    {
+        Header encoding = page.getResponseHeader("Content-Encoding");
+        if (encoding == null || !"gzip".equalsIgnoreCase(encoding.getValue().trim())) {
+            return page.getResponseBodyAsString();
+        }
+
+        InputStream html = new GZIPInputStream(new ByteArrayInputStream(page.getResponseBody()));
+        try {
+            return IOUtils.toString(html, page.getResponseCharSet());
+        } finally {
+            html.close();
+        }
+    }
+
+    /**
+     * @param html a page
+     * @return the paths of the scripts and stylesheets referenced by the page, from the server root
+     */
+    private List<String> getResources(String html)
+    {
+        List<String> resources = new ArrayList<String>();
+        Matcher script = SCRIPT.matcher(html);
+        while (script.find()) {
+            resources.add(script.group(1));
+        }
+        Matcher link = LINK.matcher(html);
+        while (link.find()) {
+            Matcher href = HREF.matcher(link.group());
+            if (STYLESHEET.matcher(link.group()).find() && href.find()) {
+                resources.add(href.group(1));
+            }
+        }
+
+        List<String> paths = new ArrayList<String>();
+        for (String resource : resources) {
+            if (resource.startsWith("/")) {
+                paths.add(resource.replace("&amp;", "&"));
+            }
+        }
+
+        return paths;
+    }
+}
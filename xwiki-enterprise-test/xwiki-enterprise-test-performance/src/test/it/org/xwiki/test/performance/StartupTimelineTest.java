@@ -0,0 +1,81 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.performance;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.test.integration.XWikiExecutor;
+import org.xwiki.test.performance.framework.Baseline;
+import org.xwiki.test.rest.framework.AbstractHttpClientTest;
+
+/**
+ * Restarts XWiki from the copy of the distribution taken before its first start (see {@link AllTests}) and verifies
+ * its startup timeline (see WEB-INF/jetty-web.xml): all the phases are recorded, and the cold start (from the start
+ * of the JVM to the end of the first request) doesn't regress compared to the {@code startup.coldStart} value of the
+ * baseline.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class StartupTimelineTest extends AbstractHttpClientTest
+{
+    private static final String[] PHASES = new String[] {"jetty", "componentManager", "firstRequestReceived",
+        "firstRequest"};
+
+    private static final String COLD_START = "startup.coldStart";
+
+    @Test
+    public void testColdStart() throws Exception
+    {
+        // Start from the distribution as shipped: an empty work directory and the database as imported by the build.
+        XWikiExecutor executor = new XWikiExecutor(0);
+        File distribution = new File(executor.getExecutionDirectory());
+        executor.stop();
+        FileUtils.deleteDirectory(distribution);
+        FileUtils.copyDirectory(AllTests.getPristineDistribution(executor), distribution);
+        executor.start();
+
+        // The first request may have been sent by the executor to check that XWiki is started.
+        GetMethod getMethod =
+            executeGet(String.format("http://localhost:%d/xwiki/bin/view/Main/WebHome", this.port), "Admin", "admin");
+        Assert.assertEquals("Failed to view Main.WebHome", 200, getMethod.getStatusCode());
+
+        File file = new File(distribution, "work/startup-timeline.properties");
+        Assert.assertTrue("No startup timeline in " + file, file.exists());
+        String timeline = FileUtils.readFileToString(file, "UTF-8");
+        System.out.println(timeline);
+        for (String phase : PHASES) {
+            Assert.assertTrue("The timeline has no " + phase + " phase: " + timeline,
+                timeline.contains("\n" + phase + ".end="));
+        }
+
+        double total = Long.parseLong(timeline.replaceFirst("(?s).*\ntotal=(\\d+).*", "$1"));
+        Map<String, Double> metrics = Collections.singletonMap(COLD_START, total);
+        double tolerance = Double.parseDouble(System.getProperty("performance.tolerance", "0.25"));
+        new Baseline(new File(System.getProperty("performance.baseline"))).check(metrics, tolerance,
+            "performance.updateBaseline");
+    }
+}
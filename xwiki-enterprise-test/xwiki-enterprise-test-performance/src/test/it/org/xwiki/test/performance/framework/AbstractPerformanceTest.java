@@ -0,0 +1,87 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.performance.framework;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.xwiki.test.rest.framework.AbstractHttpClientTest;
+
+/**
+ * Base class for the load tests. Gives access to the load configuration (passed as system properties by the build)
+ * and to the reporting and baseline checking of load runs.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public abstract class AbstractPerformanceTest extends AbstractHttpClientTest
+{
+    protected int getUsers()
+    {
+        return Integer.getInteger("performance.users", 10);
+    }
+
+    protected long getWarmupMillis()
+    {
+        return Long.getLong("performance.warmup", 15) * 1000;
+    }
+
+    protected long getDurationMillis()
+    {
+        return Long.getLong("performance.duration", 60) * 1000;
+    }
+
+    protected double getWriteRatio()
+    {
+        return Double.parseDouble(System.getProperty("performance.writeRatio", "0.2"));
+    }
+
+    protected int getPageCount()
+    {
+        return Integer.getInteger("performance.pages", 50);
+    }
+
+    /**
+     * Print and save the report, then either update the baseline with it or fail if it regresses compared to the
+     * baseline, depending on the configuration.
+     * 
+     * @param report the report of the load run
+     * @throws Exception if the report or the baseline cannot be read or written
+     */
+    protected void checkReport(LoadReport report) throws Exception
+    {
+        System.out.println(report);
+
+        String reportPath = System.getProperty("performance.report");
+        if (reportPath != null) {
+            report.write(new File(reportPath));
+        }
+
+        for (LatencyHistogram histogram : report.getHistograms().values()) {
+            Assert.assertTrue("No request succeeded during the load run", histogram.getCount() > 0);
+        }
+
+        String baselinePath = System.getProperty("performance.baseline");
+        if (baselinePath != null) {
+            double tolerance = Double.parseDouble(System.getProperty("performance.tolerance", "0.25"));
+            new Baseline(new File(baselinePath)).check(report.getMetrics(), tolerance, "performance.updateBaseline");
+        }
+    }
+}
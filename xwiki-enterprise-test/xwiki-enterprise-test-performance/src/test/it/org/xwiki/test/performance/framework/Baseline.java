@@ -0,0 +1,167 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.performance.framework;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+
+/**
+ * Reference values of the metrics of a {@link LoadReport}, stored as a properties file so that they can be reviewed
+ * and versioned along with the tests. Metrics ending with {@code .throughput} are expected to stay above their
+ * reference value, all other metrics (latencies) are expected to stay below it.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class Baseline
+{
+    private static final String THROUGHPUT_SUFFIX = ".throughput";
+
+    private final File file;
+
+    private final Properties values = new Properties();
+
+    /**
+     * @param file the properties file holding the reference values, it doesn't need to exist
+     * @throws IOException if the file exists but cannot be read
+     */
+    public Baseline(File file) throws IOException
+    {
+        this.file = file;
+
+        if (file.exists()) {
+            InputStream input = new FileInputStream(file);
+            try {
+                this.values.load(input);
+            } finally {
+                IOUtils.closeQuietly(input);
+            }
+        }
+    }
+
+    /**
+     * @param metrics the names of the measured metrics
+     * @return {@code true} if at least one of the metrics has a reference value, {@code false} if none of them can be
+     *         checked, e.g. when the baseline hasn't been generated yet
+     */
+    public boolean hasReference(Collection<String> metrics)
+    {
+        for (String metric : metrics) {
+            if (this.values.getProperty(metric) != null) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Compare the given metrics with the reference values. Metrics without reference value are ignored.
+     * 
+     * @param metrics the measured metrics
+     * @param tolerance the accepted degradation ratio, e.g. 0.25 to accept latencies up to 25% higher and throughputs
+     *            down to 25% lower than the reference
+     * @return a description of each regression found, empty if there's none
+     */
+    public List<String> getRegressions(Map<String, Double> metrics, double tolerance)
+    {
+        List<String> regressions = new ArrayList<String>();
+
+        for (Map.Entry<String, Double> metric : metrics.entrySet()) {
+            String reference = this.values.getProperty(metric.getKey());
+            if (reference != null) {
+                double expected = Double.parseDouble(reference);
+                double actual = metric.getValue();
+                boolean regressed;
+                if (metric.getKey().endsWith(THROUGHPUT_SUFFIX)) {
+                    regressed = actual < expected * (1 - tolerance);
+                } else {
+                    regressed = actual > expected * (1 + tolerance);
+                }
+                if (regressed) {
+                    regressions.add(String.format("%s is %.3f while baseline is %.3f (tolerance %.0f%%)",
+                        metric.getKey(), actual, expected, tolerance * 100));
+                }
+            }
+        }
+
+        return regressions;
+    }
+
+    /**
+     * Replace the reference values with the given metrics if the given system property is {@code true}, otherwise fail
+     * if the metrics regress compared to the reference values. The check is skipped when none of the metrics has a
+     * reference value, since they depend on the machine running the tests and can't be shipped with them.
+     * 
+     * @param metrics the measured metrics
+     * @param tolerance the accepted degradation ratio, see {@link #getRegressions(Map, double)}
+     * @param updateProperty the name of the system property enabling the update of the reference values
+     * @throws IOException if the reference values cannot be saved
+     */
+    public void check(Map<String, Double> metrics, double tolerance, String updateProperty) throws IOException
+    {
+        if (Boolean.getBoolean(updateProperty)) {
+            update(metrics);
+        } else {
+            boolean hasReference = hasReference(metrics.keySet());
+            if (!hasReference) {
+                System.out.println(String.format("No reference value in %s, skipping the check of %s, generate them "
+                    + "with -D%s=true", this.file, metrics, updateProperty));
+            }
+            Assume.assumeTrue(hasReference);
+            List<String> regressions = getRegressions(metrics, tolerance);
+            Assert.assertTrue("Regressions compared to " + this.file + ":\n" + regressions, regressions.isEmpty());
+        }
+    }
+
+    /**
+     * Replace the reference values with the given metrics and save them.
+     * 
+     * @param metrics the new reference values
+     * @throws IOException if the file cannot be written
+     */
+    public void update(Map<String, Double> metrics) throws IOException
+    {
+        for (Map.Entry<String, Double> metric : metrics.entrySet()) {
+            this.values.setProperty(metric.getKey(), String.valueOf(metric.getValue()));
+        }
+
+        this.file.getParentFile().mkdirs();
+        OutputStream output = new FileOutputStream(this.file);
+        try {
+            this.values.store(output, "Performance baseline, latencies in milliseconds and throughputs in req/s");
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.performance.framework;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Results of a benchmark run against several configurations of XWiki, e.g. database engines or Jetty profiles. Each
+ * configuration is tested by a different build (one per Maven profile), so the results are kept in a properties file
+ * shared by the builds, under keys made of the configuration, the operation and the metric, e.g.
+ * {@code h2.save.throughput}.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class BenchmarkResults
+{
+    private static final String SEPARATOR = ".";
+
+    private static final String THROUGHPUT = "throughput";
+
+    private static final String P95 = "p95";
+
+    private static final String ERRORS = "errors";
+
+    private final File file;
+
+    private final Properties results = new Properties();
+
+    /**
+     * @param file the properties file holding the results of the previous runs, it doesn't need to exist
+     * @throws IOException if the file exists but cannot be read
+     */
+    public BenchmarkResults(File file) throws IOException
+    {
+        this.file = file;
+
+        if (file.exists()) {
+            InputStream input = new FileInputStream(file);
+            try {
+                this.results.load(input);
+            } finally {
+                IOUtils.closeQuietly(input);
+            }
+        }
+    }
+
+    /**
+     * Record the result of an operation, replacing the result of a previous run on the same configuration.
+     * 
+     * @param configuration the tested configuration, e.g. the database engine {@code hsqldb}
+     * @param operation the benchmarked operation, e.g. {@code save}
+     * @param report the report of the load run of the operation
+     * @param resource the name of the resource exercised by the operation in the report
+     */
+    public void put(String configuration, String operation, LoadReport report, String resource)
+    {
+        LatencyHistogram histogram = report.getHistograms().get(resource);
+        String prefix = operation + SEPARATOR;
+        put(configuration, prefix + THROUGHPUT, String.valueOf(report.getThroughput(resource)));
+        put(configuration, prefix + P95, String.valueOf(histogram.getPercentile(95)));
+        put(configuration, prefix + ERRORS, String.valueOf(histogram.getErrors()));
+    }
+
+    /**
+     * Record a single value, replacing the value of a previous run on the same configuration.
+     * 
+     * @param configuration the tested configuration, e.g. the distribution {@code lean}
+     * @param metric the name of the value, e.g. {@code heap}
+     * @param value the measured value
+     */
+    public void put(String configuration, String metric, String value)
+    {
+        this.results.setProperty(configuration + SEPARATOR + metric, value);
+    }
+
+    /**
+     * @param configuration the tested configuration
+     * @param metric the name of the value
+     * @return the value recorded for the configuration, {@code null} if it hasn't been tested yet
+     */
+    public String get(String configuration, String metric)
+    {
+        return this.results.getProperty(configuration + SEPARATOR + metric);
+    }
+
+    /**
+     * @return the configurations having results, sorted by name
+     */
+    public Set<String> getConfigurations()
+    {
+        Set<String> configurations = new TreeSet<String>();
+        for (String key : this.results.stringPropertyNames()) {
+            configurations.add(key.substring(0, key.indexOf(SEPARATOR)));
+        }
+
+        return configurations;
+    }
+
+    /**
+     * @throws IOException if the file cannot be written
+     */
+    public void save() throws IOException
+    {
+        this.file.getAbsoluteFile().getParentFile().mkdirs();
+        OutputStream output = new FileOutputStream(this.file);
+        try {
+            this.results.store(output, "Benchmark results, one value per configuration and metric");
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+    /**
+     * @return a table comparing the configurations, one line per operation with the throughput, p95 latency and
+     *         errors of each configuration
+     */
+    @Override
+    public String toString()
+    {
+        Set<String> configurations = getConfigurations();
+        Set<String> operations = new TreeSet<String>();
+        for (String key : this.results.stringPropertyNames()) {
+            operations.add(key.split("\\.")[1]);
+        }
+
+        StringBuilder builder = new StringBuilder(String.format("%-10s", "operation"));
+        for (String configuration : configurations) {
+            builder.append(String.format("%39s", configuration));
+        }
+        builder.append('\n');
+        for (String operation : operations) {
+            builder.append(String.format("%-10s", operation));
+            for (String configuration : configurations) {
+                String prefix = operation + SEPARATOR;
+                String throughput = get(configuration, prefix + THROUGHPUT);
+                if (throughput == null) {
+                    builder.append(String.format("%39s", "-"));
+                } else {
+                    builder.append(String.format(Locale.ROOT, "  %10.2f req/s %8.2f ms %4s err",
+                        Double.parseDouble(throughput), Double.parseDouble(get(configuration, prefix + P95)),
+                        get(configuration, prefix + ERRORS)));
+                }
+            }
+            builder.append('\n');
+        }
+
+        return builder.toString();
+    }
+}
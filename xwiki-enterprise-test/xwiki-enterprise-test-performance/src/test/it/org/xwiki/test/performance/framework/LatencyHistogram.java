@@ -0,0 +1,130 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.performance.framework;
+
+import java.util.Arrays;
+
+/**
+ * Records request latencies and computes percentiles over them. Instances are not thread safe: each virtual user
+ * records in its own histograms and they are merged once the load run is over.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class LatencyHistogram
+{
+    /** The recorded latencies, in microseconds. Only the first {@link #count} values are meaningful. */
+    private long[] values = new long[1024];
+
+    private int count;
+
+    private int errors;
+
+    private boolean sorted = true;
+
+    /**
+     * @param latencyNanos the measured latency of a successful request, in nanoseconds
+     */
+    public void record(long latencyNanos)
+    {
+        if (this.count == this.values.length) {
+            this.values = Arrays.copyOf(this.values, this.values.length * 2);
+        }
+        this.values[this.count++] = latencyNanos / 1000;
+        this.sorted = false;
+    }
+
+    /**
+     * Count a failed request. Failed requests are not part of the latency distribution.
+     */
+    public void recordError()
+    {
+        this.errors++;
+    }
+
+    /**
+     * @param other the histogram to add to this one
+     */
+    public void merge(LatencyHistogram other)
+    {
+        if (this.count + other.count > this.values.length) {
+            this.values = Arrays.copyOf(this.values, this.count + other.count);
+        }
+        System.arraycopy(other.values, 0, this.values, this.count, other.count);
+        this.count += other.count;
+        this.errors += other.errors;
+        this.sorted = false;
+    }
+
+    /**
+     * @return the number of successful requests recorded
+     */
+    public int getCount()
+    {
+        return this.count;
+    }
+
+    /**
+     * @return the number of failed requests recorded
+     */
+    public int getErrors()
+    {
+        return this.errors;
+    }
+
+    /**
+     * @param percentile the percentile to compute, between 0 (excluded) and 100 (included), e.g. 99.9
+     * @return the smallest recorded latency, in milliseconds, greater or equal to the given percentage of all the
+     *         recorded latencies, or 0 if nothing has been recorded
+     */
+    public double getPercentile(double percentile)
+    {
+        if (this.count == 0) {
+            return 0;
+        }
+
+        if (!this.sorted) {
+            Arrays.sort(this.values, 0, this.count);
+            this.sorted = true;
+        }
+
+        // Nearest-rank method.
+        int rank = (int) Math.ceil(percentile / 100 * this.count);
+
+        return this.values[Math.max(rank, 1) - 1] / 1000.0;
+    }
+
+    /**
+     * @return the average latency in milliseconds, or 0 if nothing has been recorded
+     */
+    public double getMean()
+    {
+        if (this.count == 0) {
+            return 0;
+        }
+
+        long total = 0;
+        for (int i = 0; i < this.count; i++) {
+            total += this.values[i];
+        }
+
+        return total / 1000.0 / this.count;
+    }
+}
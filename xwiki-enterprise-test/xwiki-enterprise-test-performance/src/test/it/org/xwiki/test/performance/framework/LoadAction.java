@@ -0,0 +1,46 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.performance.framework;
+
+import java.util.Random;
+
+import org.apache.commons.httpclient.HttpMethod;
+
+/**
+ * A kind of request executed by the virtual users of a {@link LoadGenerator}.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public interface LoadAction
+{
+    /**
+     * @return the name under which the measures of this action are reported, e.g. {@code PageResource.GET}
+     */
+    String getName();
+
+    /**
+     * @param random the random generator of the virtual user, to be used to pick the target of the request so that
+     *            runs are reproducible
+     * @return a new request to execute
+     * @throws Exception if the request cannot be created
+     */
+    HttpMethod createMethod(Random random) throws Exception;
+}
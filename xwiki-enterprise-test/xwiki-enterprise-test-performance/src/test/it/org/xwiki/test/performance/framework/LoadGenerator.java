@@ -0,0 +1,192 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.performance.framework;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.httpclient.HttpMethod;
+import org.xwiki.test.rest.framework.HttpTransport;
+
+/**
+ * Runs concurrent virtual users against a started XWiki instance. Each virtual user loops on picking an action
+ * according to the action weights and executing it, as fast as possible, until the end of the run. Measures taken
+ * during the warm up phase are discarded.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class LoadGenerator
+{
+    private final String userName;
+
+    private final String password;
+
+    private final List<LoadAction> actions = new ArrayList<LoadAction>();
+
+    private final List<Double> weights = new ArrayList<Double>();
+
+    private double totalWeight;
+
+    private long seed = 42;
+
+    /**
+     * @param userName the name of the user executing all the requests
+     * @param password the password of the user
+     */
+    public LoadGenerator(String userName, String password)
+    {
+        this.userName = userName;
+        this.password = password;
+    }
+
+    /**
+     * @param action the action to add to the mix
+     * @param weight the relative frequency of the action in the mix
+     */
+    public void addAction(LoadAction action, double weight)
+    {
+        if (weight > 0) {
+            this.actions.add(action);
+            this.weights.add(weight);
+            this.totalWeight += weight;
+        }
+    }
+
+    /**
+     * @param seed the seed from which the random generators of the virtual users are initialized
+     */
+    public void setSeed(long seed)
+    {
+        this.seed = seed;
+    }
+
+    /**
+     * @param users the number of concurrent virtual users
+     * @param warmupMillis the duration of the warm up phase, in milliseconds
+     * @param durationMillis the duration of the measured phase, in milliseconds
+     * @return the measures taken during the measured phase
+     * @throws Exception if a virtual user failed unexpectedly
+     */
+    public LoadReport run(int users, long warmupMillis, long durationMillis) throws Exception
+    {
+        long start = System.currentTimeMillis();
+        long measureStart = start + warmupMillis;
+        long end = measureStart + durationMillis;
+
+        // Make sure no virtual user waits for a connection.
+        HttpTransport.setMaxConnections(users);
+
+        ExecutorService pool = Executors.newFixedThreadPool(users);
+        try {
+            List<Future<Map<String, LatencyHistogram>>> results =
+                new ArrayList<Future<Map<String, LatencyHistogram>>>();
+            for (int i = 0; i < users; i++) {
+                results.add(pool.submit(new VirtualUser(new Random(this.seed + i), measureStart, end)));
+            }
+
+            LoadReport report = new LoadReport(users, durationMillis);
+            for (Future<Map<String, LatencyHistogram>> result : results) {
+                for (Map.Entry<String, LatencyHistogram> entry : result.get().entrySet()) {
+                    report.add(entry.getKey(), entry.getValue());
+                }
+            }
+
+            return report;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private LoadAction pickAction(Random random)
+    {
+        double value = random.nextDouble() * this.totalWeight;
+        for (int i = 0; i < this.actions.size() - 1; i++) {
+            value -= this.weights.get(i);
+            if (value < 0) {
+                return this.actions.get(i);
+            }
+        }
+
+        return this.actions.get(this.actions.size() - 1);
+    }
+
+    /**
+     * A client executing actions in a loop and recording their latency.
+     */
+    private class VirtualUser implements Callable<Map<String, LatencyHistogram>>
+    {
+        private final Random random;
+
+        private final long measureStart;
+
+        private final long end;
+
+        private final Map<String, LatencyHistogram> histograms = new HashMap<String, LatencyHistogram>();
+
+        VirtualUser(Random random, long measureStart, long end)
+        {
+            this.random = random;
+            this.measureStart = measureStart;
+            this.end = end;
+        }
+
+        public Map<String, LatencyHistogram> call() throws Exception
+        {
+            long now;
+            while ((now = System.currentTimeMillis()) < this.end) {
+                LoadAction action = pickAction(this.random);
+                HttpMethod method = action.createMethod(this.random);
+
+                boolean success;
+                long t1 = System.nanoTime();
+                try {
+                    // The whole response is transferred before the transport returns.
+                    success = HttpTransport.execute(method, userName, password) < 400;
+                } catch (Exception e) {
+                    success = false;
+                }
+                long latency = System.nanoTime() - t1;
+
+                if (now >= this.measureStart) {
+                    LatencyHistogram histogram = this.histograms.get(action.getName());
+                    if (histogram == null) {
+                        histogram = new LatencyHistogram();
+                        this.histograms.put(action.getName(), histogram);
+                    }
+                    if (success) {
+                        histogram.record(latency);
+                    } else {
+                        histogram.recordError();
+                    }
+                }
+            }
+
+            return this.histograms;
+        }
+    }
+}
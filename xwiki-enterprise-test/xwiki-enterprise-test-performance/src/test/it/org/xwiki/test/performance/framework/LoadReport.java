@@ -0,0 +1,181 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.performance.framework;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * The outcome of a load run: the latency distribution and throughput of each exercised resource.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class LoadReport
+{
+    /** The percentiles reported for each resource. */
+    public static final double[] PERCENTILES = new double[] {50, 95, 99, 99.9};
+
+    private final Map<String, LatencyHistogram> histograms = new TreeMap<String, LatencyHistogram>();
+
+    private final int users;
+
+    private final long durationMillis;
+
+    /**
+     * @param users the number of concurrent virtual users which produced the measures
+     * @param durationMillis the duration of the measured phase, in milliseconds
+     */
+    public LoadReport(int users, long durationMillis)
+    {
+        this.users = users;
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * @param resource the name of the resource, e.g. {@code PageResource.GET}
+     * @param histogram measures to add to the ones already known for this resource
+     */
+    public void add(String resource, LatencyHistogram histogram)
+    {
+        LatencyHistogram existing = this.histograms.get(resource);
+        if (existing == null) {
+            existing = new LatencyHistogram();
+            this.histograms.put(resource, existing);
+        }
+        existing.merge(histogram);
+    }
+
+    /**
+     * @return the measures of each resource, indexed by resource name
+     */
+    public Map<String, LatencyHistogram> getHistograms()
+    {
+        return this.histograms;
+    }
+
+    /**
+     * @param resource the name of the resource
+     * @return the number of successful requests per second on this resource
+     */
+    public double getThroughput(String resource)
+    {
+        return this.histograms.get(resource).getCount() * 1000.0 / this.durationMillis;
+    }
+
+    /**
+     * Flatten the report into named metrics, which is the form used to compare against a {@link Baseline}. Metric
+     * names are made of the resource name and the metric, e.g. {@code PageResource.GET.p99} (milliseconds) or
+     * {@code PageResource.GET.throughput} (requests per second).
+     * 
+     * @return the metrics of this report
+     */
+    public Map<String, Double> getMetrics()
+    {
+        Map<String, Double> metrics = new LinkedHashMap<String, Double>();
+        for (Map.Entry<String, LatencyHistogram> entry : this.histograms.entrySet()) {
+            metrics.put(entry.getKey() + ".throughput", getThroughput(entry.getKey()));
+            for (double percentile : PERCENTILES) {
+                metrics.put(entry.getKey() + "." + getPercentileName(percentile),
+                    entry.getValue().getPercentile(percentile));
+            }
+        }
+
+        return metrics;
+    }
+
+    /**
+     * @return the JSON representation of this report
+     */
+    public String toJSON()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\n");
+        builder.append(String.format("  \"users\": %d,\n", this.users));
+        builder.append(String.format("  \"durationMillis\": %d,\n", this.durationMillis));
+        builder.append("  \"resources\": {");
+        boolean first = true;
+        for (Map.Entry<String, LatencyHistogram> entry : this.histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            builder.append(first ? "\n" : ",\n");
+            first = false;
+            builder.append(String.format("    \"%s\": {\n", entry.getKey()));
+            builder.append(String.format("      \"requests\": %d,\n", histogram.getCount()));
+            builder.append(String.format("      \"errors\": %d,\n", histogram.getErrors()));
+            builder.append(String.format(Locale.ROOT, "      \"throughput\": %.2f,\n",
+                getThroughput(entry.getKey())));
+            builder.append(String.format(Locale.ROOT, "      \"mean\": %.3f,\n", histogram.getMean()));
+            builder.append("      \"latency\": {");
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                builder.append(String.format(Locale.ROOT, "%s\"%s\": %.3f", i == 0 ? "" : ", ",
+                    getPercentileName(PERCENTILES[i]), histogram.getPercentile(PERCENTILES[i])));
+            }
+            builder.append("}\n");
+            builder.append("    }");
+        }
+        builder.append("\n  }\n");
+        builder.append("}\n");
+
+        return builder.toString();
+    }
+
+    /**
+     * @param file the file where to write the JSON representation of this report
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File file) throws IOException
+    {
+        FileUtils.writeStringToFile(file, toJSON(), "UTF-8");
+    }
+
+    /**
+     * @return a human readable summary of the report, one line per resource
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, LatencyHistogram> entry : this.histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            builder.append(String.format(Locale.ROOT,
+                "%-25s %8d req %5d err %9.2f req/s  p50 %8.2f ms  p95 %8.2f ms  p99 %8.2f ms  p99.9 %8.2f ms\n",
+                entry.getKey(), histogram.getCount(), histogram.getErrors(), getThroughput(entry.getKey()),
+                histogram.getPercentile(50), histogram.getPercentile(95), histogram.getPercentile(99),
+                histogram.getPercentile(99.9)));
+        }
+
+        return builder.toString();
+    }
+
+    private static String getPercentileName(double percentile)
+    {
+        if (percentile == Math.floor(percentile)) {
+            return "p" + (int) percentile;
+        }
+
+        return "p" + percentile;
+    }
+}
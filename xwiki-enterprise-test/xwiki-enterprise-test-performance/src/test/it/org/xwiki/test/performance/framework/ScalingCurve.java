@@ -0,0 +1,115 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.performance.framework;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures of a metric (latency, size, etc.) taken as the size of the input (number of revisions, of documents, etc.)
+ * grows, used to detect super-linear growth. The growth is estimated by the exponent {@code k} of the power law
+ * {@code value = c * size^k} which best fits the measures (least squares on the logarithms): 0 when the metric is
+ * constant, 1 when it grows linearly, 2 when it grows quadratically.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class ScalingCurve
+{
+    private final String name;
+
+    private final List<Long> sizes = new ArrayList<Long>();
+
+    private final List<Double> values = new ArrayList<Double>();
+
+    /**
+     * @param name the name of the measured metric, with its unit
+     */
+    public ScalingCurve(String name)
+    {
+        this.name = name;
+    }
+
+    public String getName()
+    {
+        return this.name;
+    }
+
+    /**
+     * @param size the size of the input
+     * @param value the value of the metric for that size, must be strictly positive
+     */
+    public void add(long size, double value)
+    {
+        this.sizes.add(size);
+        this.values.add(value);
+    }
+
+    /**
+     * @return the growth exponent of the metric, {@link Double#NaN} if there are less than 2 measures
+     */
+    public double getExponent()
+    {
+        int count = this.values.size();
+        if (count < 2) {
+            return Double.NaN;
+        }
+
+        double sumX = 0;
+        double sumY = 0;
+        double sumXX = 0;
+        double sumXY = 0;
+        for (int i = 0; i < count; i++) {
+            double x = Math.log(this.sizes.get(i));
+            // Avoid the logarithm of 0 for metrics which are too small to be measured.
+            double y = Math.log(Math.max(this.values.get(i), Double.MIN_NORMAL));
+            sumX += x;
+            sumY += y;
+            sumXX += x * x;
+            sumXY += x * y;
+        }
+
+        return (count * sumXY - sumX * sumY) / (count * sumXX - sumX * sumX);
+    }
+
+    /**
+     * @param maxExponent the maximum accepted growth exponent, e.g. 1.25 to accept linear growth with some noise
+     * @return {@code true} if the metric grows faster than accepted
+     */
+    public boolean isSuperLinear(double maxExponent)
+    {
+        return getExponent() > maxExponent;
+    }
+
+    /**
+     * @return a human readable summary of the measures, one line per size
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("%s (growth exponent %.2f)%n", this.name, getExponent()));
+        for (int i = 0; i < this.values.size(); i++) {
+            builder.append(String.format("%10d %14.2f%n", this.sizes.get(i), this.values.get(i)));
+        }
+
+        return builder.toString();
+    }
+}
@@ -26,10 +26,7 @@
 import javax.ws.rs.core.MediaType;
 
 import org.apache.commons.httpclient.Header;
-import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpStatus;
-import org.apache.commons.httpclient.UsernamePasswordCredentials;
-import org.apache.commons.httpclient.auth.AuthScope;
 import org.apache.commons.httpclient.methods.DeleteMethod;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
@@ -48,6 +45,7 @@
 import org.xwiki.rest.resources.attachments.AttachmentsAtPageVersionResource;
 import org.xwiki.rest.resources.attachments.AttachmentsResource;
 import org.xwiki.test.rest.framework.AbstractHttpTest;
+import org.xwiki.test.rest.framework.HttpTransport;
 
 public class AttachmentsResourceTest extends AbstractHttpTest
 {
@@ -275,10 +273,6 @@ public void testPOSTAttachment() throws Exception
         String attachmentsUri =
             getUriBuilder(AttachmentsResource.class).build(getWiki(), SPACE_NAME, PAGE_NAME, attachmentName).toString();
 
-        HttpClient httpClient = new HttpClient();
-        httpClient.getState().setCredentials(AuthScope.ANY, new UsernamePasswordCredentials("Admin", "admin"));
-        httpClient.getParams().setAuthenticationPreemptive(true);
-
         Part[] parts = new Part[1];
 
         ByteArrayPartSource baps = new ByteArrayPartSource(attachmentName, content.getBytes());
@@ -287,7 +281,7 @@ public void testPOSTAttachment() throws Exception
         PostMethod postMethod = new PostMethod(attachmentsUri);
         MultipartRequestEntity mpre = new MultipartRequestEntity(parts, postMethod.getParams());
         postMethod.setRequestEntity(mpre);
-        httpClient.executeMethod(postMethod);
+        HttpTransport.execute(postMethod, "Admin", "admin");
         Assert.assertEquals(getHttpMethodInfo(postMethod), HttpStatus.SC_CREATED, postMethod.getStatusCode());
 
         this.unmarshaller.unmarshal(postMethod.getResponseBodyAsStream());
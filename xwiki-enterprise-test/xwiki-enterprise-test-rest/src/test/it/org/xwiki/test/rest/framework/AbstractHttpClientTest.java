@@ -0,0 +1,398 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.rest.framework;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.ws.rs.core.UriBuilder;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.NameValuePair;
+import org.apache.commons.httpclient.methods.DeleteMethod;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.PutMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.junit.Assert;
+import org.junit.Before;
+import org.restlet.data.MediaType;
+import org.xwiki.rest.model.jaxb.Attachment;
+import org.xwiki.rest.model.jaxb.Attachments;
+import org.xwiki.rest.model.jaxb.Link;
+import org.xwiki.rest.model.jaxb.LinkCollection;
+import org.xwiki.rest.model.jaxb.ObjectFactory;
+import org.xwiki.rest.model.jaxb.Page;
+import org.xwiki.rest.model.jaxb.PageSummary;
+import org.xwiki.rest.model.jaxb.Pages;
+import org.xwiki.rest.model.jaxb.Wikis;
+import org.xwiki.rest.resources.pages.PageResource;
+import org.xwiki.rest.resources.wikis.WikisResource;
+import org.xwiki.test.AbstractComponentTestCase;
+import org.xwiki.test.integration.XWikiExecutor;
+
+/**
+ * Base class of the tests talking to XWiki over HTTP: access to the REST API, to the pages and to the JAXB model. The
+ * tests of the REST resources extend {@link AbstractHttpTest} which also requires a representation test.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public abstract class AbstractHttpClientTest extends AbstractComponentTestCase
+{
+    /** The JAXB context is thread safe and costly to create so it's shared by all the tests. */
+    private static final JAXBContext CONTEXT;
+
+    /** Marshallers are not thread safe, each thread gets its own one. */
+    private static final ThreadLocal<Marshaller> MARSHALLER = new ThreadLocal<Marshaller>()
+    {
+        @Override
+        protected Marshaller initialValue()
+        {
+            try {
+                return CONTEXT.createMarshaller();
+            } catch (JAXBException e) {
+                throw new RuntimeException("Failed to create JAXB marshaller", e);
+            }
+        }
+    };
+
+    /** Unmarshallers are not thread safe, each thread gets its own one. */
+    private static final ThreadLocal<Unmarshaller> UNMARSHALLER = new ThreadLocal<Unmarshaller>()
+    {
+        @Override
+        protected Unmarshaller initialValue()
+        {
+            try {
+                return CONTEXT.createUnmarshaller();
+            } catch (JAXBException e) {
+                throw new RuntimeException("Failed to create JAXB unmarshaller", e);
+            }
+        }
+    };
+
+    static {
+        try {
+            CONTEXT = JAXBContext.newInstance("org.xwiki.rest.model.jaxb");
+        } catch (JAXBException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    protected Random random;
+
+    protected Marshaller marshaller;
+
+    protected Unmarshaller unmarshaller;
+
+    protected ObjectFactory objectFactory;
+
+    protected int port = Integer.valueOf(XWikiExecutor.DEFAULT_PORT);
+
+    @Override
+    @Before
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        random = new Random();
+
+        marshaller = MARSHALLER.get();
+        unmarshaller = UNMARSHALLER.get();
+        objectFactory = new ObjectFactory();
+
+    }
+
+    public void setPort(int port)
+    {
+        this.port = port;
+    }
+
+    protected Link getFirstLinkByRelation(LinkCollection linkCollection, String relation)
+    {
+        if (linkCollection.getLinks() == null) {
+            return null;
+        }
+
+        for (Link link : linkCollection.getLinks()) {
+            if (link.getRel().equals(relation)) {
+                return link;
+            }
+        }
+
+        return null;
+    }
+
+    protected List<Link> getLinksByRelation(LinkCollection linkCollection, String relation)
+    {
+        List<Link> result = new ArrayList<Link>();
+
+        if (linkCollection.getLinks() == null) {
+            return result;
+        }
+
+        for (Link link : linkCollection.getLinks()) {
+            if (link.getRel().equals(relation)) {
+                result.add(link);
+            }
+        }
+
+        return result;
+    }
+
+    protected String getBaseURL()
+    {
+        return "http://localhost:" + this.port + TestConstants.RELATIVE_REST_API_ENTRYPOINT;
+    }
+
+    protected String getFullUri(Class< ? > resourceClass)
+    {
+        return String.format("%s%s", getBaseURL(), UriBuilder.fromResource(resourceClass).build());
+    }
+
+    protected GetMethod executeGet(String uri) throws Exception
+    {
+        GetMethod getMethod = new GetMethod(uri);
+        getMethod.addRequestHeader("Accept", MediaType.APPLICATION_XML.toString());
+        HttpTransport.execute(getMethod);
+
+        return getMethod;
+    }
+
+    protected GetMethod executeGet(String uri, String userName, String password) throws Exception
+    {
+        GetMethod getMethod = new GetMethod(uri);
+        getMethod.addRequestHeader("Accept", MediaType.APPLICATION_XML.toString());
+        HttpTransport.execute(getMethod, userName, password);
+
+        return getMethod;
+    }
+
+    protected PostMethod executePostXml(String uri, Object object) throws Exception
+    {
+        PostMethod postMethod = new PostMethod(uri);
+        postMethod.addRequestHeader("Accept", MediaType.APPLICATION_XML.toString());
+        postMethod.setRequestEntity(createXmlEntity(object));
+
+        HttpTransport.execute(postMethod);
+
+        return postMethod;
+    }
+
+    protected PostMethod executePostXml(String uri, Object object, String userName, String password) throws Exception
+    {
+        PostMethod postMethod = new PostMethod(uri);
+        postMethod.addRequestHeader("Accept", MediaType.APPLICATION_XML.toString());
+        postMethod.setRequestEntity(createXmlEntity(object));
+
+        HttpTransport.execute(postMethod, userName, password);
+
+        return postMethod;
+    }
+
+    protected PostMethod executePost(String uri, String string, String mediaType, String userName, String password)
+        throws Exception
+    {
+        PostMethod postMethod = new PostMethod(uri);
+        postMethod.addRequestHeader("Accept", MediaType.APPLICATION_XML.toString());
+
+        RequestEntity entity = new StringRequestEntity(string, mediaType, "UTF-8");
+        postMethod.setRequestEntity(entity);
+
+        HttpTransport.execute(postMethod, userName, password);
+
+        return postMethod;
+    }
+
+    protected PostMethod executePostForm(String uri, NameValuePair[] nameValuePairs, String userName, String password)
+        throws Exception
+    {
+        PostMethod postMethod = new PostMethod(uri);
+        postMethod.addRequestHeader("Accept", MediaType.APPLICATION_XML.toString());
+        postMethod.addRequestHeader("Content-type", MediaType.APPLICATION_WWW_FORM.toString());
+
+        postMethod.setRequestBody(nameValuePairs);
+
+        HttpTransport.execute(postMethod, userName, password);
+
+        return postMethod;
+    }
+
+    protected PutMethod executePutXml(String uri, Object object) throws Exception
+    {
+        PutMethod putMethod = new PutMethod(uri);
+        putMethod.addRequestHeader("Accept", MediaType.APPLICATION_XML.toString());
+        putMethod.setRequestEntity(createXmlEntity(object));
+
+        HttpTransport.execute(putMethod);
+
+        return putMethod;
+    }
+
+    protected PutMethod executePutXml(String uri, Object object, String userName, String password) throws Exception
+    {
+        PutMethod putMethod = new PutMethod(uri);
+        putMethod.addRequestHeader("Accept", MediaType.APPLICATION_XML.toString());
+        putMethod.setRequestEntity(createXmlEntity(object));
+
+        HttpTransport.execute(putMethod, userName, password);
+
+        return putMethod;
+    }
+
+    protected PutMethod executePut(String uri, String string, String mediaType) throws Exception
+    {
+        PutMethod putMethod = new PutMethod(uri);
+        RequestEntity entity = new StringRequestEntity(string, mediaType, "UTF-8");
+        putMethod.setRequestEntity(entity);
+
+        HttpTransport.execute(putMethod);
+
+        return putMethod;
+    }
+
+    protected PutMethod executePut(String uri, String string, String mediaType, String userName, String password)
+        throws Exception
+    {
+        PutMethod putMethod = new PutMethod(uri);
+        RequestEntity entity = new StringRequestEntity(string, mediaType, "UTF-8");
+        putMethod.setRequestEntity(entity);
+
+        HttpTransport.execute(putMethod, userName, password);
+
+        return putMethod;
+    }
+
+    protected DeleteMethod executeDelete(String uri) throws Exception
+    {
+        DeleteMethod deleteMethod = new DeleteMethod(uri);
+        HttpTransport.execute(deleteMethod);
+
+        return deleteMethod;
+    }
+
+    protected DeleteMethod executeDelete(String uri, String userName, String password) throws Exception
+    {
+        DeleteMethod deleteMethod = new DeleteMethod(uri);
+        HttpTransport.execute(deleteMethod, userName, password);
+
+        return deleteMethod;
+    }
+
+    private RequestEntity createXmlEntity(Object object) throws Exception
+    {
+        StringWriter writer = new StringWriter();
+        marshaller.marshal(object, writer);
+
+        return new StringRequestEntity(writer.toString(), MediaType.APPLICATION_XML.toString(), "UTF-8");
+    }
+
+    protected String getWiki() throws Exception
+    {
+        GetMethod getMethod = executeGet(getFullUri(WikisResource.class));
+        Assert.assertEquals(getHttpMethodInfo(getMethod), HttpStatus.SC_OK, getMethod.getStatusCode());
+
+        Wikis wikis = (Wikis) unmarshaller.unmarshal(getMethod.getResponseBodyAsStream());
+        Assert.assertTrue(wikis.getWikis().size() > 0);
+
+        return wikis.getWikis().get(0).getName();
+    }
+
+    protected void checkLinks(LinkCollection linkCollection) throws Exception
+    {
+        if (linkCollection.getLinks() != null) {
+            for (Link link : linkCollection.getLinks()) {
+                GetMethod getMethod = executeGet(link.getHref());
+                if (getMethod.getStatusCode() != HttpStatus.SC_UNAUTHORIZED) {
+                    Assert.assertEquals(getHttpMethodInfo(getMethod), HttpStatus.SC_OK, getMethod.getStatusCode());
+                }
+            }
+        }
+    }
+
+    protected UriBuilder getUriBuilder(Class< ? > resource)
+    {
+        return UriBuilder.fromUri(getBaseURL()).path(resource);
+    }
+
+    private Page getPage(String wikiName, String spaceName, String pageName) throws Exception
+    {
+        String uri = getUriBuilder(PageResource.class).build(wikiName, spaceName, pageName).toString();
+
+        GetMethod getMethod = executeGet(uri);
+
+        return (Page) unmarshaller.unmarshal(getMethod.getResponseBodyAsStream());
+    }
+
+    protected String getPageContent(String wikiName, String spaceName, String pageName) throws Exception
+    {
+        Page page = getPage(wikiName, spaceName, pageName);
+
+        return page.getContent();
+    }
+
+    protected int setPageContent(String wikiName, String spaceName, String pageName, String content) throws Exception
+    {
+        String uri = getUriBuilder(PageResource.class).build(wikiName, spaceName, pageName).toString();
+
+        PutMethod putMethod = executePut(uri, content, javax.ws.rs.core.MediaType.TEXT_PLAIN, "Admin", "admin");
+
+        int code = putMethod.getStatusCode();
+        Assert.assertTrue(String.format("Failed to set page content, %s", getHttpMethodInfo(putMethod)),
+            code == HttpStatus.SC_ACCEPTED || code == HttpStatus.SC_CREATED);
+
+        return code;
+    }
+
+    protected String getHttpMethodInfo(HttpMethod method) throws Exception
+    {
+        return String.format("\nName: %s\nURI: %s\nStatus code: %d\nStatus text: %s", method.getName(),
+            method.getURI(), method.getStatusCode(), method.getStatusText());
+    }
+
+    protected String getAttachmentsInfo(Attachments attachments)
+    {
+        StringBuffer sb = new StringBuffer();
+        sb.append(String.format("Attachments: %d\n", attachments.getAttachments().size()));
+        for (Attachment attachment : attachments.getAttachments()) {
+            sb.append(String.format("* %s\n", attachment.getName()));
+        }
+
+        return sb.toString();
+    }
+
+    protected String getPagesInfo(Pages pages)
+    {
+        StringBuffer sb = new StringBuffer();
+        sb.append(String.format("Pages: %d\n", pages.getPageSummaries().size()));
+        for (PageSummary pageSummary : pages.getPageSummaries()) {
+            sb.append(String.format("* %s\n", pageSummary.getFullName()));
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.rest.framework;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpState;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.UsernamePasswordCredentials;
+import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.cookie.CookiePolicy;
+
+/**
+ * HTTP transport shared by all the functional tests talking to XWiki over HTTP. All requests go through a single
+ * {@link HttpClient} backed by a pool of keep-alive connections, and the credentials of each user are registered only
+ * once and sent preemptively so that no request pays for a new TCP connection or for an authentication challenge.
+ * <p>
+ * Cookies are ignored so that, as before, requests don't share any server side session: each request is
+ * authenticated on its own.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public final class HttpTransport
+{
+    /** Default maximum number of connections per host, can be changed with the "httpMaxConnections" property. */
+    private static final int DEFAULT_MAX_CONNECTIONS = 20;
+
+    private static final MultiThreadedHttpConnectionManager CONNECTION_MANAGER =
+        new MultiThreadedHttpConnectionManager();
+
+    private static final HttpClient CLIENT;
+
+    /** The state used for anonymous requests. It never holds any credentials. */
+    private static final HttpState ANONYMOUS = new HttpState();
+
+    /** The state holding the credentials of each user, indexed by user name and password. */
+    private static final Map<String, HttpState> STATES = new ConcurrentHashMap<String, HttpState>();
+
+    static {
+        setMaxConnections(Integer.getInteger("httpMaxConnections", DEFAULT_MAX_CONNECTIONS));
+
+        CLIENT = new HttpClient(CONNECTION_MANAGER);
+        CLIENT.getParams().setAuthenticationPreemptive(true);
+        CLIENT.getParams().setCookiePolicy(CookiePolicy.IGNORE_COOKIES);
+    }
+
+    /**
+     * Utility class.
+     */
+    private HttpTransport()
+    {
+    }
+
+    /**
+     * @param maxConnections the maximum number of simultaneous connections to the same XWiki instance, should be at
+     *            least the number of threads sending requests concurrently
+     */
+    public static void setMaxConnections(int maxConnections)
+    {
+        CONNECTION_MANAGER.getParams().setDefaultMaxConnectionsPerHost(maxConnections);
+        CONNECTION_MANAGER.getParams().setMaxTotalConnections(maxConnections * 4);
+    }
+
+    /**
+     * Execute a request as guest. The response body is read and the connection given back to the pool before
+     * returning, so that the caller doesn't have to release it.
+     * 
+     * @param method the request to execute
+     * @return the status code of the response
+     * @throws IOException if the request fails
+     */
+    public static int execute(HttpMethod method) throws IOException
+    {
+        return execute(method, ANONYMOUS, true);
+    }
+
+    /**
+     * Execute a request as the specified user. The response body is read and the connection given back to the pool
+     * before returning, so that the caller doesn't have to release it.
+     * 
+     * @param method the request to execute
+     * @param userName the name of the user executing the request
+     * @param password the password of the user
+     * @return the status code of the response
+     * @throws IOException if the request fails
+     */
+    public static int execute(HttpMethod method, String userName, String password) throws IOException
+    {
+        return execute(method, getState(userName, password), true);
+    }
+
+    /**
+     * Execute a request without reading the response body, to allow streaming large responses. The caller is
+     * responsible for calling {@link HttpMethod#releaseConnection()} once done with the response.
+     * 
+     * @param method the request to execute
+     * @param userName the name of the user executing the request, {@code null} for guest
+     * @param password the password of the user
+     * @return the status code of the response
+     * @throws IOException if the request fails
+     */
+    public static int executeStreamed(HttpMethod method, String userName, String password) throws IOException
+    {
+        return execute(method, userName == null ? ANONYMOUS : getState(userName, password), false);
+    }
+
+    private static int execute(HttpMethod method, HttpState state, boolean buffer) throws IOException
+    {
+        int status;
+        try {
+            status = CLIENT.executeMethod(null, method, state);
+            if (buffer) {
+                // Keep the body in memory so that it stays readable after the connection has been released.
+                method.getResponseBody();
+            }
+        } catch (IOException e) {
+            method.releaseConnection();
+            throw e;
+        }
+
+        if (buffer) {
+            method.releaseConnection();
+        }
+
+        return status;
+    }
+
+    private static HttpState getState(String userName, String password)
+    {
+        String key = userName + ':' + password;
+        HttpState state = STATES.get(key);
+        if (state == null) {
+            state = new HttpState();
+            state.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(userName, password));
+            STATES.put(key, state);
+        }
+
+        return state;
+    }
+}
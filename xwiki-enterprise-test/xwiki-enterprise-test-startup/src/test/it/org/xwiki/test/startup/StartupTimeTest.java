@@ -0,0 +1,308 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.startup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.test.integration.XWikiExecutor;
+import org.xwiki.test.performance.framework.Baseline;
+
+/**
+ * Boots the distribution of the current database profile repeatedly and compares the boot times with the baseline.
+ * <p>
+ * A cold boot starts XWiki from a pristine copy of the distribution (nothing in the work directory, database as
+ * shipped), a warm boot restarts the distribution left by the previous boot. For each boot, {@code start} is the time
+ * taken by the executor to start XWiki and {@code firstPage} the time from the start until Main.WebHome is rendered.
+ * The medians are stored in the baseline as {@code <database>.<cold|warm>.<start|firstPage>}, in milliseconds, so
+ * that the builds of the different database profiles share the same baseline.
+ * <p>
+ * The MySQL and PostgreSQL databases live in a server configured in the hibernate.cfg.xml of the distribution, which
+ * must be reachable: the test fails otherwise. Their database is emptied and loaded again with the load_seed script of
+ * the distribution before each cold boot (outside of the measured time), so the {@code mysql} or {@code psql} client
+ * must be on the path.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class StartupTimeTest
+{
+    private static final String WEB_HOME = "http://localhost:%d/xwiki/bin/view/Main/WebHome";
+
+    /**
+     * The connection URLs of the databases running in a server, with the host and port of the server and the name of
+     * the database.
+     */
+    private static final Pattern SERVER_URL =
+        Pattern.compile("jdbc:(?:mysql|postgresql):(?://([^/:?]+)(?::(\\d+))?/)?([^?]+)");
+
+    /**
+     * The connection properties of the Hibernate configuration.
+     */
+    private static final Pattern CONNECTION_PROPERTY =
+        Pattern.compile("<property name=\"(?:hibernate\\.)?connection\\.(\\w+)\">([^<]*)</property>");
+
+    private static final String MYSQL = "mysql";
+
+    private static final String PGSQL = "pgsql";
+
+    private static final String START = "start";
+
+    private static final String FIRST_PAGE = "firstPage";
+
+    private final XWikiExecutor executor = new XWikiExecutor(0);
+
+    private final String database = System.getProperty("startup.database", "hsqldb");
+
+    private final Properties report = new Properties();
+
+    @Test
+    public void testColdAndWarmBoots() throws Exception
+    {
+        File distribution = new File(this.executor.getExecutionDirectory());
+        Map<String, String> connection = null;
+        if (MYSQL.equals(this.database) || PGSQL.equals(this.database)) {
+            connection = readConnectionProperties(distribution);
+            checkDatabaseReachable(connection);
+        }
+
+        // The distribution has just been unpacked by the build: keep a copy of it to start each cold boot from.
+        File pristine = new File(distribution.getParentFile(), distribution.getName() + "-pristine");
+        FileUtils.deleteDirectory(pristine);
+        FileUtils.copyDirectory(distribution, pristine);
+
+        Map<String, Double> metrics = new LinkedHashMap<String, Double>();
+        List<long[]> coldBoots = new ArrayList<long[]>();
+        for (int i = 0; i < Integer.getInteger("startup.coldBoots", 3); i++) {
+            FileUtils.deleteDirectory(distribution);
+            FileUtils.copyDirectory(pristine, distribution);
+            if (connection != null) {
+                reseedDatabase(distribution, connection);
+            }
+            coldBoots.add(boot("cold", i));
+        }
+        putMedians(metrics, "cold", coldBoots);
+
+        // The last cold boot left the distribution as it is after a first start.
+        List<long[]> warmBoots = new ArrayList<long[]>();
+        for (int i = 0; i < Integer.getInteger("startup.warmBoots", 5); i++) {
+            warmBoots.add(boot("warm", i));
+        }
+        putMedians(metrics, "warm", warmBoots);
+
+        saveReport(metrics);
+
+        System.out.println(String.format("Boot times of the %s distribution, median in milliseconds:", this.database));
+        System.out.println(String.format("%-8s %10s %10s", "", START, FIRST_PAGE));
+        for (String boot : new String[] {"cold", "warm"}) {
+            System.out.println(String.format("%-8s %10.0f %10.0f", boot, metrics.get(getKey(boot, START)),
+                metrics.get(getKey(boot, FIRST_PAGE))));
+        }
+
+        double tolerance = Double.parseDouble(System.getProperty("startup.tolerance", "0.25"));
+        new Baseline(new File(System.getProperty("startup.baseline"))).check(metrics, tolerance,
+            "startup.updateBaseline");
+    }
+
+    /**
+     * Start XWiki, render Main.WebHome and stop XWiki.
+     * 
+     * @param type the type of boot, cold or warm
+     * @param index the index of the boot among the boots of the same type
+     * @return the {@code start} and {@code firstPage} times of the boot, in milliseconds
+     */
+    private long[] boot(String type, int index) throws Exception
+    {
+        long[] times = new long[2];
+
+        long begin = System.currentTimeMillis();
+        this.executor.start();
+        try {
+            times[0] = System.currentTimeMillis() - begin;
+
+            GetMethod getMethod = new GetMethod(String.format(WEB_HOME, this.executor.getPort()));
+            try {
+                int status = new HttpClient().executeMethod(getMethod);
+                Assert.assertEquals("Failed to view Main.WebHome", 200, status);
+            } finally {
+                getMethod.releaseConnection();
+            }
+            times[1] = System.currentTimeMillis() - begin;
+        } finally {
+            this.executor.stop();
+        }
+
+        String prefix = String.format("%s.%s.%d.", this.database, type, index);
+        this.report.setProperty(prefix + START, String.valueOf(times[0]));
+        this.report.setProperty(prefix + FIRST_PAGE, String.valueOf(times[1]));
+
+        return times;
+    }
+
+    private void putMedians(Map<String, Double> metrics, String type, List<long[]> boots)
+    {
+        String[] names = new String[] {START, FIRST_PAGE};
+        for (int i = 0; i < names.length; i++) {
+            long[] values = new long[boots.size()];
+            for (int j = 0; j < values.length; j++) {
+                values[j] = boots.get(j)[i];
+            }
+            Arrays.sort(values);
+            metrics.put(getKey(type, names[i]), (double) values[values.length / 2]);
+        }
+    }
+
+    private String getKey(String type, String name)
+    {
+        return String.format("%s.%s.%s", this.database, type, name);
+    }
+
+    private void saveReport(Map<String, Double> metrics) throws IOException
+    {
+        for (Map.Entry<String, Double> metric : metrics.entrySet()) {
+            this.report.setProperty(metric.getKey(), String.valueOf(metric.getValue()));
+        }
+
+        File file = new File(System.getProperty("startup.report"));
+        file.getParentFile().mkdirs();
+        OutputStream output = new FileOutputStream(file);
+        try {
+            this.report.store(output, "Boot times in milliseconds");
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+    /**
+     * @param distribution the directory of the distribution
+     * @return the connection properties of the database of the distribution, without their {@code connection.}
+     *         prefix, and the {@code host}, {@code port} and {@code name} of the database read from its URL
+     */
+    private Map<String, String> readConnectionProperties(File distribution) throws IOException
+    {
+        // Ignore the configurations of the other databases, given as examples in comments.
+        String configuration =
+            FileUtils.readFileToString(new File(distribution, "webapps/xwiki/WEB-INF/hibernate.cfg.xml"), "UTF-8");
+        configuration = configuration.replaceAll("(?s)<!--.*?-->", "");
+        Map<String, String> properties = new HashMap<String, String>();
+        Matcher matcher = CONNECTION_PROPERTY.matcher(configuration);
+        while (matcher.find()) {
+            properties.put(matcher.group(1), matcher.group(2).trim());
+        }
+
+        matcher = SERVER_URL.matcher(String.valueOf(properties.get("url")));
+        Assert.assertTrue("Unsupported connection URL: " + properties.get("url"), matcher.lookingAt());
+        properties.put("host", matcher.group(1) != null ? matcher.group(1) : "localhost");
+        if (matcher.group(2) != null) {
+            properties.put("port", matcher.group(2));
+        } else {
+            properties.put("port", MYSQL.equals(this.database) ? "3306" : "5432");
+        }
+        properties.put("name", matcher.group(3));
+
+        return properties;
+    }
+
+    /**
+     * Fail when the database server cannot be reached, instead of skipping the test, so that a misconfigured build
+     * doesn't silently stop tracking the boot times of a database.
+     * 
+     * @param connection the connection properties of the database
+     */
+    private void checkDatabaseReachable(Map<String, String> connection) throws IOException
+    {
+        String host = connection.get("host");
+        int port = Integer.parseInt(connection.get("port"));
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), 2000);
+        } catch (IOException e) {
+            Assert.fail(String.format("No %s database server on %s:%d, start a local one (e.g. a disposable "
+                + "container) with an empty \"%s\" database", this.database, host, port, connection.get("name")));
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Drop the database left by the previous boot and load the seed of the distribution into a new one, so that each
+     * cold boot starts from the database as shipped.
+     * 
+     * @param distribution the directory of the distribution
+     * @param connection the connection properties of the database
+     */
+    private void reseedDatabase(File distribution, Map<String, String> connection) throws Exception
+    {
+        Map<String, String> environment = new HashMap<String, String>();
+        environment.put("DB_HOST", connection.get("host"));
+        environment.put("DB_PORT", connection.get("port"));
+        environment.put("DB_NAME", connection.get("name"));
+        environment.put("DB_USER", connection.get("username"));
+        environment.put("DB_PASSWORD", connection.get("password"));
+
+        List<String> reset = new ArrayList<String>();
+        if (MYSQL.equals(this.database)) {
+            environment.put("MYSQL_PWD", connection.get("password"));
+            reset.addAll(Arrays.asList("mysql", "--host=" + connection.get("host"), "--port=" + connection.get("port"),
+                "--user=" + connection.get("username"), "--execute=DROP DATABASE IF EXISTS `" + connection.get("name")
+                    + "`; CREATE DATABASE `" + connection.get("name") + "`"));
+        } else {
+            environment.put("PGPASSWORD", connection.get("password"));
+            // The public schema usually belongs to the server administrator: drop the tables and sequences instead.
+            reset.addAll(Arrays.asList("psql", "--quiet", "--set", "ON_ERROR_STOP=1",
+                "--host=" + connection.get("host"), "--port=" + connection.get("port"),
+                "--username=" + connection.get("username"), "--dbname=" + connection.get("name"),
+                "--command=DROP OWNED BY CURRENT_USER"));
+        }
+        execute(reset, distribution, environment);
+        execute(Arrays.asList("sh", "load_seed.sh"), distribution, environment);
+    }
+
+    private void execute(List<String> command, File directory, Map<String, String> environment) throws Exception
+    {
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.directory(directory);
+        builder.environment().putAll(environment);
+        // The output is small, merge it so that a single stream needs to be read.
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+        String output = IOUtils.toString(process.getInputStream(), "UTF-8");
+        Assert.assertEquals(String.format("Failed to execute %s: %s", command.get(0), output), 0, process.waitFor());
+    }
+}
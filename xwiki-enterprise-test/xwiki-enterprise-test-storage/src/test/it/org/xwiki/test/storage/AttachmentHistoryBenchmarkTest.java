@@ -0,0 +1,176 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.storage;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.TrueFileFilter;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.xwiki.test.performance.framework.ScalingCurve;
+import org.xwiki.test.storage.framework.AbstractTest;
+import org.xwiki.test.storage.framework.PristineDatabase;
+
+/**
+ * Upload the same attachment thousands of times and measure how reading an old revision, displaying the attachment
+ * history, rolling back and the size of the archive evolve as the history grows. Fails if any of them grows faster
+ * than linearly.
+ * <p>
+ * The number of revisions is given by the "storage.attachmentRevisions" System Property, the test is skipped if it's
+ * not set (see the "historyBenchmark" profile of this module).
+ *
+ * @version $Id$
+ * @since 3.2M3
+ */
+@PristineDatabase
+public class AttachmentHistoryBenchmarkTest extends AbstractTest
+{
+    private static final String SPACE = "Test";
+
+    private static final String PAGE = "AttachmentHistoryBenchmark";
+
+    private static final String FILENAME = "history.txt";
+
+    /** Number of times each latency is measured at each checkpoint, the median is kept. */
+    private static final int SAMPLES = 5;
+
+    @Test
+    public void testAttachmentHistoryScaling() throws Exception
+    {
+        int revisions = Integer.getInteger("storage.attachmentRevisions", 0);
+        Assume.assumeTrue(revisions > 0);
+        double maxExponent = Double.parseDouble(System.getProperty("storage.maxScalingExponent", "1.25"));
+
+        String store = getExecutor().loadXWikiCfg().getProperty("xwiki.store.attachment.hint", "hibernate");
+
+        ScalingCurve upload = new ScalingCurve("Upload of a new revision (ms)");
+        ScalingCurve revision = new ScalingCurve("getAttachmentRevision('1.1') (ms)");
+        ScalingCurve history = new ScalingCurve("Attachment history view (ms)");
+        ScalingCurve archive = new ScalingCurve("Archive size (bytes)");
+
+        // Create a document.
+        doPostAsAdmin(SPACE, PAGE, null, "save", null, null);
+
+        // Measure at 1/8, 1/4, 1/2 and all of the revisions.
+        int uploaded = 0;
+        for (int checkpoint = Math.max(1, revisions / 8); uploaded < revisions;
+            checkpoint = Math.min(checkpoint * 2, revisions)) {
+            long start = System.nanoTime();
+            int batch = checkpoint - uploaded;
+            for (; uploaded < checkpoint; uploaded++) {
+                uploadRevision(uploaded + 1);
+            }
+            upload.add(checkpoint, (System.nanoTime() - start) / 1e6 / batch);
+
+            revision.add(checkpoint, getMedianDuration(SAMPLES, new Callable<HttpMethod>()
+            {
+                public HttpMethod call() throws Exception
+                {
+                    return preview("{{velocity}}$doc.getAttachment('" + FILENAME
+                        + "').getAttachmentRevision('1.1').getContentAsString(){{/velocity}}");
+                }
+            }));
+            history.add(checkpoint, getMedianDuration(SAMPLES, new Callable<HttpMethod>()
+            {
+                public HttpMethod call() throws Exception
+                {
+                    return doPostAsAdmin(SPACE, PAGE, FILENAME, "viewattachrev", null, null);
+                }
+            }));
+            archive.add(checkpoint, getArchiveSize(store));
+        }
+
+        // Rollback to the document version which added the first revision of the attachment.
+        long start = System.nanoTime();
+        doPostAsAdmin(SPACE, PAGE, null, "rollback", "rev=2.1&confirm=1", null);
+        double rollback = (System.nanoTime() - start) / 1e6;
+        HttpMethod ret = doPostAsAdmin(SPACE, PAGE, FILENAME, "download", null, null);
+        Assert.assertEquals(getContent(1), new String(ret.getResponseBody(), "UTF-8"));
+
+        System.out.println(String.format("Attachment history of %d revisions with the [%s] attachment store:",
+            revisions, store));
+        for (ScalingCurve curve : Arrays.asList(upload, revision, history, archive)) {
+            System.out.println(curve);
+        }
+        System.out.println(String.format("Rollback to the first revision: %.2f ms", rollback));
+
+        for (ScalingCurve curve : Arrays.asList(upload, revision, history, archive)) {
+            Assert.assertFalse(String.format("[%s] grows super-linearly with the [%s] store:%n%s", curve.getName(),
+                store, curve), curve.isSuperLinear(maxExponent));
+        }
+    }
+
+    private void uploadRevision(final int number) throws Exception
+    {
+        doUploadAsAdmin(SPACE, PAGE, new HashMap<String, byte[]>() {{
+                put(FILENAME, getContent(number).getBytes("UTF-8"));
+            }});
+    }
+
+    /**
+     * @return the content of a revision of the attachment, each revision changes a single line
+     */
+    private String getContent(int number)
+    {
+        return "This attachment has a long history.\nThis is revision " + number + ".\nThe end.\n";
+    }
+
+    private HttpMethod preview(final String content) throws Exception
+    {
+        return doPostAsAdmin(SPACE, PAGE, null, "preview", "xpage=plain", new HashMap<String, String>() {{
+                put("content", content);
+            }});
+    }
+
+    /**
+     * @return the size of the files holding the attachment and its history for the filesystem store, the size of the
+     *         serialized archive (as stored in the database) otherwise
+     */
+    private long getArchiveSize(String store) throws Exception
+    {
+        if ("file".equals(store)) {
+            // The filesystem store keeps each attachment in a directory named after it, inside the directory of the
+            // document.
+            long size = 0;
+            File directory = new File(getExecutor().getExecutionDirectory());
+            for (File file : FileUtils.listFiles(directory, TrueFileFilter.INSTANCE, TrueFileFilter.INSTANCE)) {
+                String path = file.getPath();
+                if (path.contains(File.separator + PAGE + File.separator)
+                    && path.contains(File.separator + FILENAME + File.separator)) {
+                    size += file.length();
+                }
+            }
+
+            return size;
+        }
+
+        HttpMethod ret = preview("{{groovy}}print(doc.getDocument().getAttachment('" + FILENAME
+            + "').loadArchive(xcontext.getContext()).getArchive(xcontext.getContext()).length){{/groovy}}");
+        String body = new String(ret.getResponseBody(), "UTF-8");
+
+        return Long.parseLong(body.replaceAll("[^0-9]", ""));
+    }
+}
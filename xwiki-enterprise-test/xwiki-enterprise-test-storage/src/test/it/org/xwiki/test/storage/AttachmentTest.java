@@ -28,6 +28,7 @@
 import org.junit.Ignore;
 import org.junit.Test;
 import org.xwiki.test.storage.framework.AbstractTest;
+import org.xwiki.test.storage.framework.PristineDatabase;
 import org.xwiki.test.storage.framework.TestUtils;
 
 /**
@@ -36,6 +37,7 @@
  * @version $Id$
  * @since 3.0RC1
  */
+@PristineDatabase
 public class AttachmentTest extends AbstractTest
 {
     private static final String ATTACHMENT_CONTENT = "This is content for a very small attachment.";
@@ -61,9 +63,6 @@ public void testDocumentAddAttachment() throws Exception
           + "').getContentAsString());"
           + "{{/groovy}}";
 
-        // Delete the document if it exists.
-        doPostAsAdmin("Test", "Attachment", null, "delete", "confirm=1", null);
-
         // Create a document.
         doPostAsAdmin("Test", "Attachment", null, "save", null,
             new HashMap<String, String>() {{
@@ -109,9 +108,6 @@ public void testImportDocumentWithAttachment() throws Exception
 
         final String attachURL = this.getAddressPrefix() + "download/" + spaceName + "/" + pageName + "/" + FILENAME;
 
-        // Delete the document if it exists.
-        doPostAsAdmin(spaceName, pageName, null, "delete", "confirm=1", null);
-
         HttpMethod ret = null;
         // Upload the XAR to import.
         final ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -142,9 +138,6 @@ public void testRollbackAfterDeleteAttachment() throws Exception
 
         final String attachURL = this.getAddressPrefix() + "download/" + spaceName + "/" + pageName + "/" + FILENAME;
 
-        // Delete the document if it exists.
-        doPostAsAdmin(spaceName, pageName, null, "delete", "confirm=1", null);
-
         // Create a document.
         doPostAsAdmin(spaceName, pageName, null, "save", null, null);
 
@@ -179,9 +172,6 @@ public void testRollbackAfterNewAttachment() throws Exception
 
         final String attachURL = this.getAddressPrefix() + "download/" + spaceName + "/" + pageName + "/" + FILENAME;
 
-        // Delete the document if it exists.
-        doPostAsAdmin(spaceName, pageName, null, "delete", "?confirm=1", null);
-
         // Create a document.
         doPostAsAdmin(spaceName, pageName, null, "save", null, null);
 
@@ -214,9 +204,6 @@ public void testRollbackAfterUpdateOfAttachment() throws Exception
 
         final String attachURL = this.getAddressPrefix() + "download/" + spaceName + "/" + pageName + "/" + FILENAME;
 
-        // Delete the document if it exists.
-        doPostAsAdmin(spaceName, pageName, null, "delete", "confirm=1", null);
-
         // Create a document.
         doPostAsAdmin(spaceName, pageName, null, "save", null, null);
 
@@ -263,9 +250,6 @@ public void testRollbackAfterSaveDeleteSaveAttachment() throws Exception
 
         final String attachURL = this.getAddressPrefix() + "download/" + spaceName + "/" + pageName + "/" + FILENAME;
 
-        // Delete the document if it exists.
-        doPostAsAdmin(spaceName, pageName, null, "delete", "confirm=1", null);
-
         // Create a document. v1.1
         doPostAsAdmin(spaceName, pageName, null, "save", null, null);
 
@@ -340,9 +324,6 @@ public void testAttachmentContentDirty() throws Exception
         final String spaceName = "Test";
         final String pageName = "testAttachmentContentDirty";
 
-        // Delete the document if it exists.
-        doPostAsAdmin(spaceName, pageName, null, "delete", "confirm=1", null);
-
         // Create a document.
         doPostAsAdmin(spaceName, pageName, null, "save", null,
             new HashMap<String, String>(){{
@@ -352,7 +333,6 @@ public void testAttachmentContentDirty() throws Exception
         Assert.assertEquals("<p>true false</p>",
                             TestUtils.getPageAsString(this.getAddressPrefix() + "view/" + spaceName + "/" + pageName + "?xpage=plain"));
 
-
         // Make sure that on load the attach content isn't dirty.
         final String test2 =
             "{{groovy}}print(doc.getDocument().getAttachmentList().get(0).isContentDirty());{{/groovy}}\n";
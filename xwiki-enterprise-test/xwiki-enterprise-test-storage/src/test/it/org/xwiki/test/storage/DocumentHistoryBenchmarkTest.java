@@ -0,0 +1,191 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.storage;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.xwiki.test.performance.framework.ScalingCurve;
+import org.xwiki.test.rest.framework.HttpTransport;
+import org.xwiki.test.storage.framework.AbstractTest;
+import org.xwiki.test.storage.framework.PristineDatabase;
+import org.xwiki.test.storage.framework.TestUtils;
+
+/**
+ * Save a document thousands of times and measure how saving, the history viewer, the REST history resource and
+ * rolling back to an early revision evolve as the history grows. Fails if any of them grows faster than linearly.
+ * <p>
+ * The number of revisions is given by the "storage.documentRevisions" System Property, the test is skipped if it's
+ * not set (see the "historyBenchmark" profile of this module). The results are written in the
+ * "storage.reportDirectory" directory, in a file named after the database ("storage.database" System Property) so
+ * that the backends can be compared.
+ *
+ * @version $Id$
+ * @since 3.2M3
+ */
+@PristineDatabase
+public class DocumentHistoryBenchmarkTest extends AbstractTest
+{
+    private static final String SPACE = "DocumentTest";
+
+    private static final String PAGE = "DocumentHistoryBenchmark";
+
+    /** Number of times each latency is measured at each checkpoint, the median is kept. */
+    private static final int SAMPLES = 5;
+
+    /** Number of revisions per page of the REST history resource. */
+    private static final int HISTORY_PAGE_SIZE = 25;
+
+    /** The major version of the document in its REST representation, i.e. its number of revisions. */
+    private static final Pattern MAJOR_VERSION = Pattern.compile("<majorVersion>(\\d+)</majorVersion>");
+
+    @Test
+    public void testDocumentHistoryScaling() throws Exception
+    {
+        int revisions = Integer.getInteger("storage.documentRevisions", 0);
+        Assume.assumeTrue(revisions > 0);
+        double maxExponent = Double.parseDouble(System.getProperty("storage.maxScalingExponent", "1.25"));
+
+        ScalingCurve save = new ScalingCurve("Save of a new revision (ms)");
+        ScalingCurve viewer = new ScalingCurve("History viewer (ms)");
+        ScalingCurve firstPage = new ScalingCurve("REST history, first page (ms)");
+        ScalingCurve lastPage = new ScalingCurve("REST history, last page (ms)");
+        ScalingCurve rollback = new ScalingCurve("Rollback to revision 1.1 (ms)");
+        List<ScalingCurve> curves = Arrays.asList(save, viewer, firstPage, lastPage, rollback);
+
+        // Measure at 1/8, 1/4, 1/2 and all of the revisions.
+        int saved = 0;
+        for (int checkpoint = Math.max(1, revisions / 8); saved < revisions;
+            checkpoint = Math.min(checkpoint * 2, revisions)) {
+            long start = System.nanoTime();
+            int batch = checkpoint - saved;
+            for (; saved < checkpoint; saved++) {
+                saveRevision(saved + 1);
+            }
+            save.add(checkpoint, (System.nanoTime() - start) / 1e6 / batch);
+
+            viewer.add(checkpoint, getMedianDuration(SAMPLES, new Callable<HttpMethod>()
+            {
+                public HttpMethod call() throws Exception
+                {
+                    return doPostAsAdmin(SPACE, PAGE, null, "view", "viewer=history", null);
+                }
+            }));
+            firstPage.add(checkpoint, getMedianDuration(SAMPLES, new HistoryRequest(0)));
+            // The history also holds the revisions created by the rollbacks of the previous checkpoints.
+            lastPage.add(checkpoint,
+                getMedianDuration(SAMPLES, new HistoryRequest(Math.max(0, getRevisionCount() - HISTORY_PAGE_SIZE))));
+
+            // Each rollback creates a new revision, which doesn't matter compared to the size of the history.
+            double[] durations = new double[SAMPLES];
+            for (int i = 0; i < SAMPLES; i++) {
+                start = System.nanoTime();
+                doPostAsAdmin(SPACE, PAGE, null, "rollback", "rev=1.1&confirm=1", null);
+                durations[i] = (System.nanoTime() - start) / 1e6;
+            }
+            Arrays.sort(durations);
+            rollback.add(checkpoint, durations[SAMPLES / 2]);
+            Assert.assertEquals("<p>" + getContent(1) + "</p>", TestUtils.getPageAsString(getAddressPrefix()
+                + "get/" + SPACE + "/" + PAGE + "?xpage=plain"));
+        }
+
+        String database = System.getProperty("storage.database", "unknown");
+        String store = getExecutor().loadXWikiCfg().getProperty("xwiki.store.attachment.hint", "hibernate");
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Document history of %d revisions with the [%s] database:%n%n", revisions,
+            database));
+        for (ScalingCurve curve : curves) {
+            report.append(curve).append(String.format("%n"));
+        }
+        System.out.println(report);
+
+        String reportDirectory = System.getProperty("storage.reportDirectory");
+        if (reportDirectory != null) {
+            // The attachment store is part of the name since the test is run for each profile.
+            File file = new File(reportDirectory, String.format("document-history-%s-%s.txt", database, store));
+            FileUtils.writeStringToFile(file, report.toString(), "UTF-8");
+        }
+
+        for (ScalingCurve curve : curves) {
+            Assert.assertFalse(String.format("[%s] grows super-linearly with the [%s] database:%n%s",
+                curve.getName(), database, curve), curve.isSuperLinear(maxExponent));
+        }
+    }
+
+    private void saveRevision(final int number) throws Exception
+    {
+        doPostAsAdmin(SPACE, PAGE, null, "save", null, new HashMap<String, String>() {{
+                put("content", getContent(number));
+            }});
+    }
+
+    /**
+     * @return the number of revisions of the document, read from its REST representation
+     */
+    private int getRevisionCount() throws Exception
+    {
+        GetMethod method = new GetMethod(String.format("http://127.0.0.1:%d/xwiki/rest/wikis/xwiki/spaces/%s/pages/%s",
+            getPort(), SPACE, PAGE));
+        HttpTransport.execute(method, TestUtils.ADMIN_CREDENTIALS[0], TestUtils.ADMIN_CREDENTIALS[1]);
+        Matcher matcher = MAJOR_VERSION.matcher(method.getResponseBodyAsString());
+        Assert.assertTrue("No version in the representation of the document", matcher.find());
+
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    private String getContent(int number)
+    {
+        return "This is revision " + number;
+    }
+
+    /**
+     * Get a page of the history of the document from the REST API.
+     */
+    private class HistoryRequest implements Callable<HttpMethod>
+    {
+        private final int start;
+
+        public HistoryRequest(int start)
+        {
+            this.start = start;
+        }
+
+        public HttpMethod call() throws Exception
+        {
+            GetMethod method = new GetMethod(String.format(
+                "http://127.0.0.1:%d/xwiki/rest/wikis/xwiki/spaces/%s/pages/%s/history?start=%d&number=%d",
+                getPort(), SPACE, PAGE, this.start, HISTORY_PAGE_SIZE));
+            HttpTransport.execute(method, TestUtils.ADMIN_CREDENTIALS[0], TestUtils.ADMIN_CREDENTIALS[1]);
+
+            return method;
+        }
+    }
+}
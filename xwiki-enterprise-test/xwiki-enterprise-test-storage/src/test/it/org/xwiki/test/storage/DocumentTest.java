@@ -25,6 +25,7 @@
 import org.junit.Assert;
 import org.junit.Test;
 import org.xwiki.test.storage.framework.AbstractTest;
+import org.xwiki.test.storage.framework.PristineDatabase;
 import org.xwiki.test.storage.framework.TestUtils;
 
 /**
@@ -33,6 +34,7 @@
  * @version $Id$
  * @since 3.2M1
  */
+@PristineDatabase
 public class DocumentTest extends AbstractTest
 {
     @Test
@@ -46,9 +48,6 @@ public void testRollback() throws Exception
 
         final String pageURL = this.getAddressPrefix() + "get/" + spaceName + "/" + pageName + "?xpage=plain";
 
-        // Delete the document if it exists.
-        doPostAsAdmin(spaceName, pageName, null, "delete", "confirm=1", null);
-
         // Create a document. v1.1
         doPostAsAdmin(spaceName, pageName, null, "save", null,
             new HashMap<String, String>() {{
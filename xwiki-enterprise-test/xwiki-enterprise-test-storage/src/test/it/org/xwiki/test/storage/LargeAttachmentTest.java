@@ -0,0 +1,175 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.storage;
+
+import java.io.IOException;
+
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.InputStreamRequestEntity;
+import org.apache.commons.httpclient.methods.MultipartPostMethod;
+import org.apache.commons.httpclient.methods.PutMethod;
+import org.apache.commons.httpclient.methods.multipart.FilePart;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.test.rest.framework.HttpTransport;
+import org.xwiki.test.storage.framework.AbstractTest;
+import org.xwiki.test.storage.framework.GeneratedContent;
+import org.xwiki.test.storage.framework.PristineDatabase;
+import org.xwiki.test.storage.framework.TestUtils;
+
+/**
+ * Stream very large attachments through the upload and download actions and the REST API, to prove that they are
+ * never fully loaded in memory. The size (in MB) is given by the "storage.largeAttachmentSize" System Property, the
+ * test is skipped if it's not set. XWiki should be started with a maximum heap smaller than the attachment (see the
+ * "largeAttachments" profile of this module) so that buffering the attachment leads to an OutOfMemoryError, and with
+ * an "xwiki.upload.maxsize" larger than the attachment so that the upload action accepts it.
+ *
+ * @version $Id$
+ * @since 3.2M3
+ */
+@PristineDatabase
+public class LargeAttachmentTest extends AbstractTest
+{
+    private static final String SPACE = "Test";
+
+    private static final String PAGE = "LargeAttachment";
+
+    private static final String CONTENT_TYPE = "application/octet-stream";
+
+    private static final double MB = 1024 * 1024;
+
+    /** The upload limit of XWiki when "xwiki.upload.maxsize" is not set. */
+    private static final long DEFAULT_UPLOAD_MAXSIZE = 32 * 1024 * 1024;
+
+    private GeneratedContent content;
+
+    @Before
+    public void setUp()
+    {
+        long size = Long.getLong("storage.largeAttachmentSize", 0);
+        Assume.assumeTrue(size > 0);
+
+        this.content = new GeneratedContent(size * 1024 * 1024);
+    }
+
+    @Test
+    public void testUploadAndDownloadActions() throws Exception
+    {
+        String fileName = "large-upload.bin";
+
+        doPostAsAdmin(SPACE, PAGE, null, "save", null, null);
+
+        long maxSize = Long.parseLong(getExecutor().loadXWikiCfg().getProperty("xwiki.upload.maxsize",
+            String.valueOf(DEFAULT_UPLOAD_MAXSIZE)).trim());
+        Assert.assertTrue("The attachment is bigger than xwiki.upload.maxsize (" + maxSize + " bytes)",
+            this.content.getLength() < maxSize);
+
+        MultipartPostMethod uploadMethod =
+            new MultipartPostMethod(getURL(SPACE, PAGE, null, "upload", "basicauth=1"));
+        uploadMethod.addPart(new FilePart("filepath", this.content.getPartSource(fileName)));
+        long start = System.nanoTime();
+        int status = execute(uploadMethod);
+        report("upload action", start);
+        Assert.assertTrue("Upload failed with status " + status, status < 400);
+
+        GetMethod downloadMethod = new GetMethod(getURL(SPACE, PAGE, fileName, "download", "basicauth=1"));
+        start = System.nanoTime();
+        checkDownload(downloadMethod);
+        report("download action", start);
+
+        checkAlive();
+    }
+
+    @Test
+    public void testRESTAttachmentResource() throws Exception
+    {
+        String uri = String.format("http://127.0.0.1:%d/xwiki/rest/wikis/xwiki/spaces/%s/pages/%s/attachments/%s",
+            getPort(), SPACE, PAGE, "large-rest.bin");
+
+        // Make sure the page exists.
+        doPostAsAdmin(SPACE, PAGE, null, "save", null, null);
+
+        PutMethod putMethod = new PutMethod(uri);
+        putMethod.setRequestEntity(new InputStreamRequestEntity(this.content.getInputStream(),
+            this.content.getLength(), CONTENT_TYPE));
+        long start = System.nanoTime();
+        int status = execute(putMethod);
+        report("REST PUT", start);
+        Assert.assertTrue("PUT failed with status " + status,
+            status == HttpStatus.SC_CREATED || status == HttpStatus.SC_ACCEPTED);
+
+        start = System.nanoTime();
+        checkDownload(new GetMethod(uri));
+        report("REST GET", start);
+
+        checkAlive();
+    }
+
+    /**
+     * Execute a request with a potentially large body, without buffering the response.
+     *
+     * @return the status code
+     */
+    private int execute(HttpMethod method) throws IOException
+    {
+        try {
+            return HttpTransport.executeStreamed(method, TestUtils.ADMIN_CREDENTIALS[0],
+                TestUtils.ADMIN_CREDENTIALS[1]);
+        } finally {
+            method.releaseConnection();
+        }
+    }
+
+    private void checkDownload(HttpMethod method) throws IOException
+    {
+        try {
+            int status = HttpTransport.executeStreamed(method, TestUtils.ADMIN_CREDENTIALS[0],
+                TestUtils.ADMIN_CREDENTIALS[1]);
+            Assert.assertEquals("Download failed", HttpStatus.SC_OK, status);
+
+            String difference = this.content.check(method.getResponseBodyAsStream());
+            Assert.assertNull(difference, difference);
+        } finally {
+            method.releaseConnection();
+        }
+    }
+
+    /**
+     * An OutOfMemoryError usually leaves the wiki unusable, make sure it still answers.
+     */
+    private void checkAlive() throws IOException
+    {
+        HttpMethod method = doPostAsAdmin(SPACE, PAGE, null, "view", "xpage=plain", null);
+        Assert.assertEquals("XWiki doesn't answer anymore", HttpStatus.SC_OK, method.getStatusCode());
+        Assert.assertFalse(new String(method.getResponseBody(), "UTF-8").contains("OutOfMemoryError"));
+    }
+
+    private void report(String operation, long startNanos) throws Exception
+    {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        String store = getExecutor().loadXWikiCfg().getProperty("xwiki.store.attachment.hint", "hibernate");
+        System.out.println(String.format("%s of %.0f MB with the [%s] attachment store: %.1f s, %.1f MB/s",
+            operation, this.content.getLength() / MB, store, seconds, this.content.getLength() / MB / seconds));
+    }
+}
@@ -20,11 +20,16 @@
 package org.xwiki.test.storage.framework;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.commons.httpclient.HttpMethod;
+import org.junit.Assert;
 import org.xwiki.test.integration.XWikiExecutor;
 
 /**
@@ -35,7 +40,8 @@
  */
 public class AbstractTest
 {
-    private static XWikiExecutor executor;
+    /** The instance of the profile run by the current thread, the profiles being run concurrently. */
+    private static final ThreadLocal<XWikiExecutor> EXECUTOR = new InheritableThreadLocal<XWikiExecutor>();
 
     /** Cached secret token. TODO cache for each user. */
     private String secretToken = null;
@@ -43,12 +49,17 @@
     /** Used so that AllTests can set the executor. */
     public static void setExecutor(final XWikiExecutor executor)
     {
-        AbstractTest.executor = executor;
+        EXECUTOR.set(executor);
+    }
+
+    protected XWikiExecutor getExecutor()
+    {
+        return EXECUTOR.get();
     }
 
     protected short getPort()
     {
-        return (short) executor.getPort();
+        return (short) EXECUTOR.get().getPort();
     }
 
     protected String getAddressPrefix()
@@ -159,4 +170,31 @@ protected String getSecretToken()
         }
         return this.secretToken;
     }
+
+    /**
+     * Execute a request several times and measure how long it takes.
+     *
+     * @param samples the number of times to execute the request
+     * @param request executes the request and returns it, its status must be 200
+     * @return the median duration of the request, in milliseconds
+     * @throws IllegalArgumentException if the number of samples isn't positive
+     * @since 3.2M3
+     */
+    protected double getMedianDuration(int samples, Callable<HttpMethod> request) throws Exception
+    {
+        if (samples <= 0) {
+            throw new IllegalArgumentException("At least one sample is needed to compute a median, got " + samples);
+        }
+
+        List<Double> durations = new ArrayList<Double>();
+        for (int i = 0; i < samples; i++) {
+            long start = System.nanoTime();
+            HttpMethod method = request.call();
+            durations.add((System.nanoTime() - start) / 1e6);
+            Assert.assertEquals(method.getURI().toString(), 200, method.getStatusCode());
+        }
+        Collections.sort(durations);
+
+        return durations.get(samples / 2);
+    }
 }
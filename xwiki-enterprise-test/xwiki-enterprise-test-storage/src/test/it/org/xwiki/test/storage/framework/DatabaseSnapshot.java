@@ -0,0 +1,183 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.storage.framework;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.PutMethod;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.xwiki.test.integration.XWikiExecutor;
+import org.xwiki.test.rest.framework.HttpTransport;
+
+/**
+ * Snapshot of the data of a running XWiki instance which can be restored to bring the wiki back to its pristine state,
+ * much faster than deleting the pages created by the tests and without restarting the wiki.
+ * <p>
+ * The tables of the database are copied to tables of the same database by a script page (see
+ * {@code DatabaseSnapshot.groovy}) which is created before the snapshot is taken, and thus survives the restores. The
+ * caches of the wiki are flushed after a restore. The files of the filesystem attachment store are kept in a snapshot
+ * directory next to the execution directory: when restoring only the files which have been modified since (size or
+ * modification date differs) are copied back and the files which have been created are deleted.
+ *
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class DatabaseSnapshot
+{
+    /** The directories of an XWiki execution directory which hold data stored outside of the database. */
+    public static final String[] DEFAULT_DIRECTORIES = new String[] {"work/storage"};
+
+    /** The space of the page running the snapshot script. */
+    private static final String SCRIPT_SPACE = "Test";
+
+    /** The page running the snapshot script. */
+    private static final String SCRIPT_PAGE = "DatabaseSnapshot";
+
+    private final XWikiExecutor executor;
+
+    private final File snapshotDirectory;
+
+    private final String[] directories;
+
+    /**
+     * @param executor the XWiki instance, it must be started to take or restore the snapshot
+     * @param snapshotDirectory where to store the snapshot of the files
+     * @param directories the directories, relative to the execution directory, to put in the snapshot
+     */
+    public DatabaseSnapshot(XWikiExecutor executor, File snapshotDirectory, String... directories)
+    {
+        this.executor = executor;
+        this.snapshotDirectory = snapshotDirectory;
+        this.directories = directories;
+    }
+
+    /**
+     * @param executor the XWiki instance, the snapshot of the files is stored next to its execution directory
+     */
+    public DatabaseSnapshot(XWikiExecutor executor)
+    {
+        this(executor, new File(executor.getExecutionDirectory() + "-snapshot"), DEFAULT_DIRECTORIES);
+    }
+
+    /** Copy the current state of the instance in the snapshot, replacing any previous snapshot. */
+    public void take() throws IOException
+    {
+        PutMethod putMethod = new PutMethod(getRestURL());
+        putMethod.setRequestEntity(new StringRequestEntity(
+            IOUtils.toString(getClass().getResourceAsStream("/DatabaseSnapshot.groovy"), "UTF-8"), "text/plain",
+            "UTF-8"));
+        int status = HttpTransport.execute(putMethod, TestUtils.ADMIN_CREDENTIALS[0], TestUtils.ADMIN_CREDENTIALS[1]);
+        if (status != HttpStatus.SC_CREATED && status != HttpStatus.SC_ACCEPTED) {
+            throw new IOException("Failed to save the snapshot script, status " + status);
+        }
+        runScript("take");
+
+        FileUtils.deleteDirectory(this.snapshotDirectory);
+        this.snapshotDirectory.mkdirs();
+
+        for (String directory : this.directories) {
+            File source = new File(this.executor.getExecutionDirectory(), directory);
+            if (source.isDirectory()) {
+                // Preserve the file dates since they're used to find the modified files when restoring.
+                FileUtils.copyDirectory(source, new File(this.snapshotDirectory, directory), true);
+            }
+        }
+    }
+
+    /**
+     * Bring the instance back to the state it had when the snapshot was taken.
+     *
+     * @return the number of files which had to be copied or deleted
+     */
+    public int restore() throws IOException
+    {
+        runScript("restore");
+
+        int changes = 0;
+        for (String directory : this.directories) {
+            changes += synchronize(new File(this.snapshotDirectory, directory),
+                new File(this.executor.getExecutionDirectory(), directory));
+        }
+
+        return changes;
+    }
+
+    private String getRestURL()
+    {
+        return String.format("http://127.0.0.1:%d/xwiki/rest/wikis/xwiki/spaces/%s/pages/%s", this.executor.getPort(),
+            SCRIPT_SPACE, SCRIPT_PAGE);
+    }
+
+    private void runScript(String mode) throws IOException
+    {
+        String url = String.format("http://127.0.0.1:%d/xwiki/bin/view/%s/%s?xpage=plain&basicauth=1&snapshot=%s",
+            this.executor.getPort(), SCRIPT_SPACE, SCRIPT_PAGE, mode);
+        HttpMethod method = TestUtils.doPost(url, TestUtils.ADMIN_CREDENTIALS, null);
+        String result = new String(method.getResponseBody(), "UTF-8");
+        if (!result.contains("snapshot " + mode + " done")) {
+            throw new IOException("Failed to " + mode + " the database snapshot: " + result);
+        }
+    }
+
+    private int synchronize(File source, File target) throws IOException
+    {
+        int changes = 0;
+
+        if (!source.exists()) {
+            if (target.exists()) {
+                FileUtils.forceDelete(target);
+                changes++;
+            }
+        } else if (source.isDirectory()) {
+            if (target.isFile()) {
+                FileUtils.forceDelete(target);
+            }
+            target.mkdirs();
+
+            Set<String> names = new HashSet<String>();
+            for (File child : source.listFiles()) {
+                names.add(child.getName());
+                changes += synchronize(child, new File(target, child.getName()));
+            }
+            for (File child : target.listFiles()) {
+                if (!names.contains(child.getName())) {
+                    FileUtils.forceDelete(child);
+                    changes++;
+                }
+            }
+        } else if (!target.isFile() || target.length() != source.length()
+            || target.lastModified() != source.lastModified()) {
+            if (target.isDirectory()) {
+                FileUtils.deleteDirectory(target);
+            }
+            FileUtils.copyFile(source, target, true);
+            changes++;
+        }
+
+        return changes;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.test.storage.framework;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.httpclient.methods.multipart.PartSource;
+
+/**
+ * Content of any size generated on the fly, to upload and check very large attachments without keeping them in
+ * memory or on disk. The byte at position {@code i} is {@code i % 251}, so that a shifted or truncated copy is
+ * detected.
+ *
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class GeneratedContent
+{
+    private static final int MODULO = 251;
+
+    private final long length;
+
+    /**
+     * @param length the number of bytes of the content
+     */
+    public GeneratedContent(long length)
+    {
+        this.length = length;
+    }
+
+    public long getLength()
+    {
+        return this.length;
+    }
+
+    /**
+     * @return a new stream on the content
+     */
+    public InputStream getInputStream()
+    {
+        return new InputStream()
+        {
+            private long position;
+
+            @Override
+            public int read()
+            {
+                if (this.position >= length) {
+                    return -1;
+                }
+
+                return (int) (this.position++ % MODULO);
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int count)
+            {
+                if (this.position >= length) {
+                    return -1;
+                }
+
+                int read = (int) Math.min(count, length - this.position);
+                for (int i = 0; i < read; i++) {
+                    buffer[offset + i] = (byte) (this.position++ % MODULO);
+                }
+
+                return read;
+            }
+        };
+    }
+
+    /**
+     * @param fileName the name of the uploaded file
+     * @return the content as the source of a multipart file upload
+     */
+    public PartSource getPartSource(final String fileName)
+    {
+        return new PartSource()
+        {
+            public long getLength()
+            {
+                return length;
+            }
+
+            public String getFileName()
+            {
+                return fileName;
+            }
+
+            public InputStream createInputStream()
+            {
+                return getInputStream();
+            }
+        };
+    }
+
+    /**
+     * Read a stream and check that it holds exactly the content.
+     *
+     * @param stream the stream to check, not closed
+     * @return {@code null} if the stream holds the content, otherwise a description of the first difference
+     * @throws IOException if the stream can't be read
+     */
+    public String check(InputStream stream) throws IOException
+    {
+        byte[] buffer = new byte[64 * 1024];
+        long position = 0;
+        for (int read = stream.read(buffer); read != -1; read = stream.read(buffer)) {
+            for (int i = 0; i < read; i++, position++) {
+                if (position >= this.length) {
+                    return "More than the expected " + this.length + " bytes";
+                }
+                if (buffer[i] != (byte) (position % MODULO)) {
+                    return "Unexpected byte at position " + position;
+                }
+            }
+        }
+
+        return position == this.length ? null : "Only " + position + " bytes out of " + this.length;
+    }
+}
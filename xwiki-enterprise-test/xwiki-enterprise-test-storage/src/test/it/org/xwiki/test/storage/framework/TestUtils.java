@@ -24,13 +24,12 @@
 import java.net.URLEncoder;
 import java.util.Map;
 
-import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpMethod;
-import org.apache.commons.httpclient.UsernamePasswordCredentials;
 import org.apache.commons.httpclient.methods.MultipartPostMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.methods.multipart.ByteArrayPartSource;
 import org.apache.commons.httpclient.methods.multipart.FilePart;
+import org.xwiki.test.rest.framework.HttpTransport;
 
 /**
  * Test saving and downloading of attachments.
@@ -54,22 +53,14 @@ public static HttpMethod doPost(final String address,
                                     final Map<String, String> parameters)
         throws IOException
     {
-        final HttpClient client = new HttpClient();
         final PostMethod method = new PostMethod(address);
 
-        if (userNameAndPassword != null && userNameAndPassword.length == 2) {
-            client.getState().setCredentials(null,
-                                             null,
-                                             new UsernamePasswordCredentials(userNameAndPassword[0],
-                                                                             userNameAndPassword[1]));
-        }
-
         if (parameters != null) {
             for (Map.Entry<String, String> e : parameters.entrySet()) {
                 method.addParameter(e.getKey(), e.getValue());
             }
         }
-        client.executeMethod(method);
+        execute(method, userNameAndPassword);
         return method;
     }
 
@@ -78,24 +69,30 @@ public static HttpMethod doUpload(final String address,
                                       final Map<String, byte[]> uploads)
         throws IOException
     {
-        final HttpClient client = new HttpClient();
         final MultipartPostMethod method = new MultipartPostMethod(address);
 
-        if (userNameAndPassword != null && userNameAndPassword.length == 2) {
-            client.getState().setCredentials(null,
-                                             null,
-                                             new UsernamePasswordCredentials(userNameAndPassword[0],
-                                                                             userNameAndPassword[1]));
-        }
-
         for (Map.Entry<String, byte[]> e : uploads.entrySet()) {
             method.addPart(new FilePart("filepath",
                            new ByteArrayPartSource(e.getKey(), e.getValue())));
         }
-        client.executeMethod(method);
+        execute(method, userNameAndPassword);
         return method;
     }
 
+    /**
+     * Execute a request through the shared HTTP transport, as guest if no credentials are given.
+     * The response body is buffered so it can be read after the connection went back to the pool.
+     */
+    private static void execute(final HttpMethod method, final String[] userNameAndPassword)
+        throws IOException
+    {
+        if (userNameAndPassword != null && userNameAndPassword.length == 2) {
+            HttpTransport.execute(method, userNameAndPassword[0], userNameAndPassword[1]);
+        } else {
+            HttpTransport.execute(method);
+        }
+    }
+
     /**
      * Encodes a given string so that it may be used as a URL component. Compatable with javascript decodeURIComponent,
      * though more strict than encodeURIComponent: all characters except [a-zA-Z0-9], '.', '-', '*', '_' are converted
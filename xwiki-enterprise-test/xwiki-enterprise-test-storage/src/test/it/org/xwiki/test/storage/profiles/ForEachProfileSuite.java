@@ -19,23 +19,36 @@
  */
 package org.xwiki.test.storage.profiles;
 
+import java.io.File;
+import java.io.StringReader;
 import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.extensions.cpsuite.ClasspathSuite;
 import org.junit.extensions.cpsuite.ClasspathClassesFinder;
 import org.junit.extensions.cpsuite.ClassTester;
+import org.junit.runner.Description;
 import org.junit.runner.Runner;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
 import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.model.InitializationError;
 import org.junit.runners.model.RunnerBuilder;
 import org.xwiki.component.annotation.Requirement;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.test.integration.XWikiExecutor;
+import org.xwiki.test.storage.framework.DatabaseSnapshot;
+import org.xwiki.test.storage.framework.PristineDatabase;
 
 /**
  * Run all tests in multiple configuration profiles and start/stop XWiki for each profile.
@@ -44,6 +57,19 @@
  *
  * Tests can be filtered by passing the "pattern" System Property.
  *
+ * The profiles are run concurrently, each one with its own XWiki instance: profile N uses executor N, and thus its own
+ * port and its own copy of the distribution unpacked for executor 0. The test events of each profile are collected
+ * and reported once all the profiles are done, one profile after the other, so that the reports are not mixed up, with
+ * the name of the profile appended to the name of each test. The profiles are run one after the other when the
+ * "parallelProfiles" System Property is false or when the database is a server (the "storage.database" System
+ * Property is mysql or pgsql) since all the instances would then share the same database. The JVM options of the
+ * XWiki instances can be set with the "xwikiOpts" System Property and properties can be added to their xwiki.cfg with
+ * the "xwikiCfg" System Property, as whitespace separated key=value pairs.
+ *
+ * The data of each wiki is saved in a {@link DatabaseSnapshot} right after its start and restored, without restarting
+ * the wiki, before each test class annotated with {@link PristineDatabase}. A shared database is also restored at the
+ * end of each profile so that the next profile starts from the same data.
+ *
  * @version $Id$
  * @since 3.0RC1
  */
@@ -51,6 +77,14 @@ public class ForEachProfileSuite extends ClasspathSuite
 {
     public static final String PATTERN = ".*" + System.getProperty("pattern", "");
 
+    /** The databases of the build which are servers, shared by all the XWiki instances. */
+    private static final List<String> SHARED_DATABASES = Arrays.asList("mysql", "pgsql");
+
+    private static final boolean SHARED_DATABASE = SHARED_DATABASES.contains(System.getProperty("storage.database"));
+
+    /** The profile run by the current thread. */
+    private final ThreadLocal<ProfileRun> currentRun = new ThreadLocal<ProfileRun>();
+
     public ForEachProfileSuite(Class<?> klass, RunnerBuilder builder) throws InitializationError
     {
         super(klass, builder);
@@ -80,75 +114,319 @@ protected List<Runner> getChildren()
     @Override
     public void run(RunNotifier notifier)
     {
-        // Get the list of test profiles.
+        // Get the list of test profiles, sorted so that each profile always gets the same executor.
         final List<Class<?>> profiles =
             new ClasspathClassesFinder(IsProfileTester.INSTANCE, "java.class.path").find();
+        Collections.sort(profiles, new Comparator<Class<?>>()
+        {
+            public int compare(Class<?> class1, Class<?> class2)
+            {
+                return class1.getName().compareTo(class2.getName());
+            }
+        });
 
-        final Map<Profile, XWikiExecutor> executorByProfile = new HashMap<Profile, XWikiExecutor>();
-        for (int i = 0; i < profiles.size(); i++) {
-            try {
-                // All executors are #0 because they will not be run in parallel.
-                executorByProfile.put(((Class<Profile>)profiles.get(i)).newInstance(),
-                                      new XWikiExecutor(0));
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to instanciate configuration profile.", e);
+        final List<ProfileRun> runs = new ArrayList<ProfileRun>();
+        try {
+            File reference = new File(new XWikiExecutor(0).getExecutionDirectory());
+            for (int i = 0; i < profiles.size(); i++) {
+                XWikiExecutor executor = new XWikiExecutor(i);
+
+                // Only the directory of executor 0 is unpacked by the build.
+                File directory = new File(executor.getExecutionDirectory());
+                if (!directory.exists()) {
+                    FileUtils.copyDirectory(reference, directory);
+                }
+
+                runs.add(new ProfileRun(((Class<Profile>) profiles.get(i)).newInstance(), executor));
             }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to instanciate configuration profile.", e);
         }
 
         // Callback to setup executors in the suite class.
+        String opts = System.getProperty("xwikiOpts");
+        String cfg = System.getProperty("xwikiCfg", "").trim();
         try {
-            for (Profile profile : executorByProfile.keySet()) {
-                profile.apply(executorByProfile.get(profile));
+            for (ProfileRun run : runs) {
+                if (opts != null && opts.trim().length() > 0) {
+                    run.executor.setOpts(opts);
+                }
+                if (cfg.length() > 0) {
+                    Properties properties = run.executor.loadXWikiCfg();
+                    properties.load(new StringReader(cfg.replaceAll("\\s+", "\n")));
+                    run.executor.saveXWikiCfg(properties);
+                }
+                run.profile.apply(run.executor);
             }
         } catch (Exception e) {
             throw new RuntimeException("Failed to initialize XWiki Executors", e);
         }
 
+        if (SHARED_DATABASE || !Boolean.valueOf(System.getProperty("parallelProfiles", "true"))) {
+            for (ProfileRun run : runs) {
+                try {
+                    run(run, run.notifier);
+                } finally {
+                    run.events.replay(notifier);
+                }
+            }
+            return;
+        }
 
-        for (final Profile profile : executorByProfile.keySet()) {
-            final XWikiExecutor executor = executorByProfile.get(profile);
-            try {
+        ExecutorService pool = Executors.newFixedThreadPool(runs.size());
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (final ProfileRun run : runs) {
+                results.add(pool.submit(new Callable<Void>()
+                {
+                    public Void call() throws Exception
+                    {
+                        run(run, run.notifier);
+
+                        return null;
+                    }
+                }));
+            }
 
+            RuntimeException error = null;
+            for (int i = 0; i < runs.size(); i++) {
                 try {
-                    executor.start();
+                    results.get(i).get();
                 } catch (Exception e) {
-                    throw new RuntimeException("Failed to start XWiki", e);
+                    if (error == null) {
+                        error = new RuntimeException("Failed to run profile " + runs.get(i).profile.getClass(), e);
+                    }
                 }
+                runs.get(i).events.replay(notifier);
+            }
+            if (error != null) {
+                throw error;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
 
-                try {
-                    Object instance = this.getTestClass().getJavaClass().newInstance();
-
-                    // If there is a field which is an XWikiExecutor type
-                    // and has an @Requirement annotation, inject the current executor.
-                    for (Field field : this.getTestClass().getJavaClass().getDeclaredFields()) {
-                        if (field.getType() == XWikiExecutor.class
-                            && field.getAnnotation(Requirement.class) != null)
-                        {
-                            field.setAccessible(true);
-                            field.set(instance, executor);
-                        }
-                    }
+    /**
+     * Start the XWiki instance of a profile, run all the tests against it and stop it.
+     */
+    private void run(ProfileRun run, RunNotifier notifier)
+    {
+        final XWikiExecutor executor = run.executor;
+        this.currentRun.set(run);
+        try {
+
+            try {
+                executor.start();
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to start XWiki", e);
+            }
 
-                    // If the class is initializable then call initialize.
-                    final Class[] interfaces = this.getTestClass().getJavaClass().getInterfaces();
-                    for (int i = 0; i < interfaces.length; i++) {
-                        if (interfaces[i] == Initializable.class) {
-                            this.getTestClass().getJavaClass().getMethod("initialize").invoke(instance);
-                        }
+            try {
+                run.snapshot.take();
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to take the database snapshot", e);
+            }
+
+            try {
+                Object instance = this.getTestClass().getJavaClass().newInstance();
+
+                // If there is a field which is an XWikiExecutor type
+                // and has an @Requirement annotation, inject the current executor.
+                for (Field field : this.getTestClass().getJavaClass().getDeclaredFields()) {
+                    if (field.getType() == XWikiExecutor.class
+                        && field.getAnnotation(Requirement.class) != null)
+                    {
+                        field.setAccessible(true);
+                        field.set(instance, executor);
                     }
+                }
 
-                } catch (Exception e) {
-                    throw new RuntimeException("Failed to prepare tests to run in config profile.", e);
+                // If the class is initializable then call initialize.
+                final Class[] interfaces = this.getTestClass().getJavaClass().getInterfaces();
+                for (int i = 0; i < interfaces.length; i++) {
+                    if (interfaces[i] == Initializable.class) {
+                        this.getTestClass().getJavaClass().getMethod("initialize").invoke(instance);
+                    }
                 }
 
-                super.run(notifier);
-            } finally {
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to prepare tests to run in config profile.", e);
+            }
+
+            super.run(notifier);
+
+            if (SHARED_DATABASE && run.modified) {
                 try {
-                    executor.stop();
+                    run.snapshot.restore();
                 } catch (Exception e) {
-                    // Squash this and let the original exception be thrown.
+                    throw new RuntimeException("Failed to reset the shared database", e);
                 }
             }
+        } finally {
+            this.currentRun.remove();
+            try {
+                executor.stop();
+            } catch (Exception e) {
+                // Squash this and let the original exception be thrown.
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void runChild(Runner runner, RunNotifier notifier)
+    {
+        ProfileRun run = this.currentRun.get();
+        Class<?> testClass = runner.getDescription().getTestClass();
+        if (run.modified && testClass != null && testClass.isAnnotationPresent(PristineDatabase.class)) {
+            try {
+                run.snapshot.restore();
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to reset the database for " + testClass.getName(), e);
+            }
+        }
+
+        run.modified = true;
+        super.runChild(runner, notifier);
+    }
+
+    /**
+     * The state of a profile being run.
+     */
+    private static class ProfileRun
+    {
+        public final Profile profile;
+
+        public final XWikiExecutor executor;
+
+        /** The pristine state of the wiki. */
+        public final DatabaseSnapshot snapshot;
+
+        /** The test events, reported once all the profiles are done. */
+        public final RecordingListener events;
+
+        /** Notifies the tests of this profile to {@link #events}. */
+        public final RunNotifier notifier = new RunNotifier();
+
+        /** True if tests have been run since the snapshot was taken or last restored. */
+        public boolean modified;
+
+        public ProfileRun(Profile profile, XWikiExecutor executor)
+        {
+            this.profile = profile;
+            this.executor = executor;
+            this.snapshot = new DatabaseSnapshot(executor);
+            this.events = new RecordingListener(profile.getClass().getSimpleName());
+            this.notifier.addListener(this.events);
+        }
+    }
+
+    /**
+     * A test event which can be fired on a notifier.
+     */
+    private interface Event
+    {
+        void fire(RunNotifier notifier);
+    }
+
+    /**
+     * Keep the test events of a profile to fire them later on another notifier, the name of the profile being appended
+     * to the name of the tests so that each profile is reported separately.
+     */
+    private static class RecordingListener extends RunListener
+    {
+        private final List<Event> events = new ArrayList<Event>();
+
+        private final String profileName;
+
+        public RecordingListener(String profileName)
+        {
+            this.profileName = profileName;
+        }
+
+        @Override
+        public void testStarted(final Description description)
+        {
+            this.events.add(new Event()
+            {
+                public void fire(RunNotifier notifier)
+                {
+                    notifier.fireTestStarted(inProfile(description));
+                }
+            });
+        }
+
+        @Override
+        public void testFinished(final Description description)
+        {
+            this.events.add(new Event()
+            {
+                public void fire(RunNotifier notifier)
+                {
+                    notifier.fireTestFinished(inProfile(description));
+                }
+            });
+        }
+
+        @Override
+        public void testFailure(final Failure failure)
+        {
+            this.events.add(new Event()
+            {
+                public void fire(RunNotifier notifier)
+                {
+                    notifier.fireTestFailure(inProfile(failure));
+                }
+            });
+        }
+
+        @Override
+        public void testAssumptionFailure(final Failure failure)
+        {
+            this.events.add(new Event()
+            {
+                public void fire(RunNotifier notifier)
+                {
+                    notifier.fireTestAssumptionFailed(inProfile(failure));
+                }
+            });
+        }
+
+        @Override
+        public void testIgnored(final Description description)
+        {
+            this.events.add(new Event()
+            {
+                public void fire(RunNotifier notifier)
+                {
+                    notifier.fireTestIgnored(inProfile(description));
+                }
+            });
+        }
+
+        private Description inProfile(Description description)
+        {
+            if (description.getMethodName() == null) {
+                return description;
+            }
+
+            return Description.createTestDescription(description.getTestClass(),
+                description.getMethodName() + " [" + this.profileName + "]");
+        }
+
+        private Failure inProfile(Failure failure)
+        {
+            return new Failure(inProfile(failure.getDescription()), failure.getException());
+        }
+
+        public void replay(RunNotifier notifier)
+        {
+            for (Event event : this.events) {
+                event.fire(notifier);
+            }
         }
     }
 
@@ -0,0 +1,96 @@
+{{groovy}}
+// Takes (snapshot=take) or restores (snapshot=restore) a copy of all the tables of the wiki database, kept in
+// SNAPSHOT_* tables of the same database. Used by DatabaseSnapshot to reset the wiki without restarting it.
+def prefix = 'SNAPSHOT_'
+def mode = request.snapshot
+def context = xcontext.context
+def store = context.wiki.hibernateStore
+
+store.beginTransaction(context)
+def commit = false
+try {
+  def connection = store.getSession(context).connection()
+  def metaData = connection.metaData
+  def database = metaData.databaseProductName
+  // How to create a copy of a table with its rows.
+  def copy
+  if (database.startsWith('HSQL')) {
+    // HSQLDB 1.8 doesn't support CREATE TABLE ... AS.
+    copy = { source, target -> ["SELECT * INTO ${target} FROM ${source}"] }
+  } else if (database.startsWith('Apache Derby')) {
+    // Derby only creates empty tables from a query.
+    copy = { source, target ->
+      ["CREATE TABLE ${target} AS SELECT * FROM ${source} WITH NO DATA",
+        "INSERT INTO ${target} SELECT * FROM ${source}"]
+    }
+  } else if (['MySQL', 'PostgreSQL', 'H2'].any { database.startsWith(it) }) {
+    copy = { source, target -> ["CREATE TABLE ${target} AS SELECT * FROM ${source}"] }
+  } else {
+    throw new UnsupportedOperationException("No database snapshot for ${database}")
+  }
+
+  def tables = []
+  def snapshots = []
+  def resultSet = metaData.getTables(connection.catalog, null, '%', ['TABLE'] as String[])
+  while (resultSet.next()) {
+    def table = [schema: resultSet.getString('TABLE_SCHEM'), name: resultSet.getString('TABLE_NAME')]
+    (table.name.toUpperCase().startsWith(prefix) ? snapshots : tables).add(table)
+  }
+  resultSet.close()
+
+  // Sort the tables so that the tables referenced by foreign keys come before the tables referencing them, no
+  // constraint having to be disabled (which requires a superuser on PostgreSQL).
+  def parents = [:]
+  tables.each { table ->
+    def keys = metaData.getImportedKeys(connection.catalog, table.schema, table.name)
+    parents[table.name] = []
+    while (keys.next()) {
+      def parent = keys.getString('PKTABLE_NAME')
+      if (!parent.equalsIgnoreCase(table.name)) {
+        parents[table.name].add(parent)
+      }
+    }
+    keys.close()
+  }
+  def sorted = []
+  def visiting = [] as Set
+  def visit
+  visit = { name ->
+    // A cycle of foreign keys can't be ordered, its tables are left in the order they're reached.
+    if (!sorted.contains(name) && visiting.add(name)) {
+      parents[name].each { parent -> if (parents.containsKey(parent)) visit(parent) }
+      sorted.add(name)
+    }
+  }
+  tables.each { visit(it.name) }
+
+  def statement = connection.createStatement()
+  try {
+    if (mode == 'take') {
+      snapshots.each { statement.execute("DROP TABLE ${it.name}".toString()) }
+      sorted.each { table -> copy(table, prefix + table).each { statement.execute(it.toString()) } }
+    } else if (mode == 'restore') {
+      sorted.reverse().each { statement.execute("DELETE FROM ${it}".toString()) }
+      sorted.each { table ->
+        // Tables created after the snapshot are only emptied.
+        if (snapshots.find { it.name.equalsIgnoreCase(prefix + table) }) {
+          statement.execute("INSERT INTO ${table} SELECT * FROM ${prefix}${table}".toString())
+        }
+      }
+    } else {
+      throw new IllegalArgumentException("Unknown snapshot mode ${mode}")
+    }
+  } finally {
+    statement.close()
+  }
+  commit = true
+} finally {
+  store.endTransaction(context, commit)
+}
+
+if (mode == 'restore') {
+  // The documents, the rights and the groups are cached.
+  xwiki.flushCache()
+}
+println "snapshot ${mode} done"
+{{/groovy}}
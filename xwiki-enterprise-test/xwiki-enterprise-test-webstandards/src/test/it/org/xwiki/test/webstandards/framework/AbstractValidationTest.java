@@ -193,7 +193,16 @@ protected static void addXarFiles(Class< ? extends AbstractValidationTest> valid
         }
     }
 
-    protected static List<DocumentReference> readXarContents(String fileName, String patternFilter) throws Exception
+    /**
+     * Also used by the memory footprint tests to browse the same documents.
+     * 
+     * @param fileName the path of the XAR
+     * @param patternFilter the regular expression the full names of the documents must match, {@code null} to keep
+     *            them all
+     * @return the references of the documents listed in the package.xml of the XAR
+     * @throws Exception if the XAR cannot be read
+     */
+    public static List<DocumentReference> readXarContents(String fileName, String patternFilter) throws Exception
     {
         FileInputStream fileIS = new FileInputStream(fileName);
         ZipInputStream zipIS = new ZipInputStream(fileIS);
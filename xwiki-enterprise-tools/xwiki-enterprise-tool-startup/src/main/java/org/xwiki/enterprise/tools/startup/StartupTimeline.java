@@ -0,0 +1,153 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.enterprise.tools.startup;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Startup timeline of XWiki: the end of each startup phase, in milliseconds since the start of the JVM, and the
+ * breakdown of the first request (which initializes XWiki). The phases are marked in the order they end:
+ * <ul>
+ * <li>{@code jetty}: Jetty is started and has deployed the webapp (the expanded WAR of the distributions isn't
+ * unpacked), marked when {@code WEB-INF/jetty-web.xml} is applied</li>
+ * <li>{@code componentManager}: the context listeners of {@code web.xml} have initialized the component manager, see
+ * {@link StartupTimelineListener}</li>
+ * <li>{@code firstRequestReceived} and {@code firstRequest}: the first request has been received and served, see
+ * {@link StartupTimelineFilter}</li>
+ * </ul>
+ * Once the first request is served, the timeline is logged and written to the file given by the
+ * {@value #FILE_PROPERTY} system property ({@value #DEFAULT_FILE} by default) as properties: {@code <phase>.end} and
+ * {@code <phase>.duration} for each phase, {@code firstRequest.<part>} for the breakdown of the first request and
+ * {@code total} for the whole cold start.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public final class StartupTimeline
+{
+    /** System property of the file the timeline is written to. */
+    public static final String FILE_PROPERTY = "xwiki.startup.timeline.file";
+
+    /** Default file the timeline is written to, in the work directory of the distributions. */
+    public static final String DEFAULT_FILE = "work/startup-timeline.properties";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StartupTimeline.class);
+
+    /** End of each phase, in the order they ended. */
+    private static final Map<String, Long> PHASES = new LinkedHashMap<String, Long>();
+
+    /** Breakdown of the first request, by part. */
+    private static final Map<String, Long> FIRST_REQUEST = new LinkedHashMap<String, Long>();
+
+    /** The plugins listed in {@code xwiki.cfg}, in the order they're initialized. */
+    private static List<String> plugins = Collections.emptyList();
+
+    private StartupTimeline()
+    {
+    }
+
+    /**
+     * Mark the end of a phase, unless it already ended.
+     * 
+     * @param phase the phase
+     */
+    public static synchronized void mark(String phase)
+    {
+        if (!PHASES.containsKey(phase)) {
+            PHASES.put(phase, System.currentTimeMillis() - getJVMStartTime());
+        }
+    }
+
+    /**
+     * @return the plugins listed in {@code xwiki.cfg}, in the order they're initialized
+     */
+    public static synchronized List<String> getPlugins()
+    {
+        return plugins;
+    }
+
+    /**
+     * @param plugins the plugins listed in {@code xwiki.cfg}, in the order they're initialized
+     */
+    public static synchronized void setPlugins(List<String> plugins)
+    {
+        StartupTimeline.plugins = Collections.unmodifiableList(new ArrayList<String>(plugins));
+    }
+
+    /**
+     * Mark the end of the first request, then log and write the timeline.
+     * 
+     * @param breakdown the time spent in each part of the first request, in milliseconds
+     */
+    public static synchronized void endFirstRequest(Map<String, Long> breakdown)
+    {
+        mark(StartupTimelineFilter.FIRST_REQUEST);
+        FIRST_REQUEST.putAll(breakdown);
+
+        StringBuilder log = new StringBuilder("Startup timeline, in milliseconds since the start of the JVM:");
+        String file = System.getProperty(FILE_PROPERTY, DEFAULT_FILE);
+        try {
+            new File(file).getAbsoluteFile().getParentFile().mkdirs();
+            PrintStream output = new PrintStream(file, "UTF-8");
+            try {
+                output.println("# Startup timeline of XWiki: end and duration of each phase in milliseconds since the"
+                    + " start of the JVM,");
+                output.println("# then the time spent in each part of the first request (which initializes XWiki)");
+                output.println("jvm.start=" + getJVMStartTime());
+                long previous = 0;
+                for (Map.Entry<String, Long> phase : PHASES.entrySet()) {
+                    long duration = phase.getValue() - previous;
+                    previous = phase.getValue();
+                    output.println(String.format("%s.end=%d", phase.getKey(), phase.getValue()));
+                    output.println(String.format("%s.duration=%d", phase.getKey(), duration));
+                    log.append(String.format("%n  %-40s %8d %+8d", phase.getKey(), phase.getValue(), duration));
+                }
+                for (Map.Entry<String, Long> part : FIRST_REQUEST.entrySet()) {
+                    output.println(String.format("%s.%s=%d", StartupTimelineFilter.FIRST_REQUEST, part.getKey(),
+                        part.getValue()));
+                    log.append(String.format("%n    %-38s %17d", part.getKey(), part.getValue()));
+                }
+                output.println("total=" + previous);
+                log.append(String.format("%nTotal cold start: %d ms, written to %s", previous, file));
+            } finally {
+                output.close();
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Failed to write the startup timeline to [" + file + "]", e);
+        }
+
+        LOGGER.info(log.toString());
+    }
+
+    private static long getJVMStartTime()
+    {
+        return ManagementFactory.getRuntimeMXBean().getStartTime();
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.enterprise.tools.startup;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+/**
+ * Marks the reception and the end of the first request in the {@link StartupTimeline}. The first request initializes
+ * XWiki, so its thread is sampled while it's served to break it down: the samples are attributed to the build of the
+ * Hibernate session factory, to the plugin being initialized (the Lucene and scheduler plugins start their threads
+ * when initialized), or to the rest of the request. The sampling interval is given in milliseconds by the
+ * {@value #INTERVAL_PROPERTY} system property.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class StartupTimelineFilter implements Filter
+{
+    /** The phase of the timeline ending with the first request. */
+    public static final String FIRST_REQUEST = "firstRequest";
+
+    /** System property of the sampling interval, in milliseconds. */
+    public static final String INTERVAL_PROPERTY = "xwiki.startup.timeline.interval";
+
+    private static final String HIBERNATE_CONFIGURATION = "org.hibernate.cfg.Configuration";
+
+    private static final String BUILD_SESSION_FACTORY = "buildSessionFactory";
+
+    private final AtomicBoolean firstRequest = new AtomicBoolean(true);
+
+    /**
+     * {@inheritDoc}
+     */
+    public void init(FilterConfig filterConfig)
+    {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException,
+        ServletException
+    {
+        if (!this.firstRequest.compareAndSet(true, false)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        StartupTimeline.mark("firstRequestReceived");
+        Sampler sampler = new Sampler(Thread.currentThread(), StartupTimeline.getPlugins(),
+            Long.getLong(INTERVAL_PROPERTY, 5));
+        Thread samplerThread = new Thread(sampler, "XWiki startup timeline sampler");
+        samplerThread.setDaemon(true);
+        samplerThread.start();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            samplerThread.interrupt();
+            try {
+                samplerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            StartupTimeline.endFirstRequest(sampler.getBreakdown());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void destroy()
+    {
+    }
+
+    /**
+     * Samples the stack of a thread until interrupted, and attributes the time between two samples to the part of the
+     * request found in the stack.
+     */
+    private static class Sampler implements Runnable
+    {
+        private static final String HIBERNATE = "hibernate";
+
+        private static final String OTHER = "other";
+
+        private final Thread thread;
+
+        private final Set<String> plugins;
+
+        private final long interval;
+
+        /** Nanoseconds spent in each part, the plugins in the order they're initialized. */
+        private final Map<String, Long> breakdown = new LinkedHashMap<String, Long>();
+
+        /**
+         * @param thread the sampled thread
+         * @param plugins the class names of the plugins
+         * @param interval the sampling interval, in milliseconds
+         */
+        Sampler(Thread thread, List<String> plugins, long interval)
+        {
+            this.thread = thread;
+            this.plugins = new HashSet<String>(plugins);
+            this.interval = interval;
+            this.breakdown.put(HIBERNATE, 0L);
+            for (String plugin : plugins) {
+                this.breakdown.put("plugin." + plugin, 0L);
+            }
+            this.breakdown.put(OTHER, 0L);
+        }
+
+        public void run()
+        {
+            long previous = System.nanoTime();
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(this.interval);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                String part = getPart(this.thread.getStackTrace());
+                long now = System.nanoTime();
+                synchronized (this.breakdown) {
+                    this.breakdown.put(part, this.breakdown.get(part) + now - previous);
+                }
+                previous = now;
+            }
+        }
+
+        /**
+         * @param stack a stack of the sampled thread
+         * @return the part of the request the stack belongs to: the build of the Hibernate session factory, else the
+         *         outermost plugin in the stack, else other
+         */
+        private String getPart(StackTraceElement[] stack)
+        {
+            String plugin = null;
+            for (int i = stack.length - 1; i >= 0; i--) {
+                String className = stack[i].getClassName();
+                if (HIBERNATE_CONFIGURATION.equals(className)
+                    && BUILD_SESSION_FACTORY.equals(stack[i].getMethodName())) {
+                    return HIBERNATE;
+                }
+                if (plugin == null && this.plugins.contains(className)) {
+                    plugin = "plugin." + className;
+                }
+            }
+
+            return plugin != null ? plugin : OTHER;
+        }
+
+        /**
+         * @return the milliseconds spent in each part of the request
+         */
+        Map<String, Long> getBreakdown()
+        {
+            Map<String, Long> milliseconds = new LinkedHashMap<String, Long>();
+            synchronized (this.breakdown) {
+                for (Map.Entry<String, Long> part : this.breakdown.entrySet()) {
+                    milliseconds.put(part.getKey(), part.getValue() / 1000000);
+                }
+            }
+
+            return milliseconds;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.enterprise.tools.startup;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Properties;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Marks the end of the {@code componentManager} phase of the {@link StartupTimeline}. Added to the webapp by
+ * {@code WEB-INF/jetty-web.xml}, which Jetty applies after {@code web.xml}: this listener is thus called after the
+ * listeners of {@code web.xml}, which initialize the component manager. It also reads the plugins from
+ * {@code xwiki.cfg}, to break the first request down by plugin.
+ * 
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class StartupTimelineListener implements ServletContextListener
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(StartupTimelineListener.class);
+
+    /**
+     * {@inheritDoc}
+     */
+    public void contextInitialized(ServletContextEvent event)
+    {
+        StartupTimeline.mark("componentManager");
+
+        try {
+            InputStream input = event.getServletContext().getResourceAsStream("/WEB-INF/xwiki.cfg");
+            if (input != null) {
+                Properties configuration = new Properties();
+                try {
+                    configuration.load(input);
+                } finally {
+                    input.close();
+                }
+                String plugins = configuration.getProperty("xwiki.plugins", "").trim();
+                if (plugins.length() > 0) {
+                    StartupTimeline.setPlugins(Arrays.asList(plugins.split("[\\s,]+")));
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Failed to read the plugins from xwiki.cfg, the first request won't be broken down by plugin",
+                e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void contextDestroyed(ServletContextEvent event)
+    {
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.enterprise.tools.webresources;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Writes a gzip compressed copy ({@code <resource>.gz}) next to the static text resources of an exploded WAR, so that
+ * the servlet container sends the copy as is to the browsers accepting gzip instead of compressing the resource on
+ * every request (see the {@code gzip} parameter of Jetty's DefaultServlet). The copies which aren't significantly
+ * smaller than their resource are removed, and the copies which are up to date are kept from the previous build. A
+ * report of the sizes by group of resources is printed once done.
+ * <p>
+ * The exploded WAR directory is passed as first argument, followed by {@code key=value} configuration entries, see
+ * {@link #DEFAULTS}.
+ *
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class PreCompressor
+{
+    /** The default configuration. */
+    public static final Properties DEFAULTS = new Properties();
+
+    static {
+        // Comma separated extensions of the resources to compress
+        DEFAULTS.setProperty("extensions", "js,css,html,htm");
+        // Comma separated directories of the WAR holding the resources served as is by the container
+        DEFAULTS.setProperty("directories", "skins,resources");
+        // Resources smaller than this (in bytes) aren't worth compressing
+        DEFAULTS.setProperty("minSize", "256");
+        // A copy is kept only if its size is at most this ratio of the size of the resource
+        DEFAULTS.setProperty("maxRatio", "0.9");
+        // Comma separated path prefixes under which the sizes are reported, the longest matching prefix being used
+        DEFAULTS.setProperty("groups", "skins/colibri,skins/albatross,skins/toucan,resources/js/smartclient,"
+            + "resources/js/xwiki/wysiwyg");
+        // Number of largest resources listed by the report
+        DEFAULTS.setProperty("largest", "10");
+        DEFAULTS.setProperty("threads", String.valueOf(Runtime.getRuntime().availableProcessors()));
+        // File the report is also written to, empty to only print it
+        DEFAULTS.setProperty("report", "");
+    }
+
+    private static final String GZ = ".gz";
+
+    private static final String OTHER = "other";
+
+    private final Properties configuration;
+
+    /**
+     * @param configuration the configuration, see {@link #DEFAULTS}
+     */
+    public PreCompressor(Properties configuration)
+    {
+        this.configuration = new Properties(DEFAULTS);
+        this.configuration.putAll(configuration);
+    }
+
+    /**
+     * @param args the exploded WAR directory, followed by {@code key=value} configuration entries
+     */
+    public static void main(String[] args)
+    {
+        Properties configuration = new Properties();
+        for (int i = 1; i < args.length; i++) {
+            int separator = args[i].indexOf('=');
+            configuration.setProperty(args[i].substring(0, separator).trim(), args[i].substring(separator + 1).trim());
+        }
+
+        try {
+            long start = System.currentTimeMillis();
+            PreCompressor compressor = new PreCompressor(configuration);
+            List<Resource> resources = compressor.compress(new File(args[0]));
+            compressor.report(resources);
+            int compressed = 0;
+            for (Resource resource : resources) {
+                if (resource.getSentSize() < resource.getSize()) {
+                    compressed++;
+                }
+            }
+            System.out.println(String.format("Pre-compressed %d of %d resources in %d ms", compressed,
+                resources.size(), System.currentTimeMillis() - start));
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Compress the resources of the WAR which don't have an up to date compressed copy yet.
+     *
+     * @param warDirectory the exploded WAR
+     * @return the compressible resources of the WAR, with the size of their compressed copy
+     * @throws Exception if a resource can't be compressed
+     */
+    public List<Resource> compress(File warDirectory) throws Exception
+    {
+        String[] extensions = this.configuration.getProperty("extensions").split("\\s*,\\s*");
+        final long minSize = Long.parseLong(this.configuration.getProperty("minSize"));
+        final double maxRatio = Double.parseDouble(this.configuration.getProperty("maxRatio"));
+
+        List<Callable<Resource>> tasks = new ArrayList<Callable<Resource>>();
+        for (String directory : this.configuration.getProperty("directories").split("\\s*,\\s*")) {
+            File root = new File(warDirectory, directory);
+            if (!root.isDirectory()) {
+                continue;
+            }
+            for (final File file : FileUtils.listFiles(root, extensions, true)) {
+                final String path = getRelativePath(warDirectory, file);
+                tasks.add(new Callable<Resource>()
+                {
+                    public Resource call() throws IOException
+                    {
+                        return compress(file, path, minSize, maxRatio);
+                    }
+                });
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Integer.parseInt(this.configuration
+            .getProperty("threads")));
+        try {
+            List<Resource> resources = new ArrayList<Resource>();
+            for (Future<Resource> result : pool.invokeAll(tasks)) {
+                resources.add(result.get());
+            }
+            return resources;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private Resource compress(File file, String path, long minSize, double maxRatio) throws IOException
+    {
+        File copy = new File(file.getPath() + GZ);
+        if (file.length() < minSize) {
+            copy.delete();
+            return new Resource(path, file.length(), -1);
+        }
+
+        // The copy has the date of the resource, thus it's up to date as long as the resource isn't modified.
+        if (!copy.exists() || copy.lastModified() != file.lastModified()) {
+            InputStream input = new FileInputStream(file);
+            try {
+                OutputStream output = new BestGZIPOutputStream(new FileOutputStream(copy));
+                try {
+                    IOUtils.copy(input, output);
+                } finally {
+                    output.close();
+                }
+            } finally {
+                input.close();
+            }
+            copy.setLastModified(file.lastModified());
+        }
+
+        if (copy.length() > file.length() * maxRatio) {
+            copy.delete();
+            return new Resource(path, file.length(), -1);
+        }
+
+        return new Resource(path, file.length(), copy.length());
+    }
+
+    /**
+     * Print the sizes of the resources and of their compressed copies, by group of resources, and the largest
+     * resources.
+     *
+     * @param resources the compressible resources
+     * @throws IOException if the report file can't be written
+     */
+    public void report(List<Resource> resources) throws IOException
+    {
+        List<String> groups = Arrays.asList(this.configuration.getProperty("groups").split("\\s*,\\s*"));
+        Map<String, long[]> totals = new LinkedHashMap<String, long[]>();
+        for (String group : groups) {
+            totals.put(group, new long[3]);
+        }
+        totals.put(OTHER, new long[3]);
+        long[] total = new long[3];
+        for (Resource resource : resources) {
+            String resourceGroup = OTHER;
+            for (String group : groups) {
+                if (resource.getPath().startsWith(group + '/') && group.length() > resourceGroup.length()) {
+                    resourceGroup = group;
+                }
+            }
+            add(totals.get(resourceGroup), resource);
+            add(total, resource);
+        }
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-40s %6s %12s %12s %7s%n", "group", "files", "size (KB)", "sent (KB)", "ratio"));
+        for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+            appendLine(report, entry.getKey(), entry.getValue());
+        }
+        appendLine(report, "total", total);
+
+        List<Resource> largest = new ArrayList<Resource>(resources);
+        Collections.sort(largest, new Comparator<Resource>()
+        {
+            public int compare(Resource resource1, Resource resource2)
+            {
+                return Long.valueOf(resource2.getSize()).compareTo(resource1.getSize());
+            }
+        });
+        report.append(String.format("%nLargest resources:%n"));
+        for (Resource resource : largest.subList(0, Math.min(largest.size(),
+            Integer.parseInt(this.configuration.getProperty("largest"))))) {
+            report.append(String.format(Locale.ROOT, "%-60s %,10d -> %,10d%n", resource.getPath(),
+                resource.getSize(), resource.getSentSize()));
+        }
+
+        System.out.print(report);
+        String reportPath = this.configuration.getProperty("report");
+        if (reportPath.length() > 0) {
+            PrintStream output = new PrintStream(new File(reportPath), "UTF-8");
+            try {
+                output.print(report);
+            } finally {
+                output.close();
+            }
+        }
+    }
+
+    /**
+     * @param totals the number of resources, their size and the size sent to browsers accepting gzip
+     * @param resource the resource to add to the totals
+     */
+    private void add(long[] totals, Resource resource)
+    {
+        totals[0]++;
+        totals[1] += resource.getSize();
+        totals[2] += resource.getSentSize();
+    }
+
+    private void appendLine(StringBuilder report, String group, long[] totals)
+    {
+        report.append(String.format(Locale.ROOT, "%-40s %6d %,12d %,12d %6.1f%%%n", group, totals[0],
+            totals[1] / 1024, totals[2] / 1024, totals[1] == 0 ? 100.0 : 100.0 * totals[2] / totals[1]));
+    }
+
+    private static String getRelativePath(File directory, File file)
+    {
+        return file.getAbsolutePath().substring(directory.getAbsolutePath().length() + 1)
+            .replace(File.separatorChar, '/');
+    }
+
+    /**
+     * A compressible resource of the WAR.
+     */
+    public static class Resource
+    {
+        private final String path;
+
+        private final long size;
+
+        private final long compressedSize;
+
+        /**
+         * @param path the path of the resource in the WAR
+         * @param size the size of the resource
+         * @param compressedSize the size of its compressed copy, -1 if it has none
+         */
+        public Resource(String path, long size, long compressedSize)
+        {
+            this.path = path;
+            this.size = size;
+            this.compressedSize = compressedSize;
+        }
+
+        /**
+         * @return the path of the resource in the WAR, using / as separator
+         */
+        public String getPath()
+        {
+            return this.path;
+        }
+
+        /**
+         * @return the size of the resource
+         */
+        public long getSize()
+        {
+            return this.size;
+        }
+
+        /**
+         * @return the size sent to the browsers accepting gzip: the size of the compressed copy if there's one, the
+         *         size of the resource otherwise
+         */
+        public long getSentSize()
+        {
+            return this.compressedSize < 0 ? this.size : this.compressedSize;
+        }
+    }
+
+    /**
+     * Compresses with the best compression level: the resources are compressed once for all the requests.
+     */
+    private static class BestGZIPOutputStream extends GZIPOutputStream
+    {
+        BestGZIPOutputStream(OutputStream output) throws IOException
+        {
+            super(output);
+            this.def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+    }
+}
@@ -0,0 +1,571 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.enterprise.tools.webresources;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.mozilla.javascript.ErrorReporter;
+import org.mozilla.javascript.EvaluatorException;
+
+import com.yahoo.platform.yui.compressor.CssCompressor;
+import com.yahoo.platform.yui.compressor.JavaScriptCompressor;
+
+/**
+ * Aggregates and minifies the static JavaScript and CSS files referenced by the templates of the skins which write the
+ * head of the pages ({@code javascripts.vm} and {@code stylesheets.vm}), so that a page loads a few bundles instead of
+ * dozens of files. Each run of consecutive {@code <script>} or {@code <link>} tags referencing static files (i.e.
+ * {@code $xwiki.getSkinFile('path')} without evaluation) becomes a bundle named after the hash of its content, so
+ * that it can be cached forever by the browsers. The runs inside Velocity blocks or conditional comments are left as
+ * is, and so are the CSS files using {@code @import}.
+ * <p>
+ * The templates are copied in the skin directory (overriding the ones of the {@code templates} directory), each
+ * bundled run being replaced by a switch between the tag of the bundle and the original tags: the bundles are used
+ * unless the {@code xwiki.skin.bundles} parameter of {@code xwiki.cfg} is 0, or the request has a {@code bundles=0}
+ * parameter (to debug the original files).
+ * <p>
+ * The exploded WAR directory is passed as first argument, followed by {@code key=value} configuration entries, see
+ * {@link #DEFAULTS}.
+ *
+ * @version $Id$
+ * @since 3.2M3
+ */
+public class SkinBundler
+{
+    /** The default configuration. */
+    public static final Properties DEFAULTS = new Properties();
+
+    static {
+        // Comma separated skins to bundle, from the skins directory of the WAR
+        DEFAULTS.setProperty("skins", "colibri,albatross,toucan");
+        // Comma separated templates referencing the files to bundle, looked for in the skin then in the templates
+        // directory of the WAR
+        DEFAULTS.setProperty("templates", "javascripts.vm,stylesheets.vm");
+        // Directory the generated files are also written to, laid out as the WAR, empty for none. The WAR plugin
+        // copies its web resources again when packaging the WAR, so they must include this directory.
+        DEFAULTS.setProperty("output", "");
+        // File the report is also written to, empty to only print it
+        DEFAULTS.setProperty("report", "");
+    }
+
+    private static final String ENCODING = "UTF-8";
+
+    private static final String SKINS = "skins/";
+
+    private static final String BUNDLES = "bundles";
+
+    private static final String CSS = "css";
+
+    /** A file referenced by a template through {@code $xwiki.getSkinFile}, with its optional second argument. */
+    private static final Pattern SKIN_FILE =
+        Pattern.compile("\\$!?\\{?xwiki\\.getSkinFile\\(\\s*['\"]([^'\"]+)['\"]\\s*(?:,\\s*(\\w+)\\s*)?\\)\\}?");
+
+    private static final Pattern SCRIPT =
+        Pattern.compile("^\\s*<script\\b[^>]*\\bsrc=\"([^\"]+)\"[^>]*>\\s*</script>\\s*$", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern STYLESHEET = Pattern.compile(
+        "^\\s*<link\\b(?=[^>]*\\brel=\"stylesheet\")[^>]*\\bhref=\"([^\"]+)\"[^>]*>\\s*$", Pattern.CASE_INSENSITIVE);
+
+    /** Velocity directives opening and closing blocks, and conditional comments. */
+    private static final Pattern BLOCK =
+        Pattern.compile("#\\{?(if|foreach|macro|define|end)\\b|<!--\\[if|<!\\[endif\\]");
+
+    private static final Pattern IMPORT = Pattern.compile("@import\\b|@charset\\b");
+
+    private static final Pattern CSS_URL = Pattern.compile("url\\(\\s*(['\"]?)([^'\")]+)\\1\\s*\\)");
+
+    private static final Pattern ABSOLUTE_URL = Pattern.compile("^(/|#|[a-zA-Z][\\w+.-]*:).*");
+
+    private final Properties configuration;
+
+    /**
+     * @param configuration the configuration, see {@link #DEFAULTS}
+     */
+    public SkinBundler(Properties configuration)
+    {
+        this.configuration = new Properties(DEFAULTS);
+        this.configuration.putAll(configuration);
+    }
+
+    /**
+     * @param args the exploded WAR directory, followed by {@code key=value} configuration entries
+     */
+    public static void main(String[] args)
+    {
+        Properties configuration = new Properties();
+        for (int i = 1; i < args.length; i++) {
+            int separator = args[i].indexOf('=');
+            configuration.setProperty(args[i].substring(0, separator).trim(), args[i].substring(separator + 1).trim());
+        }
+
+        try {
+            long start = System.currentTimeMillis();
+            SkinBundler bundler = new SkinBundler(configuration);
+            List<TemplateReport> reports = bundler.bundle(new File(args[0]));
+            bundler.report(reports);
+            System.out.println(String.format("Bundled %d templates in %d ms", reports.size(),
+                System.currentTimeMillis() - start));
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Bundle the files referenced by the templates of all the skins.
+     *
+     * @param warDirectory the exploded WAR
+     * @return the request counts and sizes of the bundled templates, before and after
+     * @throws Exception if a template or a bundle can't be read or written
+     */
+    public List<TemplateReport> bundle(File warDirectory) throws Exception
+    {
+        List<TemplateReport> reports = new ArrayList<TemplateReport>();
+        for (String skin : this.configuration.getProperty("skins").split("\\s*,\\s*")) {
+            if (!new File(warDirectory, SKINS + skin).isDirectory()) {
+                continue;
+            }
+            for (String template : this.configuration.getProperty("templates").split("\\s*,\\s*")) {
+                File file = new File(warDirectory, SKINS + skin + '/' + template);
+                if (!file.exists()) {
+                    file = new File(warDirectory, "templates/" + template);
+                }
+                if (file.exists()) {
+                    reports.add(bundle(warDirectory, skin, template, FileUtils.readLines(file, ENCODING)));
+                }
+            }
+        }
+
+        return reports;
+    }
+
+    private TemplateReport bundle(File warDirectory, String skin, String template, List<String> lines)
+        throws Exception
+    {
+        TemplateReport report = new TemplateReport(skin, template);
+        List<String> output = new ArrayList<String>();
+        output.add("## Generated when the WAR was built: the runs of static files are replaced by their bundle,");
+        output.add("## unless xwiki.skin.bundles is 0 in xwiki.cfg or the request has bundles=0.");
+        output.add("#set ($skinBundles = (\"$!xwiki.Param('xwiki.skin.bundles')\" != '0')"
+            + " && (\"$!request.bundles\" != '0'))");
+
+        // The references of the current run and the lines they span.
+        List<Reference> run = new ArrayList<Reference>();
+        List<String> runLines = new LinkedList<String>();
+        int depth = 0;
+        for (String line : lines) {
+            Reference reference = depth == 0 ? parse(warDirectory, skin, line) : null;
+            if (reference != null) {
+                report.addReference(reference.file);
+            } else if (depth == 0 && SKIN_FILE.matcher(line).find()) {
+                report.addReference(null);
+            }
+
+            if (reference != null && (run.isEmpty() || run.get(0).tag.equals(reference.tag))) {
+                run.add(reference);
+                runLines.add(line);
+            } else if (reference == null && !run.isEmpty() && line.trim().length() == 0) {
+                runLines.add(line);
+            } else {
+                flush(warDirectory, skin, template, run, runLines, output, report);
+                if (reference != null) {
+                    run.add(reference);
+                    runLines.add(line);
+                } else {
+                    output.add(line);
+                }
+            }
+
+            if (!line.trim().startsWith("##")) {
+                Matcher matcher = BLOCK.matcher(line);
+                while (matcher.find()) {
+                    depth += "end".equals(matcher.group(1)) || matcher.group().startsWith("<![") ? -1 : 1;
+                }
+            }
+        }
+        flush(warDirectory, skin, template, run, runLines, output, report);
+
+        if (report.getBundles() > 0) {
+            write(warDirectory, SKINS + skin + '/' + template, join(output, "\n").getBytes(ENCODING));
+        }
+
+        return report;
+    }
+
+    /**
+     * @return the static file referenced by the line, {@code null} if the line isn't a tag referencing a static file
+     *         which can be bundled
+     */
+    private Reference parse(File warDirectory, String skin, String line) throws IOException
+    {
+        Matcher tag = SCRIPT.matcher(line);
+        String type = "js";
+        if (!tag.matches()) {
+            tag = STYLESHEET.matcher(line);
+            type = CSS;
+            if (!tag.matches()) {
+                return null;
+            }
+        }
+        Matcher skinFile = SKIN_FILE.matcher(tag.group(1));
+        if (!skinFile.matches() || (skinFile.group(2) != null && !"false".equals(skinFile.group(2)))) {
+            return null;
+        }
+
+        // Same lookup as getSkinFile: the skin, then the resources.
+        String path = skinFile.group(1).replaceFirst("^/", "");
+        String resourcePath = SKINS + skin + '/' + path;
+        File file = new File(warDirectory, resourcePath);
+        if (!file.isFile()) {
+            resourcePath = "resources/" + path;
+            file = new File(warDirectory, resourcePath);
+        }
+        if (!file.isFile() || (CSS.equals(type) && IMPORT.matcher(FileUtils.readFileToString(file, ENCODING)).find())) {
+            return null;
+        }
+
+        Reference reference = new Reference();
+        reference.type = type;
+        reference.path = resourcePath;
+        reference.file = file;
+        reference.indentation = line.substring(0, line.indexOf('<'));
+        reference.tag = line.trim().replace(tag.group(1), "%s");
+        return reference;
+    }
+
+    /**
+     * Write the current run to the template, replaced by its bundle if it has several files.
+     */
+    private void flush(File warDirectory, String skin, String template, List<Reference> run, List<String> runLines,
+        List<String> output, TemplateReport report) throws Exception
+    {
+        // The blank lines ending the run are not part of it.
+        List<String> trailingLines = new LinkedList<String>();
+        while (!runLines.isEmpty() && runLines.get(runLines.size() - 1).trim().length() == 0) {
+            trailingLines.add(0, runLines.remove(runLines.size() - 1));
+        }
+
+        if (run.size() > 1) {
+            Reference first = run.get(0);
+            byte[] bundle = (CSS.equals(first.type) ? bundleStylesheets(skin, run) : bundleScripts(run))
+                .getBytes(ENCODING);
+            String path = String.format("%s/%s-%d-%s.%s", BUNDLES, template.replaceFirst("\\.vm$", ""),
+                report.getBundles() + 1, hash(bundle), first.type);
+            write(warDirectory, SKINS + skin + '/' + path, bundle);
+            List<File> files = new ArrayList<File>();
+            for (Reference reference : run) {
+                files.add(reference.file);
+            }
+            report.addBundle(files, bundle);
+
+            output.add("#if ($skinBundles)");
+            output.add(first.indentation + String.format(first.tag, "$xwiki.getSkinFile('" + path + "')"));
+            output.add("#else");
+            output.addAll(runLines);
+            output.add("#end");
+        } else {
+            output.addAll(runLines);
+        }
+        output.addAll(trailingLines);
+
+        run.clear();
+        runLines.clear();
+    }
+
+    private String bundleScripts(List<Reference> run) throws IOException
+    {
+        StringBuilder bundle = new StringBuilder();
+        for (Reference reference : run) {
+            String script = FileUtils.readFileToString(reference.file, ENCODING);
+            StringWriter minified = new StringWriter();
+            try {
+                new JavaScriptCompressor(new StringReader(script), new SilentErrorReporter()).compress(minified,
+                    -1, true, false, false, false);
+                script = minified.toString();
+            } catch (EvaluatorException e) {
+                System.out.println(String.format("Failed to minify %s, it's bundled as is: %s", reference.path,
+                    e.getMessage()));
+            }
+            // A script may not end with a semicolon.
+            bundle.append(script).append(";\n");
+        }
+
+        return bundle.toString();
+    }
+
+    private String bundleStylesheets(String skin, List<Reference> run) throws IOException
+    {
+        StringBuilder bundle = new StringBuilder();
+        String bundleDirectory = SKINS + skin + '/' + BUNDLES;
+        for (Reference reference : run) {
+            // The URLs relative to the stylesheet have to be relative to the bundle.
+            String directory = reference.path.substring(0, reference.path.lastIndexOf('/'));
+            Matcher url = CSS_URL.matcher(FileUtils.readFileToString(reference.file, ENCODING));
+            StringBuffer stylesheet = new StringBuffer();
+            while (url.find()) {
+                String target = url.group(2).trim();
+                if (!ABSOLUTE_URL.matcher(target).matches()) {
+                    target = relativize(bundleDirectory, directory + '/' + target);
+                }
+                url.appendReplacement(stylesheet, Matcher.quoteReplacement("url(" + target + ")"));
+            }
+            url.appendTail(stylesheet);
+            bundle.append(stylesheet).append('\n');
+        }
+
+        StringWriter minified = new StringWriter();
+        new CssCompressor(new StringReader(bundle.toString())).compress(minified, -1);
+        return minified.toString();
+    }
+
+    /**
+     * @param directory a directory of the WAR
+     * @param path a path of the WAR, which may contain {@code ..} segments
+     * @return the path relative to the directory
+     */
+    private static String relativize(String directory, String path)
+    {
+        LinkedList<String> segments = new LinkedList<String>();
+        for (String segment : path.split("/")) {
+            if ("..".equals(segment) && !segments.isEmpty()) {
+                segments.removeLast();
+            } else if (!".".equals(segment) && segment.length() > 0) {
+                segments.add(segment);
+            }
+        }
+        LinkedList<String> base = new LinkedList<String>();
+        for (String segment : directory.split("/")) {
+            base.add(segment);
+        }
+        while (!base.isEmpty() && segments.size() > 1 && base.getFirst().equals(segments.getFirst())) {
+            base.removeFirst();
+            segments.removeFirst();
+        }
+        StringBuilder relative = new StringBuilder();
+        for (int i = 0; i < base.size(); i++) {
+            relative.append("../");
+        }
+
+        return relative.append(join(segments, "/")).toString();
+    }
+
+    private void write(File warDirectory, String path, byte[] content) throws IOException
+    {
+        FileUtils.writeByteArrayToFile(new File(warDirectory, path), content);
+        String output = this.configuration.getProperty("output");
+        if (output.length() > 0) {
+            FileUtils.writeByteArrayToFile(new File(output, path), content);
+        }
+    }
+
+    /**
+     * Print the number of requests and of bytes needed to load the files referenced by each template, with and
+     * without the bundles.
+     *
+     * @param reports the reports of the bundled templates
+     * @throws IOException if the report file can't be written
+     */
+    public void report(List<TemplateReport> reports) throws IOException
+    {
+        StringBuilder report = new StringBuilder(String.format("%-12s %-18s %17s %21s %21s%n", "skin", "template",
+            "requests", "size (KB)", "gzipped (KB)"));
+        for (TemplateReport template : reports) {
+            report.append(String.format(Locale.ROOT, "%-12s %-18s %8d -> %5d %10d -> %6d %10d -> %6d%n",
+                template.skin, template.template, template.requests, template.requests - template.bundledFiles
+                    + template.bundles, template.size / 1024, template.bundledSize / 1024,
+                template.compressedSize / 1024, template.bundledCompressedSize / 1024));
+        }
+        report.append(String.format("The requests count the files referenced by the templates outside of Velocity"
+            + " blocks and conditional%ncomments, loaded by every page (e.g. Main.WebHome), while the sizes only count"
+            + " the static files.%n"));
+
+        System.out.print(report);
+        String reportPath = this.configuration.getProperty("report");
+        if (reportPath.length() > 0) {
+            PrintStream output = new PrintStream(new File(reportPath), ENCODING);
+            try {
+                output.print(report);
+            } finally {
+                output.close();
+            }
+        }
+    }
+
+    private static String hash(byte[] content) throws Exception
+    {
+        StringBuilder hash = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("MD5").digest(content)) {
+            hash.append(String.format("%02x", b));
+        }
+
+        return hash.substring(0, 10);
+    }
+
+    private static long gzipSize(byte[] content) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream output = new GZIPOutputStream(bytes);
+        output.write(content);
+        output.close();
+
+        return bytes.size();
+    }
+
+    private static String join(List<String> strings, String separator)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (String string : strings) {
+            if (builder.length() > 0) {
+                builder.append(separator);
+            }
+            builder.append(string);
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * A static file referenced by a template.
+     */
+    private static class Reference
+    {
+        private String type;
+
+        /** Path of the file in the WAR. */
+        private String path;
+
+        private File file;
+
+        private String indentation;
+
+        /** The tag referencing the file, with a {@code %s} placeholder for its URL. */
+        private String tag;
+    }
+
+    /**
+     * The requests and sizes of the files referenced by a template, before and after bundling.
+     */
+    public static class TemplateReport
+    {
+        private final String skin;
+
+        private final String template;
+
+        private int requests;
+
+        private int bundles;
+
+        private int bundledFiles;
+
+        private long size;
+
+        private long compressedSize;
+
+        private long bundledSize;
+
+        private long bundledCompressedSize;
+
+        /**
+         * @param skin the skin
+         * @param template the template
+         */
+        public TemplateReport(String skin, String template)
+        {
+            this.skin = skin;
+            this.template = template;
+        }
+
+        /**
+         * @param file the referenced file, {@code null} if it's not a static file
+         */
+        void addReference(File file) throws IOException
+        {
+            this.requests++;
+            if (file != null) {
+                byte[] content = FileUtils.readFileToByteArray(file);
+                this.size += content.length;
+                this.compressedSize += gzipSize(content);
+                this.bundledSize += content.length;
+                this.bundledCompressedSize += gzipSize(content);
+            }
+        }
+
+        /**
+         * @param files the bundled files, already added as references: they're replaced by the bundle in the sizes
+         *            after bundling
+         * @param bundle the content of the bundle
+         */
+        void addBundle(List<File> files, byte[] bundle) throws IOException
+        {
+            this.bundles++;
+            this.bundledFiles += files.size();
+            for (File file : files) {
+                byte[] content = FileUtils.readFileToByteArray(file);
+                this.bundledSize -= content.length;
+                this.bundledCompressedSize -= gzipSize(content);
+            }
+            this.bundledSize += bundle.length;
+            this.bundledCompressedSize += gzipSize(bundle);
+        }
+
+        /**
+         * @return the number of bundles of the template
+         */
+        public int getBundles()
+        {
+            return this.bundles;
+        }
+    }
+
+    /**
+     * Ignores the warnings of the JavaScript compressor, the errors being thrown.
+     */
+    private static class SilentErrorReporter implements ErrorReporter
+    {
+        public void warning(String message, String sourceName, int line, String lineSource, int lineOffset)
+        {
+        }
+
+        public void error(String message, String sourceName, int line, String lineSource, int lineOffset)
+        {
+            throw new EvaluatorException(message, sourceName, line, lineSource, lineOffset);
+        }
+
+        public EvaluatorException runtimeError(String message, String sourceName, int line, String lineSource,
+            int lineOffset)
+        {
+            return new EvaluatorException(message, sourceName, line, lineSource, lineOffset);
+        }
+    }
+}